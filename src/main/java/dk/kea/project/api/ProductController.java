@@ -4,6 +4,7 @@ import dk.kea.project.dto.ProductCountResponse;
 import dk.kea.project.service.ProductService;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -18,8 +19,14 @@ public class ProductController {
         this.productService = productService;
     }
 
+    /**
+     * Retrieves how often each product is used in saved recipes, most used first.
+     *
+     * @param limit The maximum number of products to return, all used products if omitted.
+     * @return A list of {@code ProductCountResponse} for the most used products.
+     */
     @GetMapping("/count")
-    public List<ProductCountResponse> getProductCount() {
-        return productService.getProductCount();
+    public List<ProductCountResponse> getProductCount(@RequestParam(required = false) Integer limit) {
+        return productService.getProductCount(limit);
     }
 }
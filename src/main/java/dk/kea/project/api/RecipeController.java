@@ -2,19 +2,28 @@ package dk.kea.project.api;
 
 import dk.kea.project.dto.ChatRecipeResponse;
 import dk.kea.project.dto.MyRecipe;
+import dk.kea.project.dto.RecipeJobResponse;
 import dk.kea.project.dto.RecipeRequest;
 import dk.kea.project.dto.RecipeResponse;
 import dk.kea.project.service.OpenAIService;
+import dk.kea.project.service.RecipeJobQueue;
 import dk.kea.project.service.RecipeService;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Refill;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 
+import java.net.URI;
 import java.security.Principal;
 import java.time.Duration;
 import java.util.List;
@@ -52,13 +61,15 @@ public class RecipeController {
     }
 
     private OpenAIService openAIService;
+    private RecipeJobQueue recipeJobQueue;
     final static String SYSTEM_MESSAGE = "Lav kun 1 opskrift på få udvalgte ingredienser. Dit svar skal være komplet og under 800 tokens."
             +"Overskrift skal være <h3> med id: recipe-heading, ingredients skal være <ul> og fremgangsmåde skal være <ol>. begge i hver deres <div> med overskrifter i <strong>"
             +"Derudover skal hvert element i fremgangsmåden markeres med <strong> også.";
 
-    public RecipeController(OpenAIService openAIService, RecipeService recipeService){
+    public RecipeController(OpenAIService openAIService, RecipeService recipeService, RecipeJobQueue recipeJobQueue){
         this.openAIService = openAIService;
         this.recipeService = recipeService;
+        this.recipeJobQueue = recipeJobQueue;
     }
     /**
      * Makes a recipe request based on the provided ingredients.
@@ -70,6 +81,71 @@ public class RecipeController {
      */
     @PostMapping()
     public MyRecipe makeRequest(@RequestBody String ingredients, HttpServletRequest request) {
+        consumeRequest(request);
+        MyRecipe myRecipe = openAIService.makeRequest(ingredients, SYSTEM_MESSAGE);
+        return myRecipe;
+    }
+    /**
+     * Asynchronous variant of {@link #makeRequest(String, HttpServletRequest)}, selected with
+     * {@code ?async=true}. The recipe is generated by a queued job, whose state is polled at the
+     * URL in the {@code Location} header until it has succeeded or failed.
+     *
+     * @param ingredients The ingredients for the recipe request.
+     * @param request     The HTTP servlet request object.
+     * @param principal   The authenticated principal (user) making the request.
+     * @return The queued job, with status 202.
+     * @throws ResponseStatusException If there are too many requests from the same client, or too many queued jobs.
+     */
+    @PostMapping(params = "async=true")
+    public ResponseEntity<RecipeJobResponse> submitRequest(@RequestBody String ingredients, HttpServletRequest request,
+                                                           Principal principal) {
+        consumeRequest(request);
+        RecipeJobResponse job = recipeJobQueue.submit(principal.getName(), ingredients, SYSTEM_MESSAGE);
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/recipes/jobs/{id}")
+                .buildAndExpand(job.getId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+    /**
+     * Retrieves the state of a recipe job of the authenticated user, and its recipe once generated.
+     *
+     * @param id        The ID of the job.
+     * @param principal The authenticated principal (user) who submitted the job.
+     * @return A {@code RecipeJobResponse} representing the job.
+     * @throws ResponseStatusException With status 404 if the user has no job with the ID.
+     */
+    @GetMapping("/jobs/{id}")
+    public RecipeJobResponse getJob(@PathVariable String id, Principal principal) {
+        return recipeJobQueue.getJob(id, principal.getName());
+    }
+    /**
+     * Streaming variant of {@link #makeRequest(String, HttpServletRequest)}, sending the recipe as
+     * server-sent events while it is generated.
+     * <p>
+     * Every {@code delta} event holds the next part of the recipe as the {@code answer} of a
+     * {@code MyRecipe}, JSON encoded so leading spaces and line breaks survive. The stream ends with a
+     * {@code done} event, or with an {@code error} event if the generation failed.
+     * </p>
+     *
+     * @param ingredients The ingredients for the recipe request.
+     * @param request     The HTTP servlet request object.
+     * @return A {@code Flux} of the events.
+     * @throws ResponseStatusException If there are too many requests from the same client.
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<MyRecipe>> streamRequest(@RequestBody String ingredients, HttpServletRequest request) {
+        consumeRequest(request);
+        return openAIService.streamRequest(ingredients, SYSTEM_MESSAGE)
+                .map(delta -> ServerSentEvent.builder(new MyRecipe(delta)).event("delta").build())
+                .concatWithValues(ServerSentEvent.<MyRecipe>builder().event("done").build())
+                // The response has already started, so a failure can only be reported as an event
+                .onErrorResume(e -> Mono.just(ServerSentEvent.builder(new MyRecipe(e instanceof ResponseStatusException status
+                        ? status.getReason() : "Internal Server Error - You could try again")).event("error").build()));
+    }
+
+    // Throws if the client has used up its recipe requests
+    private void consumeRequest(HttpServletRequest request) {
         String ip = request.getRemoteAddr();
         Bucket bucket = getBucket(ip);
 
@@ -77,8 +153,6 @@ public class RecipeController {
             System.out.println("Too many requests, try again later");
             throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many requests, try again later");
         }
-        MyRecipe myRecipe = openAIService.makeRequest(ingredients, SYSTEM_MESSAGE);
-        return myRecipe;
     }
     /**
      * Saves a recipe based on the provided {@code RecipeRequest}.
@@ -5,17 +5,32 @@ import dk.kea.project.dto.*;
 import dk.kea.project.entity.Offer;
 import dk.kea.project.entity.Product;
 import dk.kea.project.entity.Request;
+import dk.kea.project.entity.StoreCallBucket;
 import dk.kea.project.repository.RequestRepository;
+import dk.kea.project.service.ClearanceService;
+import dk.kea.project.service.OfferExporter;
 import dk.kea.project.service.ProductService;
 import dk.kea.project.service.RequestService;
 import dk.kea.project.service.SallingService;
 import dk.kea.project.service.StoreService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
 import java.util.List;
 import java.util.stream.Collectors;
 /**
@@ -25,6 +40,12 @@ import java.util.stream.Collectors;
  * including handling requests for product clearances. It interacts with the Salling Service,
  * Store Service, Product Service, and Request Service to fulfill its functionalities.
  * </p>
+ * <p>
+ * Store and clearance lookups carry an {@code ETag} and a {@code Cache-Control} max-age
+ * matching how long their data stays valid. A request whose {@code If-None-Match} holds the
+ * current tag is answered with {@code 304 Not Modified} and no body. Expired clearances served
+ * while the store is refreshed carry their age in an {@code Age} header.
+ * </p>
  *
  *
  */
@@ -37,6 +58,8 @@ public class StoreController {
     RequestRepository requestRepository;
     StoreService storeService;
     RequestService requestService;
+    ClearanceService clearanceService;
+    OfferExporter offerExporter;
 
     /**
      * Constructs a {@code StoreController} object.
@@ -45,17 +68,23 @@ public class StoreController {
      * @param requestRepository
      * @param storeService
      * @param requestService
+     * @param clearanceService
+     * @param offerExporter
      */
     public StoreController(SallingService sallingService,
                            ProductService productService,
                            RequestRepository requestRepository,
                            StoreService storeService,
-                           RequestService requestService) {
+                           RequestService requestService,
+                           ClearanceService clearanceService,
+                           OfferExporter offerExporter) {
         this.storeService = storeService;
         this.productService = productService;
         this.requestRepository = requestRepository;
         this.sallingService = sallingService;
         this.requestService = requestService;
+        this.clearanceService = clearanceService;
+        this.offerExporter = offerExporter;
     }
     /**
      * Retrieves a list of stores based on the provided ZIP code.
@@ -65,38 +94,86 @@ public class StoreController {
      */
 
     @GetMapping
-    public List<StoreResponse> getStores(@RequestParam String zipcode) {
-        boolean doesStoreExist = storeService.doesStoresExist(zipcode);
-        if (!doesStoreExist) {
-            List<SallingStoreResponse> storesFromZip = sallingService.getStores(zipcode);
-            storeService.addStores(storesFromZip);
-        }
-        return storeService.getStores(zipcode);
+    public ResponseEntity<List<StoreResponse>> getStores(@RequestParam String zipcode) {
+        return cacheable(storeService.getStores(zipcode));
+    }
+    /**
+     * Reactive variant of {@link #getStores(String)}. The request thread is released while
+     * waiting for Salling, and the database calls run on the bounded {@code jpaScheduler}.
+     *
+     * @param zipcode The ZIP code for which to retrieve stores.
+     * @return A {@code Mono} emitting the stores.
+     */
+    @GetMapping("/reactive")
+    public Mono<ResponseEntity<List<StoreResponse>>> getStoresReactive(@RequestParam String zipcode) {
+        return storeService.getStoresReactive(zipcode).map(StoreController::cacheable);
     }
     /**
      * Retrieves a list of products with clearances based on the provided store ID.
+     * When the store's clearances have expired but are within the stale-while-revalidate window,
+     * they are returned at once with their {@code Age}, while the store is refreshed in the background.
      *
      * @param id The ID of the store for which to retrieve products with clearances.
      * @return A list of {@code ProductResponse} representing the products with clearances.
      */
     @GetMapping("/clearance")
-    public List<ProductResponse> getProducts(@RequestParam String id){
-        // tjek if request is valid
-
-        if(requestService.checkRequest(id)){
-            Request request = requestService.findRequestByStoreIdAndCreatedIsAfter(id, LocalDateTime.now().minusMinutes(15));
-            return productService.getProducts(request.getId());
-        }
-        // else new request to Salling, persist in DB, retrieve from DB
-        Request request = new Request(storeService.findStoreById(id));
-         requestService.addRequest(request);
-
-        productService.getOffersfromSallingAndSave(id, request);
-        return productService.getProducts(request.getId());
+    public ResponseEntity<List<ProductResponse>> getProducts(@RequestParam String id){
+        return cacheable(clearanceService.getClearance(id));
+    }
+    /**
+     * Reactive variant of {@link #getProducts(String)}. The request thread is released while
+     * waiting for Salling, and the database calls run on the bounded {@code jpaScheduler}.
+     *
+     * @param id The ID of the store for which to retrieve products with clearances.
+     * @return A {@code Mono} emitting the products with clearances.
+     */
+    @GetMapping("/reactive/clearance")
+    public Mono<ResponseEntity<List<ProductResponse>>> getProductsReactive(@RequestParam String id){
+        return clearanceService.getClearanceReactive(id).map(StoreController::cacheable);
     }
+    /**
+     * Retrieves a page of offers with the description of their product, ordered by offer ID.
+     * When the page is full, a {@code Link} header with {@code rel="next"} points to the next page.
+     *
+     * @param after The ID of the last offer of the previous page, 0 for the first page.
+     * @param size  The maximum number of offers in the page.
+     * @return A page of {@code OfferDetailsResponse}.
+     */
     @GetMapping("/products")
-    public List<Object[]> OfferDetailsWithProductDescription(){
-        return productService.getAllOffersWithProductDescription();
+    public ResponseEntity<List<OfferDetailsResponse>> OfferDetailsWithProductDescription(
+            @RequestParam(defaultValue = "0") int after, @RequestParam(defaultValue = "500") int size){
+        List<OfferDetailsResponse> offers = productService.getOfferDetails(after, size);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (offers.size() == size) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", offers.get(offers.size() - 1).getId())
+                    .replaceQueryParam("size", size)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(offers);
+    }
+
+    /**
+     * Writes every offer with the description of its product to the response, as it is read.
+     *
+     * @param format   {@code ndjson} for one JSON object per line, or {@code csv}.
+     * @param response The response the offers are written to.
+     * @throws IOException If writing the response fails.
+     */
+    @GetMapping("/products/export")
+    public void exportOfferDetails(@RequestParam(defaultValue = "ndjson") String format,
+                                   HttpServletResponse response) throws IOException {
+        OfferExporter.Format exportFormat;
+        try {
+            exportFormat = OfferExporter.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The format must be ndjson or csv");
+        }
+        response.setContentType(exportFormat.contentType);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"offers." + exportFormat.extension + "\"");
+        offerExporter.export(response.getOutputStream(), exportFormat);
     }
 
     @GetMapping("/countstorecalls")
@@ -110,6 +187,53 @@ public class StoreController {
         System.out.println("getZipcodeCount()");
         return requestService.countZipcodeCalls();
     }
+
+    /**
+     * Retrieves the number of requests made for each store per hour or day within a time range.
+     *
+     * @param from        The start of the range, inclusive, as an ISO date-time.
+     * @param to          The end of the range, exclusive, as an ISO date-time.
+     * @param granularity {@code HOUR} or {@code DAY}.
+     * @return A list of {@code StoreCountBucketResponse} for the buckets with requests, oldest first.
+     */
+    @GetMapping("/countstorecalls/range")
+    public List<StoreCountBucketResponse> getStoreCountBetween(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "HOUR") StoreCallBucket.Granularity granularity){
+        return requestService.countStoreCallsBetween(from, to, granularity);
+    }
+
+    /**
+     * Retrieves the number of requests made for the stores of each zip code per hour or day within a time range.
+     *
+     * @param from        The start of the range, inclusive, as an ISO date-time.
+     * @param to          The end of the range, exclusive, as an ISO date-time.
+     * @param granularity {@code HOUR} or {@code DAY}.
+     * @return A list of {@code ZipcodeCountBucketResponse} for the buckets with requests, oldest first.
+     */
+    @GetMapping("/countzipcodecalls/range")
+    public List<ZipcodeCountBucketResponse> getZipcodeCountBetween(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "HOUR") StoreCallBucket.Granularity granularity){
+        return requestService.countZipcodeCallsBetween(from, to, granularity);
+    }
+
+    // Spring answers a GET whose If-None-Match holds the tag with 304 instead of the body
+    private static <T> ResponseEntity<T> cacheable(CachedResponse<T> response) {
+        LocalDateTime now = LocalDateTime.now();
+        long maxAge = response.getMaxAge(now).toSeconds();
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(response.getEtag())
+                .cacheControl(maxAge > 0 ? CacheControl.maxAge(maxAge, TimeUnit.SECONDS) : CacheControl.noCache());
+        // The max-age of a fresh body already counts from now, so only a stale body is flagged with its age
+        Duration age = response.getAge(now);
+        if (age != null && response.isExpired(now)) {
+            builder.header(HttpHeaders.AGE, String.valueOf(age.toSeconds()));
+        }
+        return builder.body(response.getBody());
+    }
 }
 
 
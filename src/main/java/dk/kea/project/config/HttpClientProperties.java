@@ -0,0 +1,87 @@
+package dk.kea.project.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the outbound HTTP clients, one connection pool per upstream API.
+ * <p>
+ * Bound from {@code app.http.salling.*} and {@code app.http.openai.*}.
+ * </p>
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.http")
+public class HttpClientProperties {
+
+    /**
+     * The client used for Salling Group's API.
+     */
+    private Upstream salling = new Upstream("https://api.sallinggroup.com", 50, 500, Duration.ofSeconds(10));
+
+    /**
+     * The client used for the OpenAI API.
+     */
+    private Upstream openai = new Upstream("https://api.openai.com", 20, 100, Duration.ofSeconds(60));
+
+    /**
+     * Connection pool and timeout settings of a single upstream.
+     */
+    @Getter
+    @Setter
+    public static class Upstream {
+
+        /**
+         * The base URL all requests of the client are resolved against.
+         */
+        private String baseUrl;
+
+        /**
+         * The maximum number of open connections to the upstream.
+         */
+        private int maxConnections;
+
+        /**
+         * The maximum number of requests waiting for a free connection before new ones are rejected.
+         */
+        private int pendingAcquireMaxCount;
+
+        /**
+         * How long a request may wait for a free connection.
+         */
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+
+        /**
+         * How long establishing a connection may take.
+         */
+        private Duration connectTimeout = Duration.ofSeconds(2);
+
+        /**
+         * How long to wait for the response after the request has been sent.
+         */
+        private Duration responseTimeout;
+
+        /**
+         * How long an idle connection is kept open for reuse.
+         */
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        /**
+         * How long a connection is reused before it is closed.
+         */
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+
+        public Upstream() {
+        }
+
+        public Upstream(String baseUrl, int maxConnections, int pendingAcquireMaxCount, Duration responseTimeout) {
+            this.baseUrl = baseUrl;
+            this.maxConnections = maxConnections;
+            this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+            this.responseTimeout = responseTimeout;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package dk.kea.project.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Configuration of the Reactor schedulers used by the reactive endpoints.
+ * <p>
+ * JPA calls block, so reactive pipelines hand them to a bounded scheduler instead of running them
+ * on the Netty event loop. The thread cap should not exceed the size of the database connection pool.
+ * </p>
+ */
+@Configuration
+public class ReactorConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jpaScheduler(@Value("${app.reactive.jpa-threads:10}") int threads,
+                                  @Value("${app.reactive.jpa-queue-size:1000}") int queueSize) {
+        return Schedulers.newBoundedElastic(threads, queueSize, "jpa");
+    }
+}
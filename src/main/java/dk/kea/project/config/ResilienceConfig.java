@@ -0,0 +1,43 @@
+package dk.kea.project.config;
+
+import dk.kea.project.service.UpstreamGuard;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the {@link UpstreamGuard}s of the upstream APIs.
+ * <p>
+ * Every upstream gets its own circuit breaker and retry budget, so a failing upstream only
+ * rejects its own calls. Their metrics are published under {@code greenplate.upstream.*},
+ * tagged with the upstream.
+ * </p>
+ * <p>
+ * A Salling call is made while holding a refresh lease, so its deadline must end before the lease
+ * lapses, or a second node could start the same refresh. This is checked at startup.
+ * </p>
+ */
+@Configuration
+@EnableConfigurationProperties(ResilienceProperties.class)
+public class ResilienceConfig {
+
+    @Bean
+    public UpstreamGuard sallingGuard(ResilienceProperties properties, MeterRegistry meterRegistry,
+                                      @Value("${app.refresh-lease.duration:30s}") Duration leaseDuration) {
+        Duration deadline = properties.getSalling().getDeadline();
+        if (deadline.isZero() || deadline.isNegative() || deadline.compareTo(leaseDuration) >= 0) {
+            throw new IllegalStateException("app.resilience.salling.deadline (" + deadline
+                    + ") must be positive and shorter than app.refresh-lease.duration (" + leaseDuration + ")");
+        }
+        return new UpstreamGuard("salling", properties.getSalling(), meterRegistry);
+    }
+
+    @Bean
+    public UpstreamGuard openAiGuard(ResilienceProperties properties, MeterRegistry meterRegistry) {
+        return new UpstreamGuard("openai", properties.getOpenai(), meterRegistry);
+    }
+}
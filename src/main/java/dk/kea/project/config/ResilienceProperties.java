@@ -0,0 +1,110 @@
+package dk.kea.project.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the circuit breakers, retries and hedged requests guarding the upstream APIs.
+ * <p>
+ * Bound from {@code app.resilience.salling.*} and {@code app.resilience.openai.*}.
+ * </p>
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.resilience")
+public class ResilienceProperties {
+
+    /**
+     * The guard of Salling Group's API. Its deadline leaves a refresh lease time to save the offers.
+     */
+    private Upstream salling = new Upstream(Duration.ofSeconds(30), 3, Duration.ofSeconds(20));
+
+    /**
+     * The guard of the OpenAI API. Completions are slow and costly, so they are retried once at most.
+     */
+    private Upstream openai = new Upstream(Duration.ofSeconds(60), 2);
+
+    /**
+     * Circuit breaker, retry and hedging settings of a single upstream.
+     */
+    @Getter
+    @Setter
+    public static class Upstream {
+
+        /**
+         * The number of most recent calls the failure rate is computed over.
+         */
+        private int slidingWindowSize = 20;
+
+        /**
+         * The number of calls that must be recorded before the failure rate can open the circuit.
+         */
+        private int minimumCalls = 10;
+
+        /**
+         * The failure rate, in percent, at which the circuit opens.
+         */
+        private double failureRateThreshold = 50;
+
+        /**
+         * How long an open circuit rejects calls before letting probe calls through.
+         */
+        private Duration openDuration;
+
+        /**
+         * The number of probe calls that must succeed for a half-open circuit to close again.
+         */
+        private int halfOpenCalls = 3;
+
+        /**
+         * The maximum number of attempts of a call, including the first one.
+         */
+        private int maxAttempts;
+
+        /**
+         * The backoff before the first retry, doubled for every further retry.
+         */
+        private Duration initialBackoff = Duration.ofMillis(100);
+
+        /**
+         * The longest backoff between two attempts.
+         */
+        private Duration maxBackoff = Duration.ofSeconds(2);
+
+        /**
+         * The number of retries every call earns, so retries add at most this fraction of load.
+         */
+        private double retryRatio = 0.2;
+
+        /**
+         * The number of retries that may be made before calls have earned any, and the most that can be saved up.
+         */
+        private int retryBurst = 10;
+
+        /**
+         * How long an idempotent call may take before a second, hedged attempt is sent. Zero disables hedging.
+         */
+        private Duration hedgeDelay = Duration.ZERO;
+
+        /**
+         * How long a call may take across all its attempts and backoffs. Zero leaves a call bounded by its attempts only.
+         */
+        private Duration deadline = Duration.ZERO;
+
+        public Upstream() {
+        }
+
+        public Upstream(Duration openDuration, int maxAttempts) {
+            this.openDuration = openDuration;
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Upstream(Duration openDuration, int maxAttempts, Duration deadline) {
+            this(openDuration, maxAttempts);
+            this.deadline = deadline;
+        }
+    }
+}
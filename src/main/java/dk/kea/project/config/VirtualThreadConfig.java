@@ -0,0 +1,42 @@
+package dk.kea.project.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Runs request handling on virtual threads when {@code app.virtual-threads.enabled=true}.
+ * <p>
+ * Tomcat then starts a virtual thread per request instead of taking a worker from its bounded
+ * pool. The blocking JDBC calls and the blocking waits on Salling and OpenAI park the virtual
+ * thread and free its carrier, so concurrency is no longer capped by {@code server.tomcat.threads.max}.
+ * The application task executor used for async MVC processing runs on virtual threads as well.
+ * </p>
+ * <p>
+ * Code running on these threads should use {@code java.util.concurrent} locks rather than
+ * {@code synchronized} around blocking calls, since a blocked virtual thread inside a
+ * {@code synchronized} block pins its carrier. This is why the shared in-process state, such as
+ * the caches, circuit breakers and retry budgets, is guarded by a {@code ReentrantLock}. Run with
+ * {@code -Djdk.tracePinnedThreads=short} to log pinning.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
@@ -0,0 +1,67 @@
+package dk.kea.project.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Configuration of the shared outbound {@link WebClient}s.
+ * <p>
+ * Every upstream gets its own named connection pool, so a slow upstream can only exhaust its own
+ * connections. Requests waiting for a connection are bounded in number and time, and connect and
+ * response timeouts make sure no request thread waits forever. Connections are kept alive and
+ * reused, and responses are requested compressed.
+ * </p>
+ * <p>
+ * Pool metrics (active, idle, pending and total connections) are published under
+ * {@code reactor.netty.connection.provider.*}, tagged with the pool name.
+ * </p>
+ */
+@Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
+public class WebClientConfig {
+
+    @Bean
+    public WebClient sallingWebClient(WebClient.Builder builder, HttpClientProperties properties) {
+        return webClient(builder, "salling", properties.getSalling());
+    }
+
+    @Bean
+    public WebClient openAiWebClient(WebClient.Builder builder, HttpClientProperties properties) {
+        return webClient(builder, "openai", properties.getOpenai());
+    }
+
+    /**
+     * Builds a {@code WebClient} with its own connection pool.
+     *
+     * @param builder  The builder to configure, carrying the application's codecs.
+     * @param name     The name of the connection pool, used in its metrics.
+     * @param upstream The pool and timeout settings.
+     * @return The configured {@code WebClient}.
+     */
+    public WebClient webClient(WebClient.Builder builder, String name, HttpClientProperties.Upstream upstream) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(upstream.getMaxConnections())
+                .pendingAcquireMaxCount(upstream.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(upstream.getPendingAcquireTimeout())
+                .maxIdleTime(upstream.getMaxIdleTime())
+                .maxLifeTime(upstream.getMaxLifeTime())
+                .metrics(true)
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) upstream.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(upstream.getResponseTimeout())
+                .keepAlive(true)
+                .compress(true);
+        return builder
+                .baseUrl(upstream.getBaseUrl())
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
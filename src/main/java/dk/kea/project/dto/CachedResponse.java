@@ -0,0 +1,85 @@
+package dk.kea.project.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * A cached response body together with the validator and lifetime used for HTTP caching.
+ * <p>
+ * The entity tag identifies the body exactly, so a client holding it can be answered with
+ * {@code 304 Not Modified} instead of the body.
+ * </p>
+ *
+ * @param <T> The type of the body.
+ */
+@Getter
+@AllArgsConstructor
+public class CachedResponse<T> {
+
+	/**
+	 * The body of the response.
+	 */
+	private T body;
+
+	/**
+	 * The strong entity tag of the body, including its quotes.
+	 */
+	private String etag;
+
+	/**
+	 * The timestamp after which the body may have changed, or {@code null} if it must be revalidated every time.
+	 */
+	private LocalDateTime expires;
+
+	/**
+	 * The timestamp the body was read from its origin, or {@code null} if it is not tracked.
+	 */
+	private LocalDateTime created;
+
+	/**
+	 * Constructs a {@code CachedResponse} whose origin timestamp is not tracked.
+	 *
+	 * @param body    The body of the response.
+	 * @param etag    The strong entity tag of the body, including its quotes.
+	 * @param expires The timestamp after which the body may have changed.
+	 */
+	public CachedResponse(T body, String etag, LocalDateTime expires) {
+		this(body, etag, expires, null);
+	}
+
+	/**
+	 * Checks whether the body may have changed at the given time.
+	 *
+	 * @param now The time to check.
+	 * @return {@code true} if the body has expired.
+	 */
+	public boolean isExpired(LocalDateTime now) {
+		return expires == null || !expires.isAfter(now);
+	}
+
+	/**
+	 * Gets how long the body may still be reused without revalidation, never negative.
+	 *
+	 * @param now The time to measure from.
+	 * @return The remaining lifetime of the body.
+	 */
+	public Duration getMaxAge(LocalDateTime now) {
+		return isExpired(now) ? Duration.ZERO : Duration.between(now, expires);
+	}
+
+	/**
+	 * Gets how long ago the body was read from its origin, never negative.
+	 *
+	 * @param now The time to measure to.
+	 * @return The age of the body, or {@code null} if its origin timestamp is not tracked.
+	 */
+	public Duration getAge(LocalDateTime now) {
+		if (created == null) {
+			return null;
+		}
+		return created.isAfter(now) ? Duration.ZERO : Duration.between(created, now);
+	}
+}
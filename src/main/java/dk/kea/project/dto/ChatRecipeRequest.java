@@ -1,5 +1,7 @@
 package dk.kea.project.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -17,6 +19,9 @@ import java.util.List;
  * <p>
  * The inner static class {@link Message} represents a chat message with a role and content.
  * </p>
+ * <p>
+ * The streaming fields are only sent when set, so a non-streaming request is serialized as before.
+ * </p>
  *
  *
  */
@@ -60,6 +65,18 @@ public class ChatRecipeRequest {
 	 */
 	private double presence_penalty;
 
+	/**
+	 * Whether the completion is sent as server-sent events of token deltas, or {@code null} for a single response.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private Boolean stream;
+
+	/**
+	 * The options of a streamed completion, or {@code null} when not streaming.
+	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private StreamOptions stream_options;
+
 	/**
 	 * Inner static class representing a chat message.
 	 */
@@ -88,4 +105,18 @@ public class ChatRecipeRequest {
 			this.content = content;
 		}
 	}
+
+	/**
+	 * Inner static class representing the options of a streamed completion.
+	 */
+	@Getter
+	@Setter
+	@AllArgsConstructor
+	public static class StreamOptions {
+
+		/**
+		 * Whether a final event with the token usage of the whole completion is sent.
+		 */
+		private boolean include_usage;
+	}
 }
@@ -16,6 +16,10 @@ import java.util.List;
  * The inner static classes {@link Choice}, {@link Message}, and {@link Usage}
  * represent choices made, chat messages, and usage statistics respectively.
  * </p>
+ * <p>
+ * Each event of a streamed completion is read as a response as well, whose choices hold a
+ * {@code delta} instead of a {@code message}, and whose usage is only set on the final event.
+ * </p>
  *
  * @see ChatRecipeRequest
  */
@@ -70,6 +74,11 @@ public class ChatRecipeResponse {
 		 */
 		private Message message;
 
+		/**
+		 * The part of the chat message added by an event of a streamed completion.
+		 */
+		private Message delta;
+
 		/**
 		 * The finish reason for the choice.
 		 */
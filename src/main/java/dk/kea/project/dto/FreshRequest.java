@@ -0,0 +1,48 @@
+package dk.kea.project.dto;
+
+import dk.kea.project.entity.Request;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection of a {@link Request} holding only the columns needed to decide whether it is still valid.
+ * <p>
+ * Both columns are part of the {@code (store_id, created)} index, so the freshness lookup is answered
+ * from the index alone.
+ * </p>
+ */
+@Getter
+@AllArgsConstructor
+public class FreshRequest {
+
+	/**
+	 * The unique identifier for the request.
+	 */
+	private int id;
+
+	/**
+	 * The timestamp when the request was created.
+	 */
+	private LocalDateTime created;
+
+	/**
+	 * Constructs a {@code FreshRequest} from a persisted request.
+	 *
+	 * @param request The persisted request.
+	 */
+	public FreshRequest(Request request) {
+		this.id = request.getId();
+		this.created = request.getCreated();
+	}
+
+	/**
+	 * Gets the expiration timestamp for the request, calculated as 15 minutes from the creation timestamp.
+	 *
+	 * @return The expiration timestamp for the request.
+	 */
+	public LocalDateTime getExpires() {
+		return created.plusMinutes(15);
+	}
+}
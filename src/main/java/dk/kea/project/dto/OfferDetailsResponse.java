@@ -0,0 +1,60 @@
+package dk.kea.project.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Data Transfer Object (DTO) representing an offer together with the description of its product.
+ * <p>
+ * This class is used for the paged offer listing and the offer export, and is selected directly
+ * by the query, so the offers are never loaded as entities.
+ * </p>
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OfferDetailsResponse {
+
+	/**
+	 * The unique identifier for the offer, which the pages are ordered by.
+	 */
+	int id;
+
+	/**
+	 * The absolute discount amount applied to the product.
+	 */
+	double discount;
+
+	/**
+	 * The new (discounted) price of the product.
+	 */
+	double newPrice;
+
+	/**
+	 * The original price of the product before any discounts.
+	 */
+	double originalPrice;
+
+	/**
+	 * The percentage discount applied to the product.
+	 */
+	double percentDiscount;
+
+	/**
+	 * The EAN (European Article Number) code of the product.
+	 */
+	String ean;
+
+	/**
+	 * The ID of the request the offer was ingested by.
+	 */
+	Integer requestId;
+
+	/**
+	 * The description of the product.
+	 */
+	String description;
+}
@@ -75,4 +75,20 @@ public class ProductResponse {
 		this.percentDiscount = offer.getPercentDiscount();
 		this.id = offer.getId();
 	}
+
+	/**
+	 * Constructs a {@code ProductResponse} object from a projected offer of a shopping list.
+	 *
+	 * @param row The projected row, which must hold an offer.
+	 */
+	public ProductResponse(ShoppingListOfferRow row) {
+		this.description = row.getDescription();
+		this.ean = row.getEan();
+		this.image = row.getImage();
+		this.originalPrice = row.getOriginalPrice();
+		this.newPrice = row.getNewPrice();
+		this.discount = row.getDiscount();
+		this.percentDiscount = row.getPercentDiscount();
+		this.id = row.getOfferId();
+	}
 }
@@ -0,0 +1,62 @@
+package dk.kea.project.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import dk.kea.project.entity.RecipeJob;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Data Transfer Object (DTO) representing the state of a queued recipe generation.
+ * <p>
+ * The answer is set once the job has succeeded, and the error once it has failed.
+ * </p>
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RecipeJobResponse {
+
+	/**
+	 * The unique identifier of the job.
+	 */
+	private String id;
+
+	/**
+	 * The current state of the job.
+	 */
+	private RecipeJob.Status status;
+
+	/**
+	 * The generated recipe.
+	 */
+	private String answer;
+
+	/**
+	 * The reason the job failed.
+	 */
+	private String error;
+
+	/**
+	 * The timestamp when the job was submitted.
+	 */
+	private LocalDateTime created;
+
+	/**
+	 * The timestamp when the job succeeded or failed.
+	 */
+	private LocalDateTime finished;
+
+	/**
+	 * Constructs a {@code RecipeJobResponse} from a job.
+	 *
+	 * @param job The job.
+	 */
+	public RecipeJobResponse(RecipeJob job) {
+		this.id = job.getId();
+		this.status = job.getStatus();
+		this.answer = job.getAnswer();
+		this.error = job.getError();
+		this.created = job.getCreated();
+		this.finished = job.getFinished();
+	}
+}
@@ -0,0 +1,64 @@
+package dk.kea.project.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection of one offer of a shopping list, joined with its product, holding only the columns the
+ * shopping list response renders.
+ * <p>
+ * A shopping list without offers is returned as a single row whose offer and product columns are
+ * {@code null}.
+ * </p>
+ */
+public interface ShoppingListOfferRow {
+
+	/**
+	 * @return The unique identifier for the shopping list.
+	 */
+	int getListId();
+
+	/**
+	 * @return The date and time when the shopping list was created.
+	 */
+	LocalDateTime getCreatedAt();
+
+	/**
+	 * @return The unique identifier for the offer, or {@code null} if the list has no offers.
+	 */
+	Integer getOfferId();
+
+	/**
+	 * @return The original price of the product before any discounts.
+	 */
+	Double getOriginalPrice();
+
+	/**
+	 * @return The new (discounted) price of the product.
+	 */
+	Double getNewPrice();
+
+	/**
+	 * @return The absolute discount amount applied to the product.
+	 */
+	Double getDiscount();
+
+	/**
+	 * @return The percentage discount applied to the product.
+	 */
+	Double getPercentDiscount();
+
+	/**
+	 * @return The EAN (European Article Number) code of the product.
+	 */
+	String getEan();
+
+	/**
+	 * @return The description of the product.
+	 */
+	String getDescription();
+
+	/**
+	 * @return The URL or path to the product image.
+	 */
+	String getImage();
+}
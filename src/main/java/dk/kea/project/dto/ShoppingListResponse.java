@@ -1,14 +1,15 @@
 package dk.kea.project.dto;
 
-import dk.kea.project.entity.Offer;
-import dk.kea.project.entity.ShoppingList;
-import dk.kea.project.entity.User;
 import lombok.*;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 /**
  * Data Transfer Object (DTO) representing a response containing details of a shopping list.
+ * <p>
+ * Holds only what is rendered: the offers with their product, and the username of the owner.
+ * </p>
  */
 @Getter
 @Setter
@@ -23,24 +24,25 @@ public class ShoppingListResponse {
     /**
      * List of offers included in the shopping list.
      */
-    private List<Offer> offers;
+    private List<ProductResponse> offers;
     /**
-     * User associated with the shopping list.
+     * Username of the user associated with the shopping list.
      */
-    private User user;
+    private String username;
     /**
      * Date and time when the shopping list was created.
      */
     private LocalDateTime createdAt;
     /**
-     * Constructor for the ShoppingListResponse class.
+     * Constructor for a shopping list read as projected rows, which gets its offers added afterwards.
      *
-     * @param shoppingList The ShoppingList entity from which to create the response.
+     * @param row      The first row of the shopping list.
+     * @param username The username of the user associated with the shopping list.
      */
-    public ShoppingListResponse(ShoppingList shoppingList) {
-        this.id = shoppingList.getId();
-        this.offers = shoppingList.getOffers();
-        this.user = shoppingList.getUser();
-        this.createdAt = shoppingList.getCreatedAt();
+    public ShoppingListResponse(ShoppingListOfferRow row, String username) {
+        this.id = row.getListId();
+        this.offers = new ArrayList<>();
+        this.username = username;
+        this.createdAt = row.getCreatedAt();
     }
 }
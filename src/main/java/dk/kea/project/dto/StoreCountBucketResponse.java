@@ -0,0 +1,16 @@
+package dk.kea.project.dto;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoreCountBucketResponse {
+    String id;
+    LocalDateTime bucket;
+    Long count;
+}
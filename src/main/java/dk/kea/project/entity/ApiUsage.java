@@ -19,6 +19,10 @@ import java.time.LocalDateTime;
  * about the usage of an API, including the number of tokens used, associated cost,
  * similar prompts, and the timestamp of when the usage was recorded.
  * </p>
+ * <p>
+ * Requests answered from the recipe cache are recorded as well, with the tokens they saved, so the
+ * hit rate and the saved tokens can be read from the same table.
+ * </p>
  *
  *
  */
@@ -51,6 +55,16 @@ public class ApiUsage {
      */
     private String similarPrompts;
 
+    /**
+     * Whether the request was answered from the recipe cache instead of the API.
+     */
+    private boolean cached;
+
+    /**
+     * The number of tokens a request answered from the recipe cache would have used.
+     */
+    private int tokensSaved;
+
     /**
      * Constructs an {@code ApiUsage} object with the specified number of tokens used.
      *
@@ -63,6 +77,20 @@ public class ApiUsage {
               + Math.round(1 / (tokensUsed * 0.0015 / 1000));
     }
 
+    /**
+     * Creates an {@code ApiUsage} record for a request answered from the recipe cache, which used no tokens.
+     *
+     * @param tokensSaved The number of tokens generating the cached recipe used.
+     * @return The usage record of the cache hit.
+     */
+    public static ApiUsage cacheHit(int tokensSaved) {
+        ApiUsage apiUsage = new ApiUsage();
+        apiUsage.cached = true;
+        apiUsage.tokensSaved = tokensSaved;
+        apiUsage.cost = "Saved ($0.0015 / 1K tokens) : $" + String.format("%6f", (tokensSaved * 0.0015 / 1000));
+        return apiUsage;
+    }
+
     /**
      * The timestamp when the API usage record was created.
      */
@@ -0,0 +1,51 @@
+package dk.kea.project.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity class representing a generated recipe, stored under the hash of the chat request it answers.
+ * <p>
+ * Rows are only written when the recipe cache is persistent, so generated recipes survive a restart.
+ * </p>
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class CachedRecipe {
+
+	/**
+	 * The hex encoded SHA-256 hash of the canonical chat request.
+	 */
+	@Id
+	@Column(length = 64)
+	String cacheKey;
+
+	/**
+	 * The recipe generated for the request.
+	 */
+	@Lob
+	@Column(nullable = false)
+	String answer;
+
+	/**
+	 * The number of tokens generating the recipe used, which a cache hit saves.
+	 */
+	int tokensUsed;
+
+	/**
+	 * The timestamp after which the recipe is generated again.
+	 */
+	@Column(nullable = false)
+	LocalDateTime expires;
+}
@@ -0,0 +1,54 @@
+package dk.kea.project.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity class representing the materialized clearance products of a store, shared by all nodes.
+ * <p>
+ * Each row holds the serialized {@code ProductResponse} list of the store's current request,
+ * so a node that did not make the request can serve it without reading the offers.
+ * </p>
+ *
+ * @see Request
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class ClearanceSnapshot {
+
+	/**
+	 * The ID of the store the products belong to.
+	 */
+	@Id
+	String storeId;
+
+	/**
+	 * The entity tag of the products.
+	 */
+	@Column(nullable = false)
+	String etag;
+
+	/**
+	 * The timestamp at which the request the products were read from expires.
+	 */
+	@Column(nullable = false)
+	LocalDateTime expires;
+
+	/**
+	 * The products as a JSON array.
+	 */
+	@Lob
+	@Column(nullable = false)
+	String products;
+}
@@ -0,0 +1,43 @@
+package dk.kea.project.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Entity class representing how often a product is used in saved recipes.
+ * <p>
+ * This class is mapped to a counter table that is updated as recipes are saved and deleted,
+ * so the product popularity does not have to be counted from the recipe offers.
+ * </p>
+ *
+ * @see Product
+ * @see Recipe
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+// Serves the most used products, read in descending order of use
+@Table(indexes = @Index(name = "idx_product_usage_count", columnList = "usage_count DESC"))
+public class ProductUsageCount {
+
+	/**
+	 * The EAN of the product.
+	 */
+	@Id
+	String ean;
+
+	/**
+	 * The number of times an offer on the product is part of a saved recipe.
+	 */
+	@Column(name = "usage_count", nullable = false)
+	long usageCount;
+}
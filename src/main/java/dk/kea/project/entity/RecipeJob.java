@@ -0,0 +1,116 @@
+package dk.kea.project.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Entity class representing a queued recipe generation.
+ * <p>
+ * A job is stored before it is queued, so it survives a restart and its result can be polled by id.
+ * It holds the prompt it was submitted with, so it runs with that prompt even after a deployment.
+ * </p>
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+// Serves the lookup of waiting jobs, oldest first
+@Table(indexes = @Index(name = "idx_recipe_job_status_created", columnList = "status, created"))
+public class RecipeJob {
+
+	/**
+	 * The states a job passes through.
+	 */
+	public enum Status {
+		QUEUED, RUNNING, SUCCEEDED, FAILED
+	}
+
+	/**
+	 * The unique, unguessable identifier of the job.
+	 */
+	@Id
+	@Column(length = 36)
+	String id;
+
+	/**
+	 * The username of the user who submitted the job.
+	 */
+	@Column(nullable = false, length = 50)
+	String username;
+
+	/**
+	 * The ingredients provided by the user.
+	 */
+	@Lob
+	@Column(nullable = false)
+	String ingredients;
+
+	/**
+	 * The system message the recipe is generated with.
+	 */
+	@Lob
+	@Column(nullable = false)
+	String systemMessage;
+
+	/**
+	 * The current state of the job.
+	 */
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 10)
+	Status status;
+
+	/**
+	 * The generated recipe, once the job has succeeded.
+	 */
+	@Lob
+	String answer;
+
+	/**
+	 * The reason the job failed, if it did.
+	 */
+	String error;
+
+	/**
+	 * The timestamp when the job was submitted.
+	 */
+	@Column(nullable = false)
+	LocalDateTime created;
+
+	/**
+	 * The timestamp when a worker last started the job.
+	 */
+	LocalDateTime started;
+
+	/**
+	 * The timestamp when the job succeeded or failed.
+	 */
+	LocalDateTime finished;
+
+	/**
+	 * Constructs a queued {@code RecipeJob} with a new random id.
+	 *
+	 * @param username      The username of the user submitting the job.
+	 * @param ingredients   The ingredients provided by the user.
+	 * @param systemMessage The system message the recipe is generated with.
+	 */
+	public RecipeJob(String username, String ingredients, String systemMessage) {
+		this.id = UUID.randomUUID().toString();
+		this.username = username;
+		this.ingredients = ingredients;
+		this.systemMessage = systemMessage;
+		this.status = Status.QUEUED;
+		this.created = LocalDateTime.now();
+	}
+}
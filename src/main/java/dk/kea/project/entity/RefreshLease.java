@@ -0,0 +1,45 @@
+package dk.kea.project.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity class representing the right of one node to refresh the clearances of a store.
+ * <p>
+ * A node holds the lease of a store from taking it until it releases it or the lease expires,
+ * whichever comes first. Expiry is measured by the database clock, so nodes do not need
+ * synchronized clocks.
+ * </p>
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class RefreshLease {
+
+	/**
+	 * The ID of the store the lease is for.
+	 */
+	@Id
+	String storeId;
+
+	/**
+	 * The ID of the node holding the lease.
+	 */
+	@Column(nullable = false)
+	String owner;
+
+	/**
+	 * The timestamp, by the database clock, at which the lease lapses.
+	 */
+	@Column(nullable = false)
+	LocalDateTime expires;
+}
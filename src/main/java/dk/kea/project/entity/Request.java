@@ -21,6 +21,8 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+// Serves the lookup of a store's newest request, which gates every clearance call
+@Table(indexes = @Index(name = "idx_request_store_created", columnList = "store_id, created DESC"))
 public class Request {
 
 	/**
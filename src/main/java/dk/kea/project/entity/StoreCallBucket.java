@@ -0,0 +1,86 @@
+package dk.kea.project.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Entity class representing the number of requests made for a store within an hour or a day.
+ * <p>
+ * This class is mapped to a rollup table that is incremented as requests are written. Recent
+ * requests are counted in hourly buckets, which are compacted into daily buckets once they are
+ * older than the hourly retention.
+ * </p>
+ *
+ * @see StoreCallCount
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@IdClass(StoreCallBucket.Key.class)
+// Serves the range queries, which read the buckets of every store within a time range
+@Table(indexes = @Index(name = "idx_store_call_bucket_start", columnList = "bucket_start"))
+public class StoreCallBucket {
+
+	/**
+	 * The length of a bucket.
+	 */
+	public enum Granularity {
+		HOUR, DAY
+	}
+
+	/**
+	 * The ID of the store the requests were made for.
+	 */
+	@Id
+	String storeId;
+
+	/**
+	 * Whether the bucket covers an hour or a day.
+	 */
+	@Id
+	@Enumerated(EnumType.STRING)
+	@Column(length = 4)
+	Granularity granularity;
+
+	/**
+	 * The start of the hour or day the bucket covers.
+	 */
+	@Id
+	@Column(name = "bucket_start")
+	LocalDateTime bucketStart;
+
+	/**
+	 * The number of requests made for the store within the bucket.
+	 */
+	@Column(nullable = false)
+	long callCount;
+
+	/**
+	 * The composite primary key of a bucket.
+	 */
+	@Getter
+	@NoArgsConstructor
+	@AllArgsConstructor
+	@EqualsAndHashCode
+	public static class Key implements Serializable {
+		String storeId;
+		Granularity granularity;
+		LocalDateTime bucketStart;
+	}
+}
@@ -0,0 +1,38 @@
+package dk.kea.project.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Entity class representing the number of requests made for a store.
+ * <p>
+ * This class is mapped to a rollup table that is incremented as requests are written,
+ * so the request analytics do not have to count the request table.
+ * </p>
+ *
+ * @see Request
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class StoreCallCount {
+
+	/**
+	 * The ID of the store the requests were made for.
+	 */
+	@Id
+	String storeId;
+
+	/**
+	 * The number of requests made for the store.
+	 */
+	@Column(nullable = false)
+	long callCount;
+}
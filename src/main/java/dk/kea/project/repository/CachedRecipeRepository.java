@@ -0,0 +1,30 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.CachedRecipe;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface CachedRecipeRepository extends JpaRepository<CachedRecipe, String> {
+	Optional<CachedRecipe> findByCacheKeyAndExpiresAfter(String cacheKey, LocalDateTime now);
+
+	// Two nodes generating the same recipe at once both store it, the later one wins
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT INTO cached_recipe (cache_key, answer, tokens_used, expires) " +
+			"VALUES (:cacheKey, :answer, :tokensUsed, :expires) " +
+			"ON DUPLICATE KEY UPDATE answer = VALUES(answer), tokens_used = VALUES(tokens_used), expires = VALUES(expires)",
+			nativeQuery = true)
+	int upsert(@Param("cacheKey") String cacheKey, @Param("answer") String answer,
+			   @Param("tokensUsed") int tokensUsed, @Param("expires") LocalDateTime expires);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM CachedRecipe r WHERE r.expires <= :now")
+	int deleteExpired(@Param("now") LocalDateTime now);
+}
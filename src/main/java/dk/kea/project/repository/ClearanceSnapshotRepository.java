@@ -0,0 +1,30 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.ClearanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface ClearanceSnapshotRepository extends JpaRepository<ClearanceSnapshot, String> {
+	Optional<ClearanceSnapshot> findByStoreIdAndExpiresAfter(String storeId, LocalDateTime now);
+
+	// Replaces the snapshot of the store in one statement, whichever node wrote the previous one
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT INTO clearance_snapshot (store_id, etag, expires, products) " +
+			"VALUES (:storeId, :etag, :expires, :products) " +
+			"ON DUPLICATE KEY UPDATE etag = VALUES(etag), expires = VALUES(expires), products = VALUES(products)",
+			nativeQuery = true)
+	int upsert(@Param("storeId") String storeId, @Param("etag") String etag,
+			   @Param("expires") LocalDateTime expires, @Param("products") String products);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM ClearanceSnapshot s WHERE s.expires <= :now")
+	int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,21 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.Offer;
+
+import java.util.Collection;
+
+/**
+ * Set-based write operations on offers, used when ingesting clearances from Salling.
+ */
+public interface OfferBulkRepository {
+
+	/**
+	 * Inserts the given offers with multi-row statements, bypassing the persistence context.
+	 * <p>
+	 * The ids are generated by the database and are not written back to the offers.
+	 * </p>
+	 *
+	 * @param offers The offers to insert. Their product and request must already be persisted.
+	 */
+	void insertAll(Collection<Offer> offers);
+}
@@ -0,0 +1,43 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.Offer;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JDBC implementation of {@link OfferBulkRepository}.
+ */
+public class OfferBulkRepositoryImpl implements OfferBulkRepository {
+	static final int ROWS_PER_STATEMENT = 500;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public OfferBulkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public void insertAll(Collection<Offer> offers) {
+		List<Offer> rows = new ArrayList<>(offers);
+		for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+			List<Offer> chunk = rows.subList(from, Math.min(from + ROWS_PER_STATEMENT, rows.size()));
+			String sql = "INSERT INTO offer (original_price, new_price, discount, percent_discount, ean, request_id) VALUES " +
+					String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, ?, ?, ?)"));
+			Object[] args = new Object[chunk.size() * 6];
+			int i = 0;
+			for (Offer offer : chunk) {
+				args[i++] = offer.getOriginalPrice();
+				args[i++] = offer.getNewPrice();
+				args[i++] = offer.getDiscount();
+				args[i++] = offer.getPercentDiscount();
+				args[i++] = offer.getProduct().getEan();
+				args[i++] = offer.getRequest().getId();
+			}
+			jdbcTemplate.update(sql, args);
+		}
+	}
+}
@@ -1,16 +1,49 @@
 package dk.kea.project.repository;
 
+import dk.kea.project.dto.OfferDetailsResponse;
 import dk.kea.project.entity.Offer;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
-public interface OfferRepository extends JpaRepository<Offer,Integer> {
+public interface OfferRepository extends JpaRepository<Offer,Integer>, OfferBulkRepository {
 	List<Offer> findAllByRequest_Id(int requestId);
 	Offer findAllById(Integer id);
-	@Query("SELECT o.id, o.discount, o.newPrice, o.originalPrice, o.percentDiscount, o.product.ean, o.request.id, o.product.description " +
-			"FROM Offer o JOIN o.product " +
+	@Query("SELECT o.id FROM Offer o WHERE o.id IN :ids")
+	List<Integer> findExistingIds(Collection<Integer> ids);
+	@Query("SELECT o.id, o.product.ean FROM Offer o WHERE o.id IN :ids")
+	List<Object[]> findEansByIds(Collection<Integer> ids);
+	// Keyset pagination on the primary key, so every page costs the same however deep it is
+	@Query("SELECT new dk.kea.project.dto.OfferDetailsResponse(o.id, o.discount, o.newPrice, o.originalPrice, " +
+			"o.percentDiscount, p.ean, o.request.id, p.description) " +
+			"FROM Offer o JOIN o.product p " +
+			"WHERE o.id > :after " +
 			"ORDER BY o.id ASC")
-	List<Object[]> getAllOfferDetailsWithProductDescription();
+	List<OfferDetailsResponse> findOfferDetailsAfter(int after, Pageable pageable);
+
+	// Offer and request ids grow with time, so no offer of a request made before the horizon lies above
+	// the offers of the newest such request that still has any
+	@Query(value = "SELECT MAX(o.id) FROM offer o WHERE o.request_id = (SELECT MAX(r.id) FROM request r " +
+			"WHERE r.created < :horizon AND EXISTS (SELECT 1 FROM offer e WHERE e.request_id = r.id))", nativeQuery = true)
+	Integer findLastOfferIdBefore(LocalDateTime horizon);
+
+	// Keyset on the primary key up to the bound above, so each batch scans only the oldest offers
+	@Query(value = "SELECT o.id FROM offer o JOIN request r ON r.id = o.request_id " +
+			"WHERE o.id > :after AND o.id <= :last AND r.created < :horizon " +
+			"AND NOT EXISTS (SELECT 1 FROM recipe_offers ro WHERE ro.offers_id = o.id) " +
+			"AND NOT EXISTS (SELECT 1 FROM shopping_list_offers so WHERE so.offers_id = o.id) " +
+			"ORDER BY o.id LIMIT :limit", nativeQuery = true)
+	List<Integer> findUnreferencedIdsBefore(LocalDateTime horizon, int after, int last, int limit);
+
+	// Checks the references again, as a recipe or shopping list may have been saved since the ids were read
+	@Modifying
+	@Query(value = "DELETE FROM offer WHERE id IN :ids " +
+			"AND NOT EXISTS (SELECT 1 FROM recipe_offers ro WHERE ro.offers_id = offer.id) " +
+			"AND NOT EXISTS (SELECT 1 FROM shopping_list_offers so WHERE so.offers_id = offer.id)", nativeQuery = true)
+	int deleteUnreferenced(Collection<Integer> ids);
 }
@@ -0,0 +1,21 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.Product;
+
+import java.util.Collection;
+
+/**
+ * Set-based write operations on products, used when ingesting clearances from Salling.
+ */
+public interface ProductBulkRepository {
+
+	/**
+	 * Inserts the given products, or updates the description and image of those that already exist.
+	 * <p>
+	 * Products are written with multi-row statements, bypassing the persistence context.
+	 * </p>
+	 *
+	 * @param products The products to upsert, with unique EANs.
+	 */
+	void upsertAll(Collection<Product> products);
+}
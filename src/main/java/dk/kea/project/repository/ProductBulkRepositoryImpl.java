@@ -0,0 +1,44 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.Product;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JDBC implementation of {@link ProductBulkRepository}.
+ * <p>
+ * Uses MySQL's {@code INSERT ... ON DUPLICATE KEY UPDATE}, which H2 supports in {@code MODE=MySQL}.
+ * </p>
+ */
+public class ProductBulkRepositoryImpl implements ProductBulkRepository {
+	static final int ROWS_PER_STATEMENT = 500;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public ProductBulkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public void upsertAll(Collection<Product> products) {
+		List<Product> rows = new ArrayList<>(products);
+		for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+			List<Product> chunk = rows.subList(from, Math.min(from + ROWS_PER_STATEMENT, rows.size()));
+			String sql = "INSERT INTO product (ean, description, image) VALUES " +
+					String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?)")) +
+					" ON DUPLICATE KEY UPDATE description = VALUES(description), image = VALUES(image)";
+			Object[] args = new Object[chunk.size() * 3];
+			int i = 0;
+			for (Product product : chunk) {
+				args[i++] = product.getEan();
+				args[i++] = product.getDescription();
+				args[i++] = product.getImage();
+			}
+			jdbcTemplate.update(sql, args);
+		}
+	}
+}
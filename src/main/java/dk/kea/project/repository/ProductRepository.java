@@ -10,11 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 
-public interface ProductRepository extends JpaRepository<Product, String> {
-	@Query(nativeQuery = true, value = "SELECT p.description AS name, p.ean AS ean, COUNT(*) AS count " +
-			"FROM Product p " +
-			"JOIN Offer o ON p.ean = o.ean " +
-			"JOIN recipe_offers ro ON o.id = ro.offers_id " +
-			"GROUP BY p.ean")
-	List<Object[]> getProductCount();
+public interface ProductRepository extends JpaRepository<Product, String>, ProductBulkRepository {
+	@Query("SELECT p.ean, p.description, p.image FROM Product p")
+	List<Object[]> findAllFingerprintSources();
 }
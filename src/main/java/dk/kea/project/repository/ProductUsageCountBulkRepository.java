@@ -0,0 +1,25 @@
+package dk.kea.project.repository;
+
+import java.util.Map;
+
+/**
+ * Set-based write operations on the product usage counter.
+ */
+public interface ProductUsageCountBulkRepository {
+
+	/**
+	 * Adds the given deltas to the usage counts of their products with multi-row statements,
+	 * creating the counts of products that have none yet.
+	 *
+	 * @param deltas The number of uses to add, negative for removed uses, by EAN.
+	 */
+	void addAll(Map<String, Long> deltas);
+
+	/**
+	 * Overwrites the usage counts of the given products with multi-row statements,
+	 * creating the counts of products that have none yet.
+	 *
+	 * @param counts The number of uses, by EAN.
+	 */
+	void setAll(Map<String, Long> counts);
+}
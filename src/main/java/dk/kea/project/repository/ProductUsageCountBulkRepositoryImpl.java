@@ -0,0 +1,51 @@
+package dk.kea.project.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC implementation of {@link ProductUsageCountBulkRepository}.
+ * <p>
+ * Uses MySQL's {@code INSERT ... ON DUPLICATE KEY UPDATE}, which H2 supports in {@code MODE=MySQL}.
+ * </p>
+ */
+public class ProductUsageCountBulkRepositoryImpl implements ProductUsageCountBulkRepository {
+	static final int ROWS_PER_STATEMENT = 500;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public ProductUsageCountBulkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public void addAll(Map<String, Long> deltas) {
+		upsert(deltas, "usage_count = usage_count + VALUES(usage_count)");
+	}
+
+	@Override
+	public void setAll(Map<String, Long> counts) {
+		upsert(counts, "usage_count = VALUES(usage_count)");
+	}
+
+	private void upsert(Map<String, Long> counts, String update) {
+		List<Map.Entry<String, Long>> rows = new ArrayList<>(counts.entrySet());
+		for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+			List<Map.Entry<String, Long>> chunk = rows.subList(from, Math.min(from + ROWS_PER_STATEMENT, rows.size()));
+			String sql = "INSERT INTO product_usage_count (ean, usage_count) VALUES " +
+					String.join(", ", Collections.nCopies(chunk.size(), "(?, ?)")) +
+					" ON DUPLICATE KEY UPDATE " + update;
+			Object[] args = new Object[chunk.size() * 2];
+			int i = 0;
+			for (Map.Entry<String, Long> count : chunk) {
+				args[i++] = count.getKey();
+				args[i++] = count.getValue();
+			}
+			jdbcTemplate.update(sql, args);
+		}
+	}
+}
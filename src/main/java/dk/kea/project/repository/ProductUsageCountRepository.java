@@ -0,0 +1,29 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.ProductUsageCount;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface ProductUsageCountRepository extends JpaRepository<ProductUsageCount, String>, ProductUsageCountBulkRepository {
+	@Query("SELECT p.description, p.ean, c.usageCount FROM ProductUsageCount c JOIN Product p ON p.ean = c.ean " +
+			"WHERE c.usageCount > 0 ORDER BY c.usageCount DESC, p.ean")
+	List<Object[]> findMostUsed(Pageable pageable);
+
+	// Taken before a recount, so the uses a recipe adds or removes meanwhile wait for the correction instead of being overwritten
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT c FROM ProductUsageCount c")
+	List<ProductUsageCount> findAllForUpdate();
+
+	// The source of truth the counter is reconciled with, counted from the saved recipes
+	@Query(nativeQuery = true, value = "SELECT o.ean, COUNT(*) " +
+			"FROM offer o " +
+			"JOIN recipe_offers ro ON o.id = ro.offers_id " +
+			"WHERE o.ean IS NOT NULL " +
+			"GROUP BY o.ean")
+	List<Object[]> countUsageFromRecipes();
+}
@@ -0,0 +1,36 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.RecipeJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface RecipeJobRepository extends JpaRepository<RecipeJob, String> {
+	@Query("SELECT j.id FROM RecipeJob j WHERE j.status = dk.kea.project.entity.RecipeJob$Status.QUEUED ORDER BY j.created")
+	List<String> findQueuedIds(Pageable pageable);
+
+	// Only one worker of any node gets to run a job
+	@Modifying
+	@Transactional
+	@Query("UPDATE RecipeJob j SET j.status = dk.kea.project.entity.RecipeJob$Status.RUNNING, j.started = :now " +
+			"WHERE j.id = :id AND j.status = dk.kea.project.entity.RecipeJob$Status.QUEUED")
+	int claim(@Param("id") String id, @Param("now") LocalDateTime now);
+
+	// Jobs running for longer than any completion takes were interrupted by a restart
+	@Modifying
+	@Transactional
+	@Query("UPDATE RecipeJob j SET j.status = dk.kea.project.entity.RecipeJob$Status.QUEUED " +
+			"WHERE j.status = dk.kea.project.entity.RecipeJob$Status.RUNNING AND j.started < :before")
+	int requeueStale(@Param("before") LocalDateTime before);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM RecipeJob j WHERE j.finished < :before")
+	int deleteFinishedBefore(@Param("before") LocalDateTime before);
+}
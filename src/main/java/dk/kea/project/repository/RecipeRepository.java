@@ -1,11 +1,15 @@
 package dk.kea.project.repository;
 
+import dk.kea.project.dto.RecipeResponse;
 import dk.kea.project.entity.Recipe;
-import dk.kea.project.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 
 public interface RecipeRepository extends JpaRepository<Recipe, Integer> {
-    List<Recipe> findAllByUser(User user);
+    // Selects only the rendered columns, without loading the user or the offers
+    @Query("SELECT new dk.kea.project.dto.RecipeResponse(r.id, r.recipeTitle, r.recipeBody) FROM Recipe r " +
+            "WHERE r.user.username = :username ORDER BY r.id")
+    List<RecipeResponse> findResponsesByUserUsername(String username);
 }
@@ -0,0 +1,29 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.RefreshLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+// Every statement commits on its own, so a lease is visible to the other nodes as soon as it is taken
+public interface RefreshLeaseRepository extends JpaRepository<RefreshLease, String> {
+	@Modifying
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Query(value = "INSERT IGNORE INTO refresh_lease (store_id, owner, expires) " +
+			"VALUES (:storeId, :owner, TIMESTAMPADD(SECOND, :seconds, LOCALTIMESTAMP))", nativeQuery = true)
+	int insertIfAbsent(@Param("storeId") String storeId, @Param("owner") String owner, @Param("seconds") long seconds);
+
+	@Modifying
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Query(value = "UPDATE refresh_lease SET owner = :owner, expires = TIMESTAMPADD(SECOND, :seconds, LOCALTIMESTAMP) " +
+			"WHERE store_id = :storeId AND expires <= LOCALTIMESTAMP", nativeQuery = true)
+	int takeOverExpired(@Param("storeId") String storeId, @Param("owner") String owner, @Param("seconds") long seconds);
+
+	@Modifying
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Query(value = "DELETE FROM refresh_lease WHERE store_id = :storeId AND owner = :owner", nativeQuery = true)
+	int release(@Param("storeId") String storeId, @Param("owner") String owner);
+}
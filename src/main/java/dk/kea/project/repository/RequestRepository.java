@@ -1,5 +1,6 @@
 package dk.kea.project.repository;
 
+import dk.kea.project.dto.FreshRequest;
 import dk.kea.project.entity.Request;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -11,16 +12,13 @@ import java.util.Optional;
 public interface RequestRepository extends JpaRepository<Request, Integer> {
 	boolean existsByStoreId(String id);
 	Request findByStoreId(String id);
-	Request findRequestByStoreIdAndCreatedIsAfter(String id, LocalDateTime nowMinus15);
-	@Query("SELECT s.id, s.name, COUNT(r) AS callCount " +
-			"FROM Store s LEFT JOIN Request r ON s.id = r.store.id " +
-			"GROUP BY s.id, s.name")
-	List<Object[]> countStoreCalls();
-
-	@Query("SELECT s.zip, COUNT(r) AS callCount " +
-			"FROM Store s LEFT JOIN Request r ON s.id = r.store.id " +
-			"GROUP BY s.zip")
-	List<Object[]> countZipcodeCalls();
+	Request findFirstByStoreIdAndCreatedIsAfterOrderByCreatedDesc(String id, LocalDateTime nowMinus15);
+	@Query("SELECT new dk.kea.project.dto.FreshRequest(r.id, r.created) FROM Request r " +
+			"WHERE r.store.id = :storeId AND r.created > :after " +
+			"ORDER BY r.created DESC LIMIT 1")
+	FreshRequest findLatestFresh(String storeId, LocalDateTime after);
+	@Query("SELECT r.store.id, COUNT(r) FROM Request r WHERE r.created > :since GROUP BY r.store.id")
+	List<Object[]> countStoreCallsSince(LocalDateTime since);
 }
 
 
@@ -1,10 +1,19 @@
 package dk.kea.project.repository;
 
+import dk.kea.project.dto.ShoppingListOfferRow;
 import dk.kea.project.entity.ShoppingList;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 
 public interface ShoppingListRepository extends JpaRepository<ShoppingList, Integer> {
-    List<ShoppingList> findAllByUserUsername(String username);
+    // All lists of a user with their offers in one statement, without loading the user, requests or stores
+    @Query("SELECT s.id AS listId, s.createdAt AS createdAt, o.id AS offerId, o.originalPrice AS originalPrice, " +
+            "o.newPrice AS newPrice, o.discount AS discount, o.percentDiscount AS percentDiscount, " +
+            "p.ean AS ean, p.description AS description, p.image AS image " +
+            "FROM ShoppingList s LEFT JOIN s.offers o LEFT JOIN o.product p " +
+            "WHERE s.user.username = :username " +
+            "ORDER BY s.id, o.id")
+    List<ShoppingListOfferRow> findOfferRowsByUserUsername(String username);
 }
@@ -0,0 +1,21 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.Store;
+
+import java.util.Collection;
+
+/**
+ * Set-based write operations on stores, used when ingesting stores from Salling.
+ */
+public interface StoreBulkRepository {
+
+	/**
+	 * Inserts the given stores with multi-row statements, bypassing the persistence context.
+	 * <p>
+	 * Stores that were inserted concurrently by another request are left unchanged.
+	 * </p>
+	 *
+	 * @param stores The stores to insert, with unique ids.
+	 */
+	void insertAll(Collection<Store> stores);
+}
@@ -0,0 +1,47 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.Store;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JDBC implementation of {@link StoreBulkRepository}.
+ * <p>
+ * Uses MySQL's {@code INSERT ... ON DUPLICATE KEY UPDATE}, which H2 supports in {@code MODE=MySQL}.
+ * </p>
+ */
+public class StoreBulkRepositoryImpl implements StoreBulkRepository {
+	static final int ROWS_PER_STATEMENT = 500;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public StoreBulkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public void insertAll(Collection<Store> stores) {
+		List<Store> rows = new ArrayList<>(stores);
+		for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+			List<Store> chunk = rows.subList(from, Math.min(from + ROWS_PER_STATEMENT, rows.size()));
+			String sql = "INSERT INTO store (id, name, brand, zip, city, street) VALUES " +
+					String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, ?, ?, ?)")) +
+					" ON DUPLICATE KEY UPDATE id = id";
+			Object[] args = new Object[chunk.size() * 6];
+			int i = 0;
+			for (Store store : chunk) {
+				args[i++] = store.getId();
+				args[i++] = store.getName();
+				args[i++] = store.getBrand();
+				args[i++] = store.getZip();
+				args[i++] = store.getCity();
+				args[i++] = store.getStreet();
+			}
+			jdbcTemplate.update(sql, args);
+		}
+	}
+}
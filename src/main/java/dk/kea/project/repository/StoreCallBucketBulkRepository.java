@@ -0,0 +1,19 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.StoreCallBucket;
+
+import java.util.Collection;
+
+/**
+ * Set-based write operations on the time-bucketed store call rollup.
+ */
+public interface StoreCallBucketBulkRepository {
+
+	/**
+	 * Adds the call counts of the given buckets to the stored buckets with multi-row statements,
+	 * creating the buckets that do not exist yet.
+	 *
+	 * @param deltas The buckets holding the number of calls to add, with unique keys.
+	 */
+	void addAll(Collection<StoreCallBucket> deltas);
+}
@@ -0,0 +1,47 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.StoreCallBucket;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JDBC implementation of {@link StoreCallBucketBulkRepository}.
+ * <p>
+ * Uses MySQL's {@code INSERT ... ON DUPLICATE KEY UPDATE}, which H2 supports in {@code MODE=MySQL}.
+ * The increment is applied by the database, so concurrent flushes from several instances add up.
+ * </p>
+ */
+public class StoreCallBucketBulkRepositoryImpl implements StoreCallBucketBulkRepository {
+	static final int ROWS_PER_STATEMENT = 500;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public StoreCallBucketBulkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public void addAll(Collection<StoreCallBucket> deltas) {
+		List<StoreCallBucket> rows = new ArrayList<>(deltas);
+		for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+			List<StoreCallBucket> chunk = rows.subList(from, Math.min(from + ROWS_PER_STATEMENT, rows.size()));
+			String sql = "INSERT INTO store_call_bucket (store_id, granularity, bucket_start, call_count) VALUES " +
+					String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, ?)")) +
+					" ON DUPLICATE KEY UPDATE call_count = call_count + VALUES(call_count)";
+			Object[] args = new Object[chunk.size() * 4];
+			int i = 0;
+			for (StoreCallBucket delta : chunk) {
+				args[i++] = delta.getStoreId();
+				args[i++] = delta.getGranularity().name();
+				args[i++] = Timestamp.valueOf(delta.getBucketStart());
+				args[i++] = delta.getCallCount();
+			}
+			jdbcTemplate.update(sql, args);
+		}
+	}
+}
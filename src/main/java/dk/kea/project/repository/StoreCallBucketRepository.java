@@ -0,0 +1,38 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.StoreCallBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface StoreCallBucketRepository extends JpaRepository<StoreCallBucket, StoreCallBucket.Key>, StoreCallBucketBulkRepository {
+	// A daily bucket overlapping the start of the range starts before it, so days are matched from the start of its day
+	@Query("SELECT b.storeId, b.bucketStart, SUM(b.callCount) FROM StoreCallBucket b " +
+			"WHERE (b.bucketStart >= :from OR b.granularity = DAY AND b.bucketStart >= :fromDay) AND b.bucketStart < :to " +
+			"GROUP BY b.storeId, b.bucketStart ORDER BY b.bucketStart")
+	List<Object[]> countStoreCallsBetween(LocalDateTime from, LocalDateTime fromDay, LocalDateTime to);
+
+	@Query("SELECT s.zip, b.bucketStart, SUM(b.callCount) FROM StoreCallBucket b JOIN Store s ON s.id = b.storeId " +
+			"WHERE (b.bucketStart >= :from OR b.granularity = DAY AND b.bucketStart >= :fromDay) AND b.bucketStart < :to " +
+			"GROUP BY s.zip, b.bucketStart ORDER BY b.bucketStart")
+	List<Object[]> countZipcodeCallsBetween(LocalDateTime from, LocalDateTime fromDay, LocalDateTime to);
+
+	@Query("SELECT b.storeId, year(b.bucketStart), month(b.bucketStart), day(b.bucketStart), SUM(b.callCount) " +
+			"FROM StoreCallBucket b WHERE b.granularity = :granularity AND b.bucketStart < :before " +
+			"GROUP BY b.storeId, year(b.bucketStart), month(b.bucketStart), day(b.bucketStart)")
+	List<Object[]> sumByDayBefore(StoreCallBucket.Granularity granularity, LocalDateTime before);
+
+	@Modifying
+	@Query("DELETE FROM StoreCallBucket b WHERE b.granularity = :granularity AND b.bucketStart < :before")
+	int deleteBefore(StoreCallBucket.Granularity granularity, LocalDateTime before);
+
+	// A counted request falls within a bucket of its store, so the requests before the oldest one were never counted
+	@Query("SELECT r.store.id, year(r.created), month(r.created), day(r.created), hour(r.created), COUNT(r) " +
+			"FROM Request r WHERE r.store IS NOT NULL AND r.created < :before AND NOT EXISTS " +
+			"(SELECT b FROM StoreCallBucket b WHERE b.storeId = r.store.id AND b.bucketStart <= r.created) " +
+			"GROUP BY r.store.id, year(r.created), month(r.created), day(r.created), hour(r.created)")
+	List<Object[]> countUncountedRequestsByHour(LocalDateTime before);
+}
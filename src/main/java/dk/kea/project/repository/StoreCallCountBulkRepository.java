@@ -0,0 +1,17 @@
+package dk.kea.project.repository;
+
+import java.util.Map;
+
+/**
+ * Set-based write operations on the store call rollup.
+ */
+public interface StoreCallCountBulkRepository {
+
+	/**
+	 * Adds the given deltas to the call counts of their stores with multi-row statements,
+	 * creating the counts of stores that have none yet.
+	 *
+	 * @param deltas The number of calls to add, by store ID.
+	 */
+	void addAll(Map<String, Long> deltas);
+}
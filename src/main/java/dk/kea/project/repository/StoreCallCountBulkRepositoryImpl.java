@@ -0,0 +1,43 @@
+package dk.kea.project.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC implementation of {@link StoreCallCountBulkRepository}.
+ * <p>
+ * Uses MySQL's {@code INSERT ... ON DUPLICATE KEY UPDATE}, which H2 supports in {@code MODE=MySQL}.
+ * The increment is applied by the database, so concurrent flushes from several instances add up.
+ * </p>
+ */
+public class StoreCallCountBulkRepositoryImpl implements StoreCallCountBulkRepository {
+	static final int ROWS_PER_STATEMENT = 500;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public StoreCallCountBulkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public void addAll(Map<String, Long> deltas) {
+		List<Map.Entry<String, Long>> rows = new ArrayList<>(deltas.entrySet());
+		for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+			List<Map.Entry<String, Long>> chunk = rows.subList(from, Math.min(from + ROWS_PER_STATEMENT, rows.size()));
+			String sql = "INSERT INTO store_call_count (store_id, call_count) VALUES " +
+					String.join(", ", Collections.nCopies(chunk.size(), "(?, ?)")) +
+					" ON DUPLICATE KEY UPDATE call_count = call_count + VALUES(call_count)";
+			Object[] args = new Object[chunk.size() * 2];
+			int i = 0;
+			for (Map.Entry<String, Long> delta : chunk) {
+				args[i++] = delta.getKey();
+				args[i++] = delta.getValue();
+			}
+			jdbcTemplate.update(sql, args);
+		}
+	}
+}
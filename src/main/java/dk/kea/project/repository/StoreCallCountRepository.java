@@ -0,0 +1,18 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.entity.StoreCallCount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface StoreCallCountRepository extends JpaRepository<StoreCallCount, String>, StoreCallCountBulkRepository {
+	@Query("SELECT s.id, s.name, COALESCE(c.callCount, 0) " +
+			"FROM Store s LEFT JOIN StoreCallCount c ON s.id = c.storeId")
+	List<Object[]> countStoreCalls();
+
+	@Query("SELECT s.zip, COALESCE(SUM(c.callCount), 0) " +
+			"FROM Store s LEFT JOIN StoreCallCount c ON s.id = c.storeId " +
+			"GROUP BY s.zip")
+	List<Object[]> countZipcodeCalls();
+}
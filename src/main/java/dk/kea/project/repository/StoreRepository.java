@@ -2,11 +2,14 @@ package dk.kea.project.repository;
 
 import dk.kea.project.entity.Store;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
 
-public interface StoreRepository extends JpaRepository<Store, String> {
+public interface StoreRepository extends JpaRepository<Store, String>, StoreBulkRepository {
 		List<Store> findAllByZip(String zipcode);
 		Store findStoreById(String id);
+		@Query("SELECT s.id FROM Store s WHERE s.id IN :ids")
+		List<String> findExistingIds(Collection<String> ids);
 }
-
@@ -0,0 +1,213 @@
+package dk.kea.project.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker of a single upstream, deciding from the outcomes of its recent calls whether
+ * new calls are sent at all.
+ * <p>
+ * While closed, the outcomes of the most recent calls are kept in a sliding window. Once enough
+ * calls are recorded and the share of failures reaches the threshold, the circuit opens and every
+ * call is rejected for the open duration, so a failing upstream is not kept busy with requests
+ * that would wait for their timeout. After that, a few probe calls are let through: when all of
+ * them succeed the circuit closes, and a single failure opens it again.
+ * </p>
+ * <p>
+ * The state is exported as a gauge (0 closed, 1 open, 2 half-open) and every transition is counted.
+ * </p>
+ */
+public class CircuitBreaker {
+	public static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	/**
+	 * The states of a circuit breaker, in the order of their gauge values.
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final String name;
+	// Outcomes of the most recent calls, true for a failure, overwritten oldest first
+	private final boolean[] window;
+	private final int minimumCalls;
+	private final double failureRateThreshold;
+	private final long openDurationNanos;
+	private final int halfOpenCalls;
+	private final Map<State, Counter> transitions = new EnumMap<>(State.class);
+	private State state = State.CLOSED;
+	private int recorded;
+	private int next;
+	private int failures;
+	private long openedAt;
+	private int probesLeft;
+	private int probesSucceeded;
+
+	/**
+	 * Constructs a new closed CircuitBreaker and registers its metrics.
+	 *
+	 * @param name                 The name of the upstream, used in the metrics.
+	 * @param slidingWindowSize    The number of most recent calls the failure rate is computed over.
+	 * @param minimumCalls         The number of calls that must be recorded before the circuit can open.
+	 * @param failureRateThreshold The failure rate, in percent, at which the circuit opens.
+	 * @param openDuration         How long the open circuit rejects calls.
+	 * @param halfOpenCalls        The number of probe calls that must succeed to close the circuit.
+	 * @param meterRegistry        The registry the metrics are registered in.
+	 */
+	public CircuitBreaker(String name, int slidingWindowSize, int minimumCalls, double failureRateThreshold,
+						  Duration openDuration, int halfOpenCalls, MeterRegistry meterRegistry) {
+		this.name = name;
+		this.window = new boolean[slidingWindowSize];
+		this.minimumCalls = Math.min(minimumCalls, slidingWindowSize);
+		this.failureRateThreshold = failureRateThreshold;
+		this.openDurationNanos = openDuration.toNanos();
+		this.halfOpenCalls = halfOpenCalls;
+		for (State to : State.values()) {
+			transitions.put(to, meterRegistry.counter("greenplate.upstream.circuit.transitions",
+					"upstream", name, "state", to.name().toLowerCase()));
+		}
+		Gauge.builder("greenplate.upstream.circuit.state", this, breaker -> breaker.getState().ordinal())
+				.tag("upstream", name)
+				.description("State of the circuit breaker: 0 closed, 1 open, 2 half-open")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Asks for permission to send a call. Every permitted call must be followed by exactly one of
+	 * {@link #onSuccess()}, {@link #onFailure()} or {@link #onIgnored()}.
+	 *
+	 * @return {@code true} if the call may be sent, {@code false} if it must be rejected.
+	 */
+	public boolean tryAcquire() {
+		lock.lock();
+		try {
+			if (state == State.OPEN) {
+				if (System.nanoTime() - openedAt < openDurationNanos) {
+					return false;
+				}
+				transition(State.HALF_OPEN);
+				probesLeft = halfOpenCalls;
+				probesSucceeded = 0;
+			}
+			if (state == State.HALF_OPEN) {
+				if (probesLeft == 0) {
+					return false;
+				}
+				probesLeft--;
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Records a permitted call that succeeded.
+	 */
+	public void onSuccess() {
+		lock.lock();
+		try {
+			if (state == State.HALF_OPEN) {
+				if (++probesSucceeded >= halfOpenCalls) {
+					transition(State.CLOSED);
+					recorded = 0;
+					next = 0;
+					failures = 0;
+				}
+			} else if (state == State.CLOSED) {
+				record(false);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Records a permitted call that failed.
+	 */
+	public void onFailure() {
+		lock.lock();
+		try {
+			if (state == State.HALF_OPEN) {
+				open();
+			} else if (state == State.CLOSED) {
+				record(true);
+				if (recorded >= minimumCalls && failures * 100.0 >= failureRateThreshold * recorded) {
+					open();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Records a permitted call that ended without an outcome, such as a cancelled one, handing its
+	 * probe back if it was one.
+	 */
+	public void onIgnored() {
+		lock.lock();
+		try {
+			if (state == State.HALF_OPEN && probesLeft < halfOpenCalls - probesSucceeded) {
+				probesLeft++;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the current state, without letting an open circuit move to half-open.
+	 *
+	 * @return The state of the circuit.
+	 */
+	public State getState() {
+		lock.lock();
+		try {
+			return state;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void record(boolean failure) {
+		if (recorded == window.length) {
+			if (window[next]) {
+				failures--;
+			}
+		} else {
+			recorded++;
+		}
+		window[next] = failure;
+		if (failure) {
+			failures++;
+		}
+		next = (next + 1) % window.length;
+	}
+
+	private void open() {
+		openedAt = System.nanoTime();
+		transition(State.OPEN);
+	}
+
+	private void transition(State to) {
+		if (to == State.OPEN && state == State.HALF_OPEN) {
+			logger.warn("Circuit of " + name + " opened again after a failed probe call");
+		} else if (to == State.OPEN) {
+			logger.warn("Circuit of " + name + " opened after " + failures + " failures in " + recorded + " calls");
+		} else {
+			logger.info("Circuit of " + name + " is " + to.name().toLowerCase().replace('_', '-'));
+		}
+		state = to;
+		transitions.get(to).increment();
+	}
+}
@@ -0,0 +1,126 @@
+package dk.kea.project.service;
+
+import dk.kea.project.dto.CachedResponse;
+import dk.kea.project.dto.ProductResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory cache of materialized clearance snapshots, keyed by store id.
+ * <p>
+ * Each entry holds the {@code ProductResponse} list of one {@code Request}, tagged with the id
+ * of that request, and lives until the request expires. When the cache grows beyond its maximum size, the entries closest
+ * to expiry are evicted first. Hits, misses and evictions are exported as metrics.
+ * </p>
+ */
+@Component
+public class ClearanceCache {
+	private final Map<String, CachedResponse<List<ProductResponse>>> entries = new ConcurrentHashMap<>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final int maxSize;
+	private final Counter hits;
+	private final Counter misses;
+	private final Counter expiredEvictions;
+	private final Counter sizeEvictions;
+
+	/**
+	 * Constructs a new ClearanceCache and registers its metrics.
+	 *
+	 * @param meterRegistry The registry the cache metrics are registered in.
+	 * @param maxSize       The maximum number of stores kept in the cache.
+	 */
+	public ClearanceCache(MeterRegistry meterRegistry, @Value("${app.clearance-cache.max-size:500}") int maxSize) {
+		this.maxSize = maxSize;
+		this.hits = meterRegistry.counter("greenplate.clearance.cache.requests", "result", "hit");
+		this.misses = meterRegistry.counter("greenplate.clearance.cache.requests", "result", "miss");
+		this.expiredEvictions = meterRegistry.counter("greenplate.clearance.cache.evictions", "cause", "expired");
+		this.sizeEvictions = meterRegistry.counter("greenplate.clearance.cache.evictions", "cause", "size");
+		Gauge.builder("greenplate.clearance.cache.size", entries, Map::size).register(meterRegistry);
+	}
+
+	/**
+	 * Returns the cached clearance snapshot of a store, if a non-expired one exists.
+	 *
+	 * @param storeId The ID of the store.
+	 * @return The cached snapshot, or {@code null} if there is no valid snapshot.
+	 */
+	public CachedResponse<List<ProductResponse>> get(String storeId) {
+		CachedResponse<List<ProductResponse>> entry = entries.get(storeId);
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		if (entry.isExpired(LocalDateTime.now())) {
+			if (entries.remove(storeId, entry)) {
+				expiredEvictions.increment();
+			}
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry;
+	}
+
+	/**
+	 * Caches the clearance snapshot of a store until it expires. Snapshots without expiry are not cached.
+	 *
+	 * @param storeId  The ID of the store.
+	 * @param snapshot The products of the store's current request, with their entity tag and expiry.
+	 */
+	public void put(String storeId, CachedResponse<List<ProductResponse>> snapshot) {
+		if (snapshot.isExpired(LocalDateTime.now())) {
+			return;
+		}
+		entries.put(storeId, new CachedResponse<>(List.copyOf(snapshot.getBody()), snapshot.getEtag(), snapshot.getExpires()));
+		if (entries.size() > maxSize) {
+			evict();
+		}
+	}
+
+	/**
+	 * Removes the snapshot of a store from the cache.
+	 *
+	 * @param storeId The ID of the store.
+	 */
+	public void invalidate(String storeId) {
+		entries.remove(storeId);
+	}
+
+	// Drops expired entries first, then the entries closest to expiry until the cache fits again
+	private void evict() {
+		evictionLock.lock();
+		try {
+			LocalDateTime now = LocalDateTime.now();
+			entries.forEach((storeId, entry) -> {
+				if (entry.isExpired(now) && entries.remove(storeId, entry)) {
+					expiredEvictions.increment();
+				}
+			});
+			int overflow = entries.size() - maxSize;
+			if (overflow <= 0) {
+				return;
+			}
+			entries.entrySet().stream()
+					.sorted(Comparator.comparing(e -> e.getValue().getExpires()))
+					.limit(overflow)
+					.toList()
+					.forEach(e -> {
+						if (entries.remove(e.getKey(), e.getValue())) {
+							sizeEvictions.increment();
+						}
+					});
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package dk.kea.project.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks how often the clearances of each store are requested, and where they were served from.
+ * <p>
+ * Every clearance lookup adds to its store's demand. {@link #decay(double)} folds the recent
+ * lookups into a decaying score, which ranks the stores worth keeping warm. The share of
+ * lookups served without waiting for Salling is exported as the clearance hit ratio.
+ * </p>
+ */
+@Component
+public class ClearanceDemand {
+	// Scores below this are dropped, so stores nobody asks for anymore are forgotten
+	private static final double MIN_SCORE = 0.01;
+
+	private final Map<String, Score> scores = new ConcurrentHashMap<>();
+	private final Map<Source, Counter> lookups = new ConcurrentHashMap<>();
+
+	/**
+	 * Where a clearance lookup was served from.
+	 */
+	public enum Source {
+		CACHE, DATABASE, STALE, UPSTREAM
+	}
+
+	/**
+	 * Constructs a new ClearanceDemand and registers its metrics.
+	 *
+	 * @param meterRegistry The registry the lookup metrics are registered in.
+	 */
+	public ClearanceDemand(MeterRegistry meterRegistry) {
+		for (Source source : Source.values()) {
+			lookups.put(source, meterRegistry.counter("greenplate.clearance.lookups",
+					"source", source.name().toLowerCase()));
+		}
+		Gauge.builder("greenplate.clearance.hit.ratio", this, ClearanceDemand::hitRatio).register(meterRegistry);
+	}
+
+	/**
+	 * Records a clearance lookup of a store.
+	 *
+	 * @param storeId The ID of the store.
+	 * @param source  Where the lookup was served from.
+	 */
+	public void record(String storeId, Source source) {
+		scores.computeIfAbsent(storeId, id -> new Score()).recent.increment();
+		lookups.get(source).increment();
+	}
+
+	/**
+	 * Adds historical lookups of a store to its score.
+	 *
+	 * @param storeId The ID of the store.
+	 * @param count   The number of lookups.
+	 */
+	public void seed(String storeId, long count) {
+		scores.computeIfAbsent(storeId, id -> new Score()).recent.add(count);
+	}
+
+	/**
+	 * Multiplies every score by the given factor and adds the lookups recorded since the last call.
+	 * Must not be called concurrently.
+	 *
+	 * @param factor The factor between 0 and 1 the scores are multiplied by.
+	 */
+	public void decay(double factor) {
+		scores.forEach((storeId, score) -> {
+			score.value = score.value * factor + score.recent.sumThenReset();
+			if (score.value < MIN_SCORE) {
+				scores.remove(storeId, score);
+			}
+		});
+	}
+
+	/**
+	 * Returns the stores with the highest scores, as of the last {@link #decay(double)}.
+	 *
+	 * @param limit The maximum number of stores to return.
+	 * @return The IDs of the most requested stores, most requested first.
+	 */
+	public List<String> top(int limit) {
+		return scores.entrySet().stream()
+				.filter(entry -> entry.getValue().value > 0)
+				.sorted(Comparator.comparingDouble((Map.Entry<String, Score> entry) -> entry.getValue().value).reversed())
+				.limit(limit)
+				.map(Map.Entry::getKey)
+				.toList();
+	}
+
+	double hitRatio() {
+		double upstream = lookups.get(Source.UPSTREAM).count();
+		double total = lookups.values().stream().mapToDouble(Counter::count).sum();
+		return total == 0 ? 0 : (total - upstream) / total;
+	}
+
+	private static class Score {
+		final LongAdder recent = new LongAdder();
+		volatile double value;
+	}
+}
@@ -0,0 +1,184 @@
+package dk.kea.project.service;
+
+import dk.kea.project.dto.FreshRequest;
+import dk.kea.project.repository.RequestRepository;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Refreshes the clearances of the most requested stores shortly before their request expires,
+ * so their lookups are served from the cache or the database instead of waiting for Salling.
+ * <p>
+ * Store popularity comes from {@link ClearanceDemand}, seeded with the request history at startup.
+ * Refreshes run on a bounded worker pool, and the Salling calls they make are limited by a
+ * global rate budget. Outcomes and the lag between a refresh becoming due and completing are
+ * exported as metrics.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "app.prefetch.enabled", havingValue = "true", matchIfMissing = true)
+public class ClearancePrefetcher {
+	public static final Logger logger = LoggerFactory.getLogger(ClearancePrefetcher.class);
+
+	ClearanceService clearanceService;
+	ClearanceDemand clearanceDemand;
+	RequestService requestService;
+	RequestRepository requestRepository;
+
+	private final int topStores;
+	private final Duration leadTime;
+	private final Duration historyWindow;
+	private final double decayFactor;
+	private final Bucket upstreamBudget;
+	private final ThreadPoolExecutor workers;
+	// Stores with a refresh queued or running
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+	private final Counter refreshed;
+	private final Counter failed;
+	private final Counter throttled;
+	private final Counter rejected;
+	private final Timer lag;
+
+	/**
+	 * Constructs a new ClearancePrefetcher and registers its metrics.
+	 *
+	 * @param clearanceService        The ClearanceService used to refresh stores.
+	 * @param clearanceDemand         The tracker ranking stores by popularity.
+	 * @param requestService          The RequestService for finding the newest request of a store.
+	 * @param requestRepository       The repository the popularity is seeded from.
+	 * @param meterRegistry           The registry the prefetch metrics are registered in.
+	 * @param topStores               The number of most requested stores kept warm.
+	 * @param leadTime                How long before a request expires its store is refreshed.
+	 * @param intervalMs              The delay between two prefetch runs, in milliseconds.
+	 * @param halfLife                The time after which a lookup counts half towards popularity.
+	 * @param historyWindow           How far back the request history is read at startup.
+	 * @param workers                 The number of concurrent refreshes.
+	 * @param queueSize               The number of refreshes that may wait for a worker.
+	 * @param upstreamCallsPerMinute  The maximum number of Salling calls made by prefetching per minute.
+	 */
+	public ClearancePrefetcher(ClearanceService clearanceService, ClearanceDemand clearanceDemand,
+							   RequestService requestService, RequestRepository requestRepository,
+							   MeterRegistry meterRegistry,
+							   @Value("${app.prefetch.top-stores:50}") int topStores,
+							   @Value("${app.prefetch.lead-time:2m}") Duration leadTime,
+							   @Value("${app.prefetch.interval-ms:30000}") long intervalMs,
+							   @Value("${app.prefetch.half-life:1h}") Duration halfLife,
+							   @Value("${app.prefetch.history-window:24h}") Duration historyWindow,
+							   @Value("${app.prefetch.workers:4}") int workers,
+							   @Value("${app.prefetch.queue-size:100}") int queueSize,
+							   @Value("${app.prefetch.upstream-calls-per-minute:60}") int upstreamCallsPerMinute) {
+		this.clearanceService = clearanceService;
+		this.clearanceDemand = clearanceDemand;
+		this.requestService = requestService;
+		this.requestRepository = requestRepository;
+		this.topStores = topStores;
+		this.leadTime = leadTime;
+		this.historyWindow = historyWindow;
+		this.decayFactor = Math.pow(0.5, (double) intervalMs / halfLife.toMillis());
+		this.upstreamBudget = Bucket.builder()
+				.addLimit(Bandwidth.classic(upstreamCallsPerMinute,
+						Refill.greedy(upstreamCallsPerMinute, Duration.ofMinutes(1))))
+				.build();
+		AtomicInteger threadCount = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize),
+				runnable -> {
+					Thread thread = new Thread(runnable, "prefetch-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.refreshed = meterRegistry.counter("greenplate.clearance.prefetch", "result", "refreshed");
+		this.failed = meterRegistry.counter("greenplate.clearance.prefetch", "result", "failed");
+		this.throttled = meterRegistry.counter("greenplate.clearance.prefetch", "result", "throttled");
+		this.rejected = meterRegistry.counter("greenplate.clearance.prefetch", "result", "rejected");
+		this.lag = Timer.builder("greenplate.clearance.prefetch.lag")
+				.description("Time between a store's refresh becoming due and completing")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Seeds the store popularity with the requests made within the history window.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void seed() {
+		for (Object[] row : requestRepository.countStoreCallsSince(LocalDateTime.now().minus(historyWindow))) {
+			clearanceDemand.seed((String) row[0], (Long) row[1]);
+		}
+	}
+
+	/**
+	 * Queues a refresh for every top store whose newest request expires within the lead time.
+	 */
+	@Scheduled(fixedDelayString = "${app.prefetch.interval-ms:30000}", initialDelayString = "${app.prefetch.interval-ms:30000}")
+	public void prefetch() {
+		clearanceDemand.decay(decayFactor);
+		LocalDateTime now = LocalDateTime.now();
+		for (String storeId : clearanceDemand.top(topStores)) {
+			if (pending.contains(storeId)) {
+				continue;
+			}
+			FreshRequest newest = requestService.findLatestFreshRequest(storeId, now.minusMinutes(15));
+			// A store without a valid request has been due since its last one expired, which is not tracked
+			LocalDateTime due = newest == null ? now : newest.getExpires().minus(leadTime);
+			if (due.isAfter(now)) {
+				continue;
+			}
+			if (!upstreamBudget.tryConsume(1)) {
+				throttled.increment();
+				return;
+			}
+			submit(storeId, due);
+		}
+	}
+
+	private void submit(String storeId, LocalDateTime due) {
+		pending.add(storeId);
+		try {
+			workers.execute(() -> refresh(storeId, due));
+		} catch (RejectedExecutionException e) {
+			pending.remove(storeId);
+			rejected.increment();
+		}
+	}
+
+	private void refresh(String storeId, LocalDateTime due) {
+		try {
+			clearanceService.prefetch(storeId, leadTime);
+			refreshed.increment();
+			lag.record(Duration.between(due, LocalDateTime.now()));
+		} catch (RuntimeException e) {
+			failed.increment();
+			logger.warn("Prefetching clearances of store " + storeId + " failed", e);
+		} finally {
+			pending.remove(storeId);
+		}
+	}
+
+	@PreDestroy
+	void shutdown() {
+		workers.shutdownNow();
+	}
+}
@@ -0,0 +1,394 @@
+package dk.kea.project.service;
+
+import dk.kea.project.dto.CachedResponse;
+import dk.kea.project.dto.FreshRequest;
+import dk.kea.project.dto.ProductResponse;
+import dk.kea.project.dto.SallingResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service class responsible for serving the clearance products of a store.
+ * <p>
+ * Clearances are answered from the in-process {@link ClearanceCache} when possible, and then from
+ * the {@link ClearanceSnapshotStore} shared by all nodes. On a miss the newest valid request of the
+ * store is looked up, and only when none exists is a new request made to Salling and persisted.
+ * Concurrent refreshes of the same store are coalesced, so all callers share one Salling call and
+ * one persisted {@code Request}.
+ * </p>
+ * <p>
+ * Across nodes, a refresh is only made by the node holding the {@link StoreRefreshLease} of the
+ * store. The other nodes wait for its request to be saved and serve that one.
+ * </p>
+ * <p>
+ * Every lookup is also available as a reactive variant, which waits for Salling without holding
+ * a thread and runs the JPA calls on the bounded {@code jpaScheduler}.
+ * </p>
+ * <p>
+ * When a lookup needs a refresh and Salling fails, the newest request of the store is served instead,
+ * as long as it expired no longer than the stale-if-error window ago. Such an answer is already
+ * expired, so it is neither cached nor reused by clients without revalidation.
+ * </p>
+ * <p>
+ * With stale-while-revalidate, a lookup finding only a request that expired no longer than the
+ * stale-while-revalidate window ago is answered from it at once, tagged with its age, while the
+ * store is refreshed in the background. Lookups then only wait for Salling when the store has no
+ * request within the window.
+ * </p>
+ */
+@Service
+public class ClearanceService {
+	public static final Logger logger = LoggerFactory.getLogger(ClearanceService.class);
+
+	ClearanceCache clearanceCache;
+	ClearanceSnapshotStore clearanceSnapshotStore;
+	StoreRefreshLease storeRefreshLease;
+	RequestService requestService;
+	ProductService productService;
+	StoreService storeService;
+	SallingService sallingService;
+	Scheduler jpaScheduler;
+	ClearanceDemand clearanceDemand;
+	private final Duration staleIfError;
+	private final Duration staleWhileRevalidate;
+
+	// Refreshes currently in flight, keyed by store id
+	private final Map<String, CompletableFuture<FreshRequest>> refreshes = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new ClearanceService with the necessary services.
+	 *
+	 * @param clearanceCache         The in-process cache holding materialized clearance snapshots.
+	 * @param clearanceSnapshotStore The store holding the clearance snapshots shared by all nodes.
+	 * @param storeRefreshLease      The lease deciding which node refreshes a store.
+	 * @param requestService         The RequestService for handling request-related operations.
+	 * @param productService         The ProductService for retrieving and saving offers.
+	 * @param storeService           The StoreService for handling store-related operations.
+	 * @param sallingService         The SallingService for retrieving food waste from Salling.
+	 * @param jpaScheduler           The scheduler the reactive variants run their JPA calls on.
+	 * @param clearanceDemand        The tracker every clearance lookup is recorded in.
+	 * @param staleIfError           How long after expiring a request is served when Salling fails.
+	 * @param staleWhileRevalidate   How long after expiring a request is served while the store is
+	 *                               refreshed in the background, zero to always wait for the refresh.
+	 */
+	public ClearanceService(ClearanceCache clearanceCache, ClearanceSnapshotStore clearanceSnapshotStore,
+							StoreRefreshLease storeRefreshLease, RequestService requestService,
+							ProductService productService, StoreService storeService,
+							SallingService sallingService, Scheduler jpaScheduler,
+							ClearanceDemand clearanceDemand,
+							@Value("${app.clearance.stale-if-error:1d}") Duration staleIfError,
+							@Value("${app.clearance.stale-while-revalidate:0s}") Duration staleWhileRevalidate) {
+		this.clearanceCache = clearanceCache;
+		this.clearanceSnapshotStore = clearanceSnapshotStore;
+		this.storeRefreshLease = storeRefreshLease;
+		this.requestService = requestService;
+		this.productService = productService;
+		this.storeService = storeService;
+		this.sallingService = sallingService;
+		this.jpaScheduler = jpaScheduler;
+		this.clearanceDemand = clearanceDemand;
+		this.staleIfError = staleIfError;
+		this.staleWhileRevalidate = staleWhileRevalidate;
+	}
+
+	/**
+	 * Retrieves the clearance products of a store.
+	 * <p>
+	 * The products of a request never change, so they are tagged with the id of the request
+	 * and may be reused until the request expires. The products of a request within the
+	 * stale-while-revalidate window are returned already expired.
+	 * </p>
+	 *
+	 * @param storeId The ID of the store for which to retrieve products with clearances.
+	 * @return The {@code ProductResponse} list of the products with clearances, with its entity tag, expiry and creation.
+	 */
+	public CachedResponse<List<ProductResponse>> getClearance(String storeId) {
+		CachedResponse<List<ProductResponse>> cached = clearanceCache.get(storeId);
+		if (cached != null) {
+			clearanceDemand.record(storeId, ClearanceDemand.Source.CACHE);
+			return cached;
+		}
+		CachedResponse<List<ProductResponse>> shared = findSharedSnapshot(storeId);
+		if (shared != null) {
+			clearanceDemand.record(storeId, ClearanceDemand.Source.DATABASE);
+			return shared;
+		}
+		FreshRequest request = findValidRequest(storeId, staleWhileRevalidate.negated());
+		if (request == null) {
+			clearanceDemand.record(storeId, ClearanceDemand.Source.UPSTREAM);
+			request = refreshOrStale(storeId);
+		} else {
+			recordPersisted(storeId, request);
+		}
+		return loadProducts(storeId, request);
+	}
+
+	/**
+	 * Retrieves the clearance products of a store without blocking the calling thread.
+	 *
+	 * @param storeId The ID of the store for which to retrieve products with clearances.
+	 * @return A {@code Mono} emitting the products with clearances, with their entity tag and expiry.
+	 */
+	public Mono<CachedResponse<List<ProductResponse>>> getClearanceReactive(String storeId) {
+		CachedResponse<List<ProductResponse>> cached = clearanceCache.get(storeId);
+		if (cached != null) {
+			clearanceDemand.record(storeId, ClearanceDemand.Source.CACHE);
+			return Mono.just(cached);
+		}
+		Mono<CachedResponse<List<ProductResponse>>> fromRequest = Mono.fromCallable(() -> findValidRequest(storeId, staleWhileRevalidate.negated()))
+				.subscribeOn(jpaScheduler)
+				.doOnNext(request -> recordPersisted(storeId, request))
+				.switchIfEmpty(Mono.defer(() -> {
+					clearanceDemand.record(storeId, ClearanceDemand.Source.UPSTREAM);
+					return refreshReactive(storeId).onErrorResume(e -> Mono.fromCallable(() -> findStaleRequest(storeId, e))
+							.subscribeOn(jpaScheduler)
+							.switchIfEmpty(Mono.error(e)));
+				}))
+				.publishOn(jpaScheduler)
+				.map(request -> loadProducts(storeId, request));
+		return Mono.fromCallable(() -> findSharedSnapshot(storeId))
+				.subscribeOn(jpaScheduler)
+				.doOnNext(shared -> clearanceDemand.record(storeId, ClearanceDemand.Source.DATABASE))
+				.switchIfEmpty(fromRequest);
+	}
+
+	/**
+	 * Makes a new request to Salling for a store and persists it together with its offers.
+	 * <p>
+	 * Only one refresh per store runs at a time. Callers arriving while a refresh is in flight
+	 * wait for it and receive the same {@code Request}.
+	 * </p>
+	 *
+	 * @param storeId The ID of the store to refresh.
+	 * @return The persisted request holding the store's new offers.
+	 */
+	public FreshRequest refresh(String storeId) {
+		return refresh(storeId, Duration.ZERO);
+	}
+
+	/**
+	 * Makes a new request to Salling for a store, unless its newest request stays valid for at least
+	 * the given duration, and caches the store's clearance products.
+	 * <p>
+	 * Used to refresh a store ahead of its request expiring, so lookups never have to wait for Salling.
+	 * </p>
+	 *
+	 * @param storeId      The ID of the store to refresh.
+	 * @param minRemaining The minimum remaining validity of a request that is kept.
+	 */
+	public void prefetch(String storeId, Duration minRemaining) {
+		loadProducts(storeId, refresh(storeId, minRemaining));
+	}
+
+	private FreshRequest refresh(String storeId, Duration minRemaining) {
+		CompletableFuture<FreshRequest> refresh = new CompletableFuture<>();
+		CompletableFuture<FreshRequest> inFlight = refreshes.putIfAbsent(storeId, refresh);
+		if (inFlight != null) {
+			return await(inFlight);
+		}
+		try {
+			// A refresh may have completed between the caller's lookup and this one
+			FreshRequest request = findValidRequest(storeId, minRemaining);
+			if (request == null) {
+				request = refreshLeased(storeId, minRemaining);
+			}
+			refresh.complete(request);
+			return request;
+		} catch (RuntimeException e) {
+			refresh.completeExceptionally(e);
+			throw e;
+		} finally {
+			refreshes.remove(storeId, refresh);
+		}
+	}
+
+	// Records a lookup served from a persisted request, refreshing the store in the background if the request is stale
+	private void recordPersisted(String storeId, FreshRequest request) {
+		if (request.getExpires().isAfter(LocalDateTime.now())) {
+			clearanceDemand.record(storeId, ClearanceDemand.Source.DATABASE);
+			return;
+		}
+		clearanceDemand.record(storeId, ClearanceDemand.Source.STALE);
+		// Lookups arriving while the store is refreshed are served the stale request as well
+		if (!refreshes.containsKey(storeId)) {
+			refreshReactive(storeId)
+					.publishOn(jpaScheduler)
+					.map(fresh -> loadProducts(storeId, fresh))
+					.subscribe(products -> {
+					}, e -> logger.warn("Revalidating the clearances of store " + storeId + " failed: " + e.getMessage()));
+		}
+	}
+
+	// The refreshed request, or the newest stale one if the refresh fails
+	private FreshRequest refreshOrStale(String storeId) {
+		try {
+			return refresh(storeId);
+		} catch (RuntimeException e) {
+			FreshRequest stale = findStaleRequest(storeId, e);
+			if (stale == null) {
+				throw e;
+			}
+			return stale;
+		}
+	}
+
+	private FreshRequest findStaleRequest(String storeId, Throwable failure) {
+		if (staleIfError.isZero()) {
+			return null;
+		}
+		FreshRequest stale = requestService.findLatestFreshRequest(storeId,
+				LocalDateTime.now().minusMinutes(15).minus(staleIfError));
+		if (stale != null) {
+			logger.warn("Serving the expired clearances of store " + storeId + " from " + stale.getCreated()
+					+ ", as refreshing them failed: " + failure.getMessage());
+		}
+		return stale;
+	}
+
+	// Calls Salling if this node gets the store's lease, or waits for the node holding it to save its request
+	private FreshRequest refreshLeased(String storeId, Duration minRemaining) {
+		if (!storeRefreshLease.tryAcquire(storeId)) {
+			FreshRequest request = awaitLeaseHolder(storeId, minRemaining);
+			if (request != null) {
+				return request;
+			}
+			// The holder may have stopped, in which case its lease has lapsed by now
+			if (!storeRefreshLease.tryAcquire(storeId)) {
+				throw leaseHeldElsewhere(storeId);
+			}
+		}
+		try {
+			FreshRequest request = findValidRequest(storeId, minRemaining);
+			return request != null ? request : saveRefresh(storeId, sallingService.getFoodWaste(storeId));
+		} finally {
+			storeRefreshLease.release(storeId);
+		}
+	}
+
+	private FreshRequest awaitLeaseHolder(String storeId, Duration minRemaining) {
+		long deadline = System.nanoTime() + storeRefreshLease.getDuration().toNanos();
+		while (System.nanoTime() < deadline) {
+			try {
+				Thread.sleep(storeRefreshLease.getPollInterval());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw leaseHeldElsewhere(storeId);
+			}
+			FreshRequest request = findValidRequest(storeId, minRemaining);
+			if (request != null) {
+				return request;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reactive variant of {@link #refresh(String)}, sharing its in-flight refreshes.
+	 * <p>
+	 * The refresh runs detached from the subscriber, so a cancelled caller does not abort
+	 * a refresh other callers are waiting for.
+	 * </p>
+	 *
+	 * @param storeId The ID of the store to refresh.
+	 * @return A {@code Mono} emitting the persisted request holding the store's new offers.
+	 */
+	public Mono<FreshRequest> refreshReactive(String storeId) {
+		return Mono.defer(() -> {
+			CompletableFuture<FreshRequest> refresh = new CompletableFuture<>();
+			CompletableFuture<FreshRequest> inFlight = refreshes.putIfAbsent(storeId, refresh);
+			if (inFlight != null) {
+				return Mono.fromFuture(inFlight, true);
+			}
+			refresh.whenComplete((request, e) -> refreshes.remove(storeId, refresh));
+			Mono.fromCallable(() -> findValidRequest(storeId, Duration.ZERO))
+					.subscribeOn(jpaScheduler)
+					.switchIfEmpty(Mono.defer(() -> refreshLeasedReactive(storeId)))
+					.subscribe(refresh::complete, refresh::completeExceptionally);
+			return Mono.fromFuture(refresh, true);
+		});
+	}
+
+	// Reactive variant of refreshLeased, polling for the holder's request without holding a thread
+	private Mono<FreshRequest> refreshLeasedReactive(String storeId) {
+		Mono<Boolean> acquire = Mono.fromCallable(() -> storeRefreshLease.tryAcquire(storeId)).subscribeOn(jpaScheduler);
+		long polls = storeRefreshLease.getDuration().toMillis() / Math.max(1, storeRefreshLease.getPollInterval().toMillis());
+		Mono<FreshRequest> awaitHolder = Mono.fromCallable(() -> findValidRequest(storeId, Duration.ZERO))
+				.subscribeOn(jpaScheduler)
+				.delaySubscription(storeRefreshLease.getPollInterval())
+				.repeatWhenEmpty(repeats -> repeats.take(polls));
+		return acquire.flatMap(acquired -> acquired ? fetchLeasedReactive(storeId) : awaitHolder
+				.switchIfEmpty(Mono.defer(() -> acquire.flatMap(again -> again
+						? fetchLeasedReactive(storeId) : Mono.error(leaseHeldElsewhere(storeId))))));
+	}
+
+	private Mono<FreshRequest> fetchLeasedReactive(String storeId) {
+		return Mono.fromCallable(() -> findValidRequest(storeId, Duration.ZERO))
+				.subscribeOn(jpaScheduler)
+				.switchIfEmpty(Mono.defer(() -> sallingService.getFoodWasteReactive(storeId)
+						.publishOn(jpaScheduler)
+						.map(foodWaste -> saveRefresh(storeId, foodWaste))))
+				.doFinally(signal -> jpaScheduler.schedule(() -> storeRefreshLease.release(storeId)));
+	}
+
+	private static ResponseStatusException leaseHeldElsewhere(String storeId) {
+		return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+				"The clearances of store " + storeId + " are being refreshed, try again later");
+	}
+
+	private FreshRequest saveRefresh(String storeId, List<SallingResponse> foodWaste) {
+		// Through the proxy, so the request and its offers are committed together
+		return new FreshRequest(requestService.saveRefresh(storeService.findStoreById(storeId), foodWaste));
+	}
+
+	private CachedResponse<List<ProductResponse>> loadProducts(String storeId, FreshRequest request) {
+		CachedResponse<List<ProductResponse>> products = new CachedResponse<>(
+				productService.getProducts(request.getId()), "\"clearance-" + request.getId() + "\"",
+				request.getCreated() == null ? null : request.getExpires(), request.getCreated());
+		// A stale request served after a failed refresh is not shared
+		if (!products.isExpired(LocalDateTime.now())) {
+			clearanceCache.put(storeId, products);
+			clearanceSnapshotStore.put(storeId, products);
+		}
+		return products;
+	}
+
+	// A snapshot materialized by any node, kept in the in-process cache once found
+	private CachedResponse<List<ProductResponse>> findSharedSnapshot(String storeId) {
+		CachedResponse<List<ProductResponse>> shared = clearanceSnapshotStore.get(storeId);
+		if (shared != null) {
+			clearanceCache.put(storeId, shared);
+		}
+		return shared;
+	}
+
+	// The newest request of the store that is still valid for at least the given duration
+	private FreshRequest findValidRequest(String storeId, Duration minRemaining) {
+		return requestService.findLatestFreshRequest(storeId,
+				LocalDateTime.now().minusMinutes(15).plus(minRemaining));
+	}
+
+	private FreshRequest await(CompletableFuture<FreshRequest> refresh) {
+		try {
+			return refresh.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package dk.kea.project.service;
+
+import dk.kea.project.dto.CachedResponse;
+import dk.kea.project.dto.ProductResponse;
+
+import java.util.List;
+
+/**
+ * Second-level store of clearance snapshots, shared by every node of the application.
+ * <p>
+ * {@link ClearanceService} looks here after a miss in its in-process {@link ClearanceCache},
+ * so a snapshot materialized by one node is served by all of them. The default implementation
+ * keeps the snapshots in a database table; another store, such as a distributed cache, can be
+ * used by providing a different implementation.
+ * </p>
+ */
+public interface ClearanceSnapshotStore {
+
+	/**
+	 * Returns the clearance snapshot of a store, if a non-expired one exists.
+	 *
+	 * @param storeId The ID of the store.
+	 * @return The snapshot, or {@code null} if there is no valid snapshot.
+	 */
+	CachedResponse<List<ProductResponse>> get(String storeId);
+
+	/**
+	 * Stores the clearance snapshot of a store until it expires, replacing any previous one.
+	 * Snapshots without expiry are not stored.
+	 *
+	 * @param storeId  The ID of the store.
+	 * @param snapshot The products of the store's current request, with their entity tag and expiry.
+	 */
+	void put(String storeId, CachedResponse<List<ProductResponse>> snapshot);
+}
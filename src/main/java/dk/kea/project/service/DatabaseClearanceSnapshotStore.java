@@ -0,0 +1,95 @@
+package dk.kea.project.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.kea.project.dto.CachedResponse;
+import dk.kea.project.dto.ProductResponse;
+import dk.kea.project.entity.ClearanceSnapshot;
+import dk.kea.project.repository.ClearanceSnapshotRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * {@link ClearanceSnapshotStore} keeping the snapshots as JSON in the {@code clearance_snapshot}
+ * table, so the nodes share them through the database they already use.
+ * <p>
+ * A snapshot is one primary key lookup, instead of the join over the offers and products of a
+ * request. Expired rows are deleted periodically. Hits and misses are exported as metrics.
+ * </p>
+ */
+@Component
+public class DatabaseClearanceSnapshotStore implements ClearanceSnapshotStore {
+	public static final Logger logger = LoggerFactory.getLogger(DatabaseClearanceSnapshotStore.class);
+	private static final TypeReference<List<ProductResponse>> PRODUCTS = new TypeReference<>() {
+	};
+
+	private final ClearanceSnapshotRepository clearanceSnapshotRepository;
+	private final ObjectMapper mapper;
+	private final Counter hits;
+	private final Counter misses;
+
+	/**
+	 * Constructs a new DatabaseClearanceSnapshotStore and registers its metrics.
+	 *
+	 * @param clearanceSnapshotRepository The repository of the snapshot table.
+	 * @param mapper                      The application's shared ObjectMapper.
+	 * @param meterRegistry               The registry the store metrics are registered in.
+	 */
+	public DatabaseClearanceSnapshotStore(ClearanceSnapshotRepository clearanceSnapshotRepository,
+										  ObjectMapper mapper, MeterRegistry meterRegistry) {
+		this.clearanceSnapshotRepository = clearanceSnapshotRepository;
+		this.mapper = mapper;
+		this.hits = meterRegistry.counter("greenplate.clearance.snapshots.requests", "result", "hit");
+		this.misses = meterRegistry.counter("greenplate.clearance.snapshots.requests", "result", "miss");
+	}
+
+	@Override
+	public CachedResponse<List<ProductResponse>> get(String storeId) {
+		ClearanceSnapshot snapshot = clearanceSnapshotRepository
+				.findByStoreIdAndExpiresAfter(storeId, LocalDateTime.now()).orElse(null);
+		if (snapshot == null) {
+			misses.increment();
+			return null;
+		}
+		try {
+			List<ProductResponse> products = mapper.readValue(snapshot.getProducts(), PRODUCTS);
+			hits.increment();
+			return new CachedResponse<>(products, snapshot.getEtag(), snapshot.getExpires());
+		} catch (JsonProcessingException e) {
+			// Written by a node with a different ProductResponse, so it is read from the offers instead
+			logger.warn("Ignoring unreadable clearance snapshot of store " + storeId, e);
+			misses.increment();
+			return null;
+		}
+	}
+
+	@Override
+	public void put(String storeId, CachedResponse<List<ProductResponse>> snapshot) {
+		if (snapshot.isExpired(LocalDateTime.now())) {
+			return;
+		}
+		try {
+			clearanceSnapshotRepository.upsert(storeId, snapshot.getEtag(), snapshot.getExpires(),
+					mapper.writeValueAsString(snapshot.getBody()));
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Could not serialize the clearances of store " + storeId, e);
+		}
+	}
+
+	/**
+	 * Deletes the snapshots whose request has expired.
+	 */
+	@Scheduled(fixedDelayString = "${app.clearance-snapshots.cleanup-interval-ms:3600000}",
+			initialDelayString = "${app.clearance-snapshots.cleanup-interval-ms:3600000}")
+	public void deleteExpired() {
+		clearanceSnapshotRepository.deleteExpired(LocalDateTime.now());
+	}
+}
@@ -0,0 +1,121 @@
+package dk.kea.project.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.kea.project.dto.OfferDetailsResponse;
+import dk.kea.project.repository.OfferRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes every offer, with the description of its product, to an output stream as NDJSON or CSV.
+ * <p>
+ * The offer table is walked in batches ordered by offer ID, each batch starting after the last
+ * offer of the previous one. Every batch is written and dropped before the next is read, so the
+ * export uses the same memory however many offers there are. Each batch is its own query, and
+ * with open-in-view disabled no transaction or connection is held between batches, so a slow
+ * client does not keep a pooled connection for the whole download.
+ * </p>
+ */
+@Component
+public class OfferExporter {
+	private static final String CSV_HEADER = "id,discount,newPrice,originalPrice,percentDiscount,ean,requestId,description";
+
+	private final OfferRepository offerRepository;
+	private final ObjectMapper mapper;
+	private final int batchSize;
+
+	/**
+	 * The formats the offers can be exported in.
+	 */
+	public enum Format {
+		NDJSON("application/x-ndjson", "ndjson"),
+		CSV("text/csv", "csv");
+
+		public final String contentType;
+		public final String extension;
+
+		Format(String contentType, String extension) {
+			this.contentType = contentType;
+			this.extension = extension;
+		}
+	}
+
+	/**
+	 * Constructs a new OfferExporter.
+	 *
+	 * @param offerRepository The repository the offers are read from.
+	 * @param mapper          The application's shared ObjectMapper, used for NDJSON.
+	 * @param batchSize       The number of offers read per query.
+	 */
+	public OfferExporter(OfferRepository offerRepository, ObjectMapper mapper,
+						 @Value("${app.offer-export.batch-size:1000}") int batchSize) {
+		this.offerRepository = offerRepository;
+		this.mapper = mapper;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Writes every offer to the output stream, oldest first. The stream is flushed after every
+	 * batch but not closed.
+	 *
+	 * @param out    The stream to write to.
+	 * @param format The format to write the offers in.
+	 * @return The number of offers written.
+	 * @throws IOException If writing to the stream fails, for example because the client went away.
+	 */
+	public long export(OutputStream out, Format format) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		if (format == Format.CSV) {
+			writer.write(CSV_HEADER);
+			writer.write('\n');
+		}
+		long written = 0;
+		int after = 0;
+		List<OfferDetailsResponse> batch;
+		do {
+			batch = offerRepository.findOfferDetailsAfter(after, PageRequest.of(0, batchSize));
+			for (OfferDetailsResponse offer : batch) {
+				if (format == Format.CSV) {
+					writeCsv(writer, offer);
+				} else {
+					writer.write(mapper.writeValueAsString(offer));
+				}
+				writer.write('\n');
+				after = offer.getId();
+			}
+			written += batch.size();
+			writer.flush();
+		} while (batch.size() == batchSize);
+		return written;
+	}
+
+	private static void writeCsv(Writer writer, OfferDetailsResponse offer) throws IOException {
+		writer.write(offer.getId() + "," + offer.getDiscount() + "," + offer.getNewPrice() + ","
+				+ offer.getOriginalPrice() + "," + offer.getPercentDiscount() + ",");
+		writer.write(csvField(offer.getEan()));
+		writer.write(',');
+		writer.write(offer.getRequestId() == null ? "" : offer.getRequestId().toString());
+		writer.write(',');
+		writer.write(csvField(offer.getDescription()));
+	}
+
+	// Quotes a field if it contains a separator, quote or line break, as RFC 4180 describes
+	private static String csvField(String value) {
+		if (value == null) {
+			return "";
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+}
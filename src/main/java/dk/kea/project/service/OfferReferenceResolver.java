@@ -0,0 +1,69 @@
+package dk.kea.project.service;
+
+import dk.kea.project.entity.Offer;
+import dk.kea.project.repository.OfferRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Turns the offers sent by clients, which may hold only their id, into references that can be
+ * stored in a recipe or shopping list.
+ * <p>
+ * The existence of all ids is checked with one {@code IN} query per {@value #IDS_PER_QUERY} ids,
+ * and the offers are then referenced by id without loading them, so the cost does not grow with
+ * the number of offers.
+ * </p>
+ */
+@Component
+public class OfferReferenceResolver {
+	// Keeps the IN list of an existence check well below database parameter limits
+	static final int IDS_PER_QUERY = 500;
+
+	private final OfferRepository offerRepository;
+
+	/**
+	 * Constructs a new OfferReferenceResolver.
+	 *
+	 * @param offerRepository The repository the offers are checked and referenced in.
+	 */
+	public OfferReferenceResolver(OfferRepository offerRepository) {
+		this.offerRepository = offerRepository;
+	}
+
+	/**
+	 * Resolves offers sent by a client into references to the stored offers, in the same order
+	 * and including repeated offers. Must be called within a transaction the references are used in.
+	 *
+	 * @param offers The offers sent by the client, or {@code null} for none.
+	 * @return References to the stored offers.
+	 * @throws ResponseStatusException With status 400 if any of the offers does not exist.
+	 */
+	public List<Offer> resolve(List<Offer> offers) {
+		if (offers == null || offers.isEmpty()) {
+			return new ArrayList<>();
+		}
+		// Not contains(null), which immutable lists reject with a NullPointerException
+		if (offers.stream().anyMatch(Objects::isNull)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Offers must not be null");
+		}
+		List<Integer> ids = offers.stream().map(Offer::getId).toList();
+		List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+		Set<Integer> existing = new HashSet<>();
+		for (int from = 0; from < distinct.size(); from += IDS_PER_QUERY) {
+			existing.addAll(offerRepository.findExistingIds(distinct.subList(from, Math.min(from + IDS_PER_QUERY, distinct.size()))));
+		}
+		List<Integer> unknown = distinct.stream().filter(id -> !existing.contains(id)).toList();
+		if (!unknown.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown offers: " + unknown);
+		}
+		return new ArrayList<>(ids.stream().map(offerRepository::getReferenceById).toList());
+	}
+}
@@ -0,0 +1,98 @@
+package dk.kea.project.service;
+
+import dk.kea.project.repository.OfferRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Deletes the offers of requests older than the retention horizon, unless a recipe or shopping
+ * list refers to them.
+ * <p>
+ * Only the offers of a store's newest request are ever served, but every refresh writes a full
+ * new set. The job walks the oldest offers in batches ordered by ID, and deletes each batch in
+ * its own short transaction, so no locks are held across batches. A run stops after a maximum
+ * number of batches, leaving the rest to the next run, so it does not hold up the other scheduled
+ * jobs. The requests themselves are kept for the request analytics. The number of deleted offers
+ * is exported as a metric.
+ * </p>
+ */
+@Component
+public class OfferRetention {
+	public static final Logger logger = LoggerFactory.getLogger(OfferRetention.class);
+
+	private final OfferRepository offerRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final Duration horizon;
+	private final int batchSize;
+	private final int maxBatches;
+	private final Counter purged;
+
+	/**
+	 * Constructs a new OfferRetention and registers its metrics.
+	 *
+	 * @param offerRepository    The repository the offers are deleted from.
+	 * @param transactionManager The transaction manager each batch runs in.
+	 * @param meterRegistry      The registry the retention metrics are registered in.
+	 * @param horizon            How long the offers of a request are kept after it was made.
+	 * @param batchSize          The number of offers deleted per transaction.
+	 * @param maxBatches         The maximum number of batches deleted per run.
+	 */
+	public OfferRetention(OfferRepository offerRepository, PlatformTransactionManager transactionManager,
+						  MeterRegistry meterRegistry,
+						  @Value("${app.offer-retention.horizon:2d}") Duration horizon,
+						  @Value("${app.offer-retention.batch-size:1000}") int batchSize,
+						  @Value("${app.offer-retention.max-batches:200}") int maxBatches) {
+		// Offers of a request that is still valid are being served
+		if (horizon.compareTo(Duration.ofMinutes(15)) < 0) {
+			throw new IllegalArgumentException("The offer retention horizon must be at least 15 minutes, the validity of a request");
+		}
+		this.offerRepository = offerRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.horizon = horizon;
+		this.batchSize = batchSize;
+		this.maxBatches = maxBatches;
+		this.purged = meterRegistry.counter("greenplate.offers.purged");
+	}
+
+	/**
+	 * Deletes the unreferenced offers of the requests made before the horizon, in batches.
+	 *
+	 * @return The number of offers deleted.
+	 */
+	@Scheduled(fixedDelayString = "${app.offer-retention.interval-ms:600000}",
+			initialDelayString = "${app.offer-retention.interval-ms:600000}")
+	public long purge() {
+		LocalDateTime cutoff = LocalDateTime.now().minus(horizon);
+		Integer last = offerRepository.findLastOfferIdBefore(cutoff);
+		if (last == null) {
+			return 0;
+		}
+		long deleted = 0;
+		int after = 0;
+		for (int batch = 0; batch < maxBatches; batch++) {
+			List<Integer> ids = offerRepository.findUnreferencedIdsBefore(cutoff, after, last, batchSize);
+			if (ids.isEmpty()) {
+				break;
+			}
+			int rows = transactionTemplate.execute(status -> offerRepository.deleteUnreferenced(ids));
+			deleted += rows;
+			purged.increment(rows);
+			after = ids.get(ids.size() - 1);
+		}
+		if (deleted > 0) {
+			logger.info("Deleted " + deleted + " offers of requests made before " + cutoff);
+		}
+		return deleted;
+	}
+}
@@ -1,23 +1,34 @@
 package dk.kea.project.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dk.kea.project.dto.ChatRecipeRequest;
 import dk.kea.project.dto.ChatRecipeResponse;
 import dk.kea.project.dto.MyRecipe;
 import dk.kea.project.entity.ApiUsage;
+import dk.kea.project.entity.CachedRecipe;
 import dk.kea.project.repository.ApiUsageRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
-import java.net.URI;
 /**
  * Service class responsible for interacting with the OpenAI API to generate chat-based recipes.
  * This service handles communication with the OpenAI API, processes the API response,
@@ -31,31 +42,53 @@ public class OpenAIService {
 	public static final Logger logger = LoggerFactory.getLogger(OpenAIService.class);
 	@Value("${OPENAI_API_KEY}")
 	String OPENAI_API_KEY;
-	public final static String URL = "https://api.openai.com/v1/chat/completions";
+	public final static String URL = "/v1/chat/completions";
 	public final static String MODEL = "gpt-3.5-turbo";
 	public final static double TEMPERATURE = 0.8;
 	public final static int MAX_TOKENS = 800;
 	public final static double FREQUENCY_PENALTY = 0.0;
 	public final static double PRESENCE_PENALTY = 0.0;
 	public final static double TOP_P = 1.0;
+	// The data of the event ending a streamed completion
+	final static String STREAM_DONE = "[DONE]";
+	private static final ParameterizedTypeReference<ServerSentEvent<String>> CHAT_EVENT = new ParameterizedTypeReference<>() {
+	};
 	private WebClient client;
+	private ObjectMapper mapper;
 	SallingService sallingService;
 	ApiUsageRepository apiUsageRepository;
+	RecipeCache recipeCache;
+	Scheduler jpaScheduler;
+	UpstreamGuard openAiGuard;
 
 	/**
 	 * Constructor to initialize the OpenAIService.
 	 *
+	 * @param openAiWebClient     The pooled WebClient configured for the OpenAI API.
+	 * @param mapper              The application's shared ObjectMapper.
 	 * @param sallingService      The SallingService instance for handling Salling-related operations.
 	 * @param apiUsageRepository  The ApiUsageRepository for persisting API usage statistics.
+	 * @param recipeCache         The cache of recipes generated for the same ingredients and prompt.
+	 * @param jpaScheduler        The scheduler the streaming variant runs its database calls on.
+	 * @param openAiGuard         The circuit breaker and retries guarding the calls to the OpenAI API.
 	 */
-	public OpenAIService(SallingService sallingService, ApiUsageRepository apiUsageRepository) {
-		this.client = WebClient.create();
+	public OpenAIService(@Qualifier("openAiWebClient") WebClient openAiWebClient, ObjectMapper mapper,
+						 SallingService sallingService, ApiUsageRepository apiUsageRepository, RecipeCache recipeCache,
+						 Scheduler jpaScheduler, @Qualifier("openAiGuard") UpstreamGuard openAiGuard) {
+		this.client = openAiWebClient;
+		this.mapper = mapper;
 		this.sallingService = sallingService;
 		this.apiUsageRepository = apiUsageRepository;
+		this.recipeCache = recipeCache;
+		this.jpaScheduler = jpaScheduler;
+		this.openAiGuard = openAiGuard;
 	}
 
 	/**
-	 * Makes a request to the OpenAI API to generate a chat-based recipe.
+	 * Makes a request to the OpenAI API to generate a chat-based recipe, unless a recipe for the same
+	 * ingredients and prompt is cached. A cache hit is recorded in the API usage with the tokens it saved.
+	 * A failed request is retried within the retry budget of the {@link UpstreamGuard}, and while the API
+	 * keeps failing, requests are rejected at once with {@code 503 Service Unavailable}.
 	 *
 	 * @param ingredients      The ingredients provided by the user for generating the recipe.
 	 * @param _systemMessage   The system message to guide the chat-based generation.
@@ -63,33 +96,34 @@ public class OpenAIService {
 	 * @throws ResponseStatusException If there is an error in the API request or processing the response.
 	 */
 	public MyRecipe makeRequest(String ingredients, String _systemMessage) {
-		ChatRecipeRequest requestDto = new ChatRecipeRequest();
-		requestDto.setModel(MODEL);
-		requestDto.setTemperature(TEMPERATURE);
-		requestDto.setMax_tokens(MAX_TOKENS);
-		requestDto.setTop_p(TOP_P);
-		requestDto.setFrequency_penalty(FREQUENCY_PENALTY);
-		requestDto.setPresence_penalty(PRESENCE_PENALTY);
-		requestDto.getMessages().add(new ChatRecipeRequest.Message("system", _systemMessage));
-		requestDto.getMessages().add(new ChatRecipeRequest.Message("user", ingredients));
+		String cacheKey = recipeCache.key(chatRequest(RecipeCache.normalizeIngredients(ingredients), _systemMessage));
+		CachedRecipe cached = recipeCache.get(cacheKey);
+		if (cached != null) {
+			apiUsageRepository.save(ApiUsage.cacheHit(cached.getTokensUsed()));
+			return new MyRecipe(cached.getAnswer());
+		}
+		ChatRecipeRequest requestDto = chatRequest(ingredients, _systemMessage);
 
-		ObjectMapper mapper = new ObjectMapper();
 		String json = "";
 		String err =  null;
 		try {
 			json = mapper.writeValueAsString(requestDto);
 			System.out.println(json);
-			ChatRecipeResponse response = client.post()
-					.uri(new URI(URL))
-					.header("Authorization", "Bearer " + OPENAI_API_KEY)
-					.contentType(MediaType.APPLICATION_JSON)
-					.accept(MediaType.APPLICATION_JSON)
-					.body(BodyInserters.fromValue(json))
-					.retrieve()
-					.bodyToMono(ChatRecipeResponse.class)
+			ChatRecipeResponse response = openAiGuard.execute(client.post()
+							.uri(URL)
+							.header("Authorization", "Bearer " + OPENAI_API_KEY)
+							.contentType(MediaType.APPLICATION_JSON)
+							.accept(MediaType.APPLICATION_JSON)
+							.body(BodyInserters.fromValue(json))
+							.retrieve()
+							.bodyToMono(ChatRecipeResponse.class))
 					.block();
 			String responseMsg = response.getChoices().get(0).getMessage().getContent();
 			int tokensUsed = response.getUsage().getTotal_tokens();
+			// A recipe cut off at the token limit is not reused
+			if ("stop".equals(response.getChoices().get(0).getFinish_reason())) {
+				recipeCache.put(cacheKey, responseMsg, tokensUsed);
+			}
 
 			// Save apiusage statistics to database
 			ApiUsage apiUsage = new ApiUsage(tokensUsed);
@@ -101,6 +135,10 @@ public class OpenAIService {
 			System.out.println("response "+responseMsg);
 			return new MyRecipe(responseMsg);
 		}
+		catch (ResponseStatusException e){
+			// Rejected by the open circuit
+			throw e;
+		}
 		catch (WebClientResponseException e){
 			//This is how you can get the status code and message reported back by the remote API
 			logger.error("Error response status code: " + e.getRawStatusCode());
@@ -117,4 +155,111 @@ public class OpenAIService {
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, err);
 		}
 	}
+
+	/**
+	 * Streaming variant of {@link #makeRequest(String, String)}. The completion is requested as
+	 * server-sent events, and the text of each event is emitted as soon as it arrives, so the first
+	 * words of the recipe reach the client long before the whole recipe is generated.
+	 * <p>
+	 * A cached recipe is emitted as a single element. When the stream finishes, its token usage is
+	 * recorded in the API usage and a complete recipe is cached. The database calls run on the
+	 * bounded {@code jpaScheduler}. The stream passes the circuit breaker of the {@link UpstreamGuard},
+	 * but is not retried, as its first parts may already have reached the client.
+	 * </p>
+	 *
+	 * @param ingredients    The ingredients provided by the user for generating the recipe.
+	 * @param _systemMessage The system message to guide the chat-based generation.
+	 * @return A {@code Flux} emitting the parts of the recipe in order.
+	 * @throws ResponseStatusException Signalled with status 500 if the request to the API fails, or 503
+	 *                                 if it is rejected by the open circuit.
+	 */
+	public Flux<String> streamRequest(String ingredients, String _systemMessage) {
+		String cacheKey = recipeCache.key(chatRequest(RecipeCache.normalizeIngredients(ingredients), _systemMessage));
+		return Mono.fromCallable(() -> Optional.ofNullable(recipeCache.get(cacheKey)))
+				.subscribeOn(jpaScheduler)
+				.flatMapMany(cached -> cached.isPresent()
+						? Mono.fromCallable(() -> apiUsageRepository.save(ApiUsage.cacheHit(cached.get().getTokensUsed())))
+								.subscribeOn(jpaScheduler)
+								.thenReturn(cached.get().getAnswer())
+						: streamCompletion(cacheKey, ingredients, _systemMessage));
+	}
+
+	private Flux<String> streamCompletion(String cacheKey, String ingredients, String systemMessage) {
+		ChatRecipeRequest requestDto = chatRequest(ingredients, systemMessage);
+		requestDto.setStream(true);
+		requestDto.setStream_options(new ChatRecipeRequest.StreamOptions(true));
+		// State of one subscription, which sees the events one after another
+		StringBuilder answer = new StringBuilder();
+		AtomicReference<String> finishReason = new AtomicReference<>();
+		AtomicReference<ChatRecipeResponse.Usage> usage = new AtomicReference<>();
+		// Guarded up to the end of the stream, which cancels the response after its last event
+		return openAiGuard.executeStream(Mono.fromCallable(() -> mapper.writeValueAsString(requestDto))
+						.flatMapMany(json -> client.post()
+								.uri(URL)
+								.header("Authorization", "Bearer " + OPENAI_API_KEY)
+								.contentType(MediaType.APPLICATION_JSON)
+								.accept(MediaType.TEXT_EVENT_STREAM)
+								.body(BodyInserters.fromValue(json))
+								.retrieve()
+								.bodyToFlux(CHAT_EVENT))
+						.mapNotNull(ServerSentEvent::data)
+						.takeWhile(data -> !STREAM_DONE.equals(data)))
+				.handle((String data, SynchronousSink<ChatRecipeResponse> sink) -> {
+					try {
+						sink.next(mapper.readValue(data, ChatRecipeResponse.class));
+					} catch (JsonProcessingException e) {
+						sink.error(e);
+					}
+				})
+				.doOnNext(chunk -> {
+					if (chunk.getUsage() != null) {
+						usage.set(chunk.getUsage());
+					}
+				})
+				.filter(chunk -> chunk.getChoices() != null && !chunk.getChoices().isEmpty())
+				.mapNotNull(chunk -> {
+					ChatRecipeResponse.Choice choice = chunk.getChoices().get(0);
+					if (choice.getFinish_reason() != null) {
+						finishReason.set(choice.getFinish_reason());
+					}
+					return choice.getDelta() == null ? null : choice.getDelta().getContent();
+				})
+				.filter(delta -> !delta.isEmpty())
+				.doOnNext(answer::append)
+				.concatWith(Mono.fromRunnable(() -> streamCompleted(cacheKey, answer.toString(), finishReason.get(), usage.get()))
+						.subscribeOn(jpaScheduler)
+						.then(Mono.empty()))
+				.onErrorMap(e -> !(e instanceof ResponseStatusException), e -> {
+					logger.error("Streaming a recipe failed", e);
+					return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+							"Internal Server Error, due to a failed request to external service. You could try again");
+				});
+	}
+
+	private void streamCompleted(String cacheKey, String answer, String finishReason, ChatRecipeResponse.Usage usage) {
+		if (usage == null) {
+			logger.warn("A streamed recipe ended without its token usage, so it is neither recorded nor cached");
+			return;
+		}
+		int tokensUsed = usage.getTotal_tokens();
+		apiUsageRepository.save(new ApiUsage(tokensUsed));
+		// A recipe cut off at the token limit is not reused
+		if ("stop".equals(finishReason)) {
+			recipeCache.put(cacheKey, answer, tokensUsed);
+		}
+	}
+
+	// Every parameter that shapes the answer is part of the request, and thereby of its cache key
+	private static ChatRecipeRequest chatRequest(String ingredients, String systemMessage) {
+		ChatRecipeRequest requestDto = new ChatRecipeRequest();
+		requestDto.setModel(MODEL);
+		requestDto.setTemperature(TEMPERATURE);
+		requestDto.setMax_tokens(MAX_TOKENS);
+		requestDto.setTop_p(TOP_P);
+		requestDto.setFrequency_penalty(FREQUENCY_PENALTY);
+		requestDto.setPresence_penalty(PRESENCE_PENALTY);
+		requestDto.getMessages().add(new ChatRecipeRequest.Message("system", systemMessage));
+		requestDto.getMessages().add(new ChatRecipeRequest.Message("user", ingredients));
+		return requestDto;
+	}
 }
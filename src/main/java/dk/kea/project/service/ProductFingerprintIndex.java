@@ -0,0 +1,113 @@
+package dk.kea.project.service;
+
+import dk.kea.project.entity.Product;
+import dk.kea.project.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of the products stored in the database, mapping each EAN to a fingerprint
+ * of its description and image.
+ * <p>
+ * The index is used to skip writing products that have not changed since they were last
+ * ingested. It is warmed from the product table at startup and kept up to date by the
+ * ingestion path. An EAN missing from the index is always treated as changed, so a cold
+ * or partial index only costs extra writes. The number of skipped and written products,
+ * and the skip ratio, are exported as metrics.
+ * </p>
+ */
+@Component
+public class ProductFingerprintIndex {
+	private final Map<String, Long> fingerprints = new ConcurrentHashMap<>();
+	private final ProductRepository productRepository;
+	private final Counter skipped;
+	private final Counter written;
+
+	/**
+	 * Constructs a new ProductFingerprintIndex and registers its metrics.
+	 *
+	 * @param productRepository The repository the index is warmed from.
+	 * @param meterRegistry     The registry the index metrics are registered in.
+	 */
+	public ProductFingerprintIndex(ProductRepository productRepository, MeterRegistry meterRegistry) {
+		this.productRepository = productRepository;
+		this.skipped = meterRegistry.counter("greenplate.product.ingest", "result", "skipped");
+		this.written = meterRegistry.counter("greenplate.product.ingest", "result", "written");
+		Gauge.builder("greenplate.product.ingest.skip.ratio", this, ProductFingerprintIndex::skipRatio)
+				.register(meterRegistry);
+		Gauge.builder("greenplate.product.fingerprint.index.size", fingerprints, Map::size).register(meterRegistry);
+	}
+
+	/**
+	 * Loads the fingerprints of all stored products, once the application has started.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warm() {
+		for (Object[] row : productRepository.findAllFingerprintSources()) {
+			// Entries recorded by an ingest that ran meanwhile are at least as fresh as the table
+			fingerprints.putIfAbsent((String) row[0], fingerprint((String) row[1], (String) row[2]));
+		}
+	}
+
+	/**
+	 * Returns the products that are new or differ from the stored version, and counts the rest as skipped.
+	 *
+	 * @param products The ingested products, with unique EANs.
+	 * @return The products that must be written.
+	 */
+	public List<Product> changed(Collection<Product> products) {
+		List<Product> changed = new ArrayList<>();
+		for (Product product : products) {
+			Long stored = fingerprints.get(product.getEan());
+			if (stored == null || stored != fingerprint(product.getDescription(), product.getImage())) {
+				changed.add(product);
+			}
+		}
+		skipped.increment(products.size() - changed.size());
+		written.increment(changed.size());
+		return changed;
+	}
+
+	/**
+	 * Records the given products as stored. Must only be called once they are committed.
+	 *
+	 * @param products The products that were written.
+	 */
+	public void remember(Collection<Product> products) {
+		for (Product product : products) {
+			fingerprints.put(product.getEan(), fingerprint(product.getDescription(), product.getImage()));
+		}
+	}
+
+	double skipRatio() {
+		double total = skipped.count() + written.count();
+		return total == 0 ? 0 : skipped.count() / total;
+	}
+
+	// 64-bit FNV-1a over both fields, so a collision hiding a change is negligible even for large catalogues
+	static long fingerprint(String description, String image) {
+		long hash = 0xcbf29ce484222325L;
+		for (String field : new String[]{description, image}) {
+			if (field == null) {
+				hash = (hash ^ 0xff) * 0x100000001b3L;
+				continue;
+			}
+			for (int i = 0; i < field.length(); i++) {
+				hash = (hash ^ field.charAt(i)) * 0x100000001b3L;
+			}
+			// Separates the fields, so ("ab", "c") and ("a", "bc") differ
+			hash = (hash ^ 0xfe) * 0x100000001b3L;
+		}
+		return hash;
+	}
+}
@@ -1,5 +1,6 @@
 package dk.kea.project.service;
 
+import dk.kea.project.dto.OfferDetailsResponse;
 import dk.kea.project.dto.ProductCountResponse;
 import dk.kea.project.dto.ProductResponse;
 import dk.kea.project.dto.SallingResponse;
@@ -8,10 +9,20 @@ import dk.kea.project.entity.Product;
 import dk.kea.project.entity.Request;
 import dk.kea.project.repository.OfferRepository;
 import dk.kea.project.repository.ProductRepository;
+import dk.kea.project.repository.ProductUsageCountRepository;
 import dk.kea.project.repository.RequestRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 /**
  * Service class responsible for managing products and offers.
@@ -22,6 +33,7 @@ import java.util.stream.Collectors;
 
 @Service
 public class ProductService {
+	public static final int MAX_PAGE_SIZE = 5000;
 
 	ProductRepository productRepository;
 
@@ -29,6 +41,8 @@ public class ProductService {
 	OfferRepository offerRepository;
 
 	SallingService sallingService;
+	ProductFingerprintIndex fingerprintIndex;
+	ProductUsageCountRepository productUsageCountRepository;
 
 	/**
 	 * Constructs a new ProductService with the necessary repositories and services.
@@ -37,14 +51,19 @@ public class ProductService {
 	 * @param requestRepository The repository for managing requests.
 	 * @param offerRepository   The repository for managing offers.
 	 * @param sallingService    The SallingService for handling Salling-related operations.
+	 * @param fingerprintIndex  The index used to skip writing unchanged products.
+	 * @param productUsageCountRepository The repository of the product usage counter.
 	 */
 
 	public ProductService(ProductRepository productRepository, RequestRepository requestRepository,
-						  OfferRepository offerRepository, SallingService sallingService) {
+						  OfferRepository offerRepository, SallingService sallingService,
+						  ProductFingerprintIndex fingerprintIndex, ProductUsageCountRepository productUsageCountRepository) {
 		this.productRepository = productRepository;
 		this.requestRepository = requestRepository;
 		this.offerRepository = offerRepository;
 		this.sallingService = sallingService;
+		this.fingerprintIndex = fingerprintIndex;
+		this.productUsageCountRepository = productUsageCountRepository;
 	}
 
 	/**
@@ -85,24 +104,80 @@ public class ProductService {
 	 * @param request The associated request for the retrieved offers.
 	 */
 	public void getOffersfromSallingAndSave(String storeId, Request request) {
-		List<SallingResponse> sallingResponse = sallingService.getFoodWaste(storeId);
+		saveOffers(sallingService.getFoodWaste(storeId), request);
+	}
+
+	/**
+	 * Processes food waste data retrieved from Salling and saves the offers to the database.
+	 * <p>
+	 * Products are upserted and offers inserted with multi-row statements in one transaction,
+	 * instead of a lookup and an insert per row. Products that are unchanged since their last
+	 * ingest, according to the {@link ProductFingerprintIndex}, are not written at all.
+	 * </p>
+	 *
+	 * @param sallingResponse The food waste data retrieved from Salling.
+	 * @param request         The associated request for the retrieved offers. It must already be persisted.
+	 */
+	@Transactional
+	public void saveOffers(List<SallingResponse> sallingResponse, Request request) {
 		List<Offer> offers = sallingResponse.stream().flatMap(salling -> salling.getClearances().stream()).map(clearance ->
 				new Offer(clearance.getOffer().getOriginalPrice(), clearance.getOffer().getNewPrice(),
 						clearance.getOffer().getDiscount(), clearance.getOffer().getPercentDiscount(),
 						new Product(clearance.getProduct().ean, clearance.getProduct().description,
 								clearance.getProduct().image), request)).collect(Collectors.toList());
 
-		productRepository.saveAll(offers.stream().map(Offer::getProduct).collect(Collectors.toList()));
-		offerRepository.saveAll(offers);
-
+		// The same product can appear in several clearances; the last one wins
+		Map<String, Product> products = new LinkedHashMap<>();
+		offers.forEach(offer -> products.put(offer.getProduct().getEan(), offer.getProduct()));
+		List<Product> changed = fingerprintIndex.changed(products.values());
+		if (!changed.isEmpty()) {
+			productRepository.upsertAll(changed);
+			afterCommit(() -> fingerprintIndex.remember(changed));
+		}
+		offerRepository.insertAll(offers);
 	}
 
-	public List<Object[]> getAllOffersWithProductDescription() {
-		return offerRepository.getAllOfferDetailsWithProductDescription();
+	// Runs the action once the current transaction commits, or right away when there is none
+	private void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
 
+	/**
+	 * Retrieves a page of offers with the description of their product, ordered by offer ID.
+	 *
+	 * @param after The ID of the last offer of the previous page, or 0 for the first page.
+	 * @param size  The maximum number of offers in the page.
+	 * @return A list of {@code OfferDetailsResponse} holding the offers with an ID above {@code after}.
+	 * @throws ResponseStatusException If the size is not between 1 and {@link #MAX_PAGE_SIZE}.
+	 */
+	public List<OfferDetailsResponse> getOfferDetails(int after, int size) {
+		if (size < 1 || size > MAX_PAGE_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The size must be between 1 and " + MAX_PAGE_SIZE);
+		}
+		return offerRepository.findOfferDetailsAfter(after, PageRequest.of(0, size));
 	}
-		public List<ProductCountResponse> getProductCount () {
-			List<Object[]> result = productRepository.getProductCount();
+	/**
+	 * Retrieves how often each product is used in saved recipes, most used first, read from the product usage counter.
+	 *
+	 * @param limit The maximum number of products to return, or {@code null} for all used products.
+	 * @return A list of {@code ProductCountResponse} for the products used in at least one recipe.
+	 * @throws ResponseStatusException If the limit is not positive.
+	 */
+		public List<ProductCountResponse> getProductCount (Integer limit) {
+			if (limit != null && limit < 1) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The limit must be positive");
+			}
+			List<Object[]> result = productUsageCountRepository.findMostUsed(
+					limit == null ? Pageable.unpaged() : PageRequest.of(0, limit));
 
 			return result.stream()
 					.map(row -> new ProductCountResponse(
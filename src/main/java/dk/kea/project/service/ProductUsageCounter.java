@@ -0,0 +1,160 @@
+package dk.kea.project.service;
+
+import dk.kea.project.entity.Offer;
+import dk.kea.project.entity.ProductUsageCount;
+import dk.kea.project.repository.OfferRepository;
+import dk.kea.project.repository.ProductUsageCountRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the product usage counter in step with the saved recipes.
+ * <p>
+ * Saving or deleting a recipe adds or removes one use for the product of each of its offers,
+ * in the transaction that writes the recipe. A reconciliation job periodically recounts the
+ * uses from the recipe offers, corrects the products whose count has drifted and exports the
+ * number of corrections as a metric. The counter is built by the same job at startup if it is empty.
+ * </p>
+ * <p>
+ * The job locks the counts before recounting, so a recipe saved or deleted meanwhile waits until the
+ * corrections have committed and then adds to or removes from the corrected count.
+ * </p>
+ */
+@Component
+public class ProductUsageCounter {
+	public static final Logger logger = LoggerFactory.getLogger(ProductUsageCounter.class);
+
+	private final ProductUsageCountRepository productUsageCountRepository;
+	private final OfferRepository offerRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final Counter drift;
+
+	/**
+	 * Constructs a new ProductUsageCounter and registers its metrics.
+	 *
+	 * @param productUsageCountRepository The repository of the product usage counter.
+	 * @param offerRepository             The repository used to find the products of offers.
+	 * @param transactionManager          The transaction manager the startup build runs in.
+	 * @param meterRegistry               The registry the drift metric is registered in.
+	 */
+	public ProductUsageCounter(ProductUsageCountRepository productUsageCountRepository,
+							   OfferRepository offerRepository, PlatformTransactionManager transactionManager,
+							   MeterRegistry meterRegistry) {
+		this.productUsageCountRepository = productUsageCountRepository;
+		this.offerRepository = offerRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.drift = meterRegistry.counter("greenplate.product.usage.drift");
+	}
+
+	/**
+	 * Builds the counter from the saved recipes if it is empty, once the application has started.
+	 * The counts are overwritten rather than added, so nodes building it at once agree, and a failed
+	 * build is logged rather than failing the startup, leaving the counter to the reconciliation job.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void backfill() {
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				List<ProductUsageCount> counts = productUsageCountRepository.findAllForUpdate();
+				if (counts.isEmpty()) {
+					logger.info("Built the usage counts of " + correct(counts) + " products");
+				}
+			});
+		} catch (RuntimeException e) {
+			logger.warn("Building the product usage counts failed", e);
+		}
+	}
+
+	/**
+	 * Counts the offers of a saved recipe towards the usage of their products.
+	 *
+	 * @param offers The offers of the recipe.
+	 */
+	public void recipeSaved(List<Offer> offers) {
+		add(offers, 1);
+	}
+
+	/**
+	 * Removes the offers of a deleted recipe from the usage of their products.
+	 *
+	 * @param offers The offers of the recipe.
+	 */
+	public void recipeDeleted(List<Offer> offers) {
+		add(offers, -1);
+	}
+
+	/**
+	 * Recounts the usage of every product from the saved recipes and overwrites the counts that differ.
+	 * Recipes saved or deleted while the recount runs wait for the counts it has locked.
+	 *
+	 * @return The number of products whose count was corrected.
+	 */
+	@Scheduled(fixedDelayString = "${app.product-usage.reconcile-interval-ms:86400000}",
+			initialDelayString = "${app.product-usage.reconcile-interval-ms:86400000}")
+	@Transactional
+	public int reconcile() {
+		int corrected = correct(productUsageCountRepository.findAllForUpdate());
+		if (corrected > 0) {
+			drift.increment(corrected);
+			logger.warn("Corrected the usage counts of " + corrected + " products");
+		}
+		return corrected;
+	}
+
+	// Overwrites the locked counts that differ from the recount and returns how many there were
+	private int correct(List<ProductUsageCount> counts) {
+		Map<String, Long> actual = new HashMap<>();
+		for (Object[] row : productUsageCountRepository.countUsageFromRecipes()) {
+			actual.put((String) row[0], ((Number) row[1]).longValue());
+		}
+		Map<String, Long> corrections = new HashMap<>();
+		for (ProductUsageCount count : counts) {
+			long expected = actual.getOrDefault(count.getEan(), 0L);
+			if (count.getUsageCount() != expected) {
+				corrections.put(count.getEan(), expected);
+			}
+			actual.remove(count.getEan());
+		}
+		// Products used by recipes that have no count at all
+		corrections.putAll(actual);
+		productUsageCountRepository.setAll(corrections);
+		return corrections.size();
+	}
+
+	private void add(List<Offer> offers, int sign) {
+		if (offers == null) {
+			return;
+		}
+		List<Integer> ids = offers.stream().filter(Objects::nonNull).map(Offer::getId).toList();
+		if (ids.isEmpty()) {
+			return;
+		}
+		// Offers sent by clients may hold only their id, so their products are looked up
+		Map<Integer, String> eans = new HashMap<>();
+		for (Object[] row : offerRepository.findEansByIds(ids.stream().distinct().toList())) {
+			eans.put((Integer) row[0], (String) row[1]);
+		}
+		Map<String, Long> deltas = new HashMap<>();
+		for (Integer id : ids) {
+			String ean = eans.get(id);
+			if (ean != null) {
+				deltas.merge(ean, (long) sign, Long::sum);
+			}
+		}
+		productUsageCountRepository.addAll(deltas);
+	}
+}
@@ -0,0 +1,205 @@
+package dk.kea.project.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.kea.project.dto.ChatRecipeRequest;
+import dk.kea.project.entity.CachedRecipe;
+import dk.kea.project.repository.CachedRecipeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of generated recipes, keyed by a SHA-256 hash of the canonical chat request.
+ * <p>
+ * The canonical request holds the model, every prompt parameter, the system message and the
+ * ingredients normalized by {@link #normalizeIngredients(String)}, so the same ingredients asked
+ * for in a different order or spelling hit the same entry, while any change to the prompt misses.
+ * </p>
+ * <p>
+ * Recipes are kept in memory for the TTL, and the least recently used recipe is evicted when the
+ * cache grows beyond its maximum size. When the cache is persistent, recipes are also stored in the
+ * {@code cached_recipe} table, so they survive a restart and are shared by all nodes. Hits, misses,
+ * evictions and the tokens saved by hits are exported as metrics.
+ * </p>
+ */
+@Component
+public class RecipeCache {
+	private static final Pattern SEPARATORS = Pattern.compile("[,;\\r\\n\\[\\]\"]+");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	// In access order, so the first entry is the least recently used
+	private final Map<String, CachedRecipe> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final ReentrantLock lock = new ReentrantLock();
+	private final CachedRecipeRepository cachedRecipeRepository;
+	private final ObjectMapper mapper;
+	private final Duration ttl;
+	private final int maxSize;
+	private final boolean persistent;
+	private final Counter hits;
+	private final Counter misses;
+	private final Counter evictions;
+	private final Counter tokensSaved;
+
+	/**
+	 * Constructs a new RecipeCache and registers its metrics.
+	 *
+	 * @param cachedRecipeRepository The repository of the table persistent recipes are stored in.
+	 * @param mapper                 The application's shared ObjectMapper.
+	 * @param meterRegistry          The registry the cache metrics are registered in.
+	 * @param ttl                    How long a generated recipe is served from the cache.
+	 * @param maxSize                The maximum number of recipes kept in memory.
+	 * @param persistent             Whether recipes are also stored in the database.
+	 */
+	public RecipeCache(CachedRecipeRepository cachedRecipeRepository, ObjectMapper mapper, MeterRegistry meterRegistry,
+					   @Value("${app.recipe-cache.ttl:1d}") Duration ttl,
+					   @Value("${app.recipe-cache.max-size:1000}") int maxSize,
+					   @Value("${app.recipe-cache.persistent:true}") boolean persistent) {
+		this.cachedRecipeRepository = cachedRecipeRepository;
+		this.mapper = mapper;
+		this.ttl = ttl;
+		this.maxSize = maxSize;
+		this.persistent = persistent;
+		this.hits = meterRegistry.counter("greenplate.recipes.cache.requests", "result", "hit");
+		this.misses = meterRegistry.counter("greenplate.recipes.cache.requests", "result", "miss");
+		this.evictions = meterRegistry.counter("greenplate.recipes.cache.evictions");
+		this.tokensSaved = meterRegistry.counter("greenplate.recipes.cache.tokens.saved");
+		Gauge.builder("greenplate.recipes.cache.size", this, RecipeCache::size).register(meterRegistry);
+	}
+
+	/**
+	 * Normalizes free-text ingredients into a canonical form: lower case, split on commas, semicolons,
+	 * line breaks and JSON list punctuation, trimmed, without duplicates and sorted.
+	 *
+	 * @param ingredients The ingredients as sent by the client.
+	 * @return The ingredients in canonical form, separated by {@code ", "}.
+	 */
+	public static String normalizeIngredients(String ingredients) {
+		return Arrays.stream(SEPARATORS.split(ingredients.toLowerCase(Locale.ROOT)))
+				.map(ingredient -> WHITESPACE.matcher(ingredient.strip()).replaceAll(" "))
+				.filter(ingredient -> !ingredient.isEmpty())
+				.distinct()
+				.sorted()
+				.collect(Collectors.joining(", "));
+	}
+
+	/**
+	 * Computes the cache key of a chat request.
+	 *
+	 * @param canonicalRequest The request with its ingredients normalized.
+	 * @return The hex encoded SHA-256 hash of the request as JSON.
+	 */
+	public String key(ChatRecipeRequest canonicalRequest) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] json = mapper.writeValueAsString(canonicalRequest).getBytes(StandardCharsets.UTF_8);
+			return HexFormat.of().formatHex(digest.digest(json));
+		} catch (NoSuchAlgorithmException | JsonProcessingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the cached recipe for a key, looking in the database after a miss in memory when the
+	 * cache is persistent.
+	 *
+	 * @param key The cache key of the chat request.
+	 * @return The cached recipe, or {@code null} if there is no valid recipe.
+	 */
+	public CachedRecipe get(String key) {
+		LocalDateTime now = LocalDateTime.now();
+		CachedRecipe recipe = getInMemory(key, now);
+		if (recipe == null && persistent) {
+			recipe = cachedRecipeRepository.findByCacheKeyAndExpiresAfter(key, now).orElse(null);
+			if (recipe != null) {
+				putInMemory(recipe);
+			}
+		}
+		if (recipe == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		tokensSaved.increment(recipe.getTokensUsed());
+		return recipe;
+	}
+
+	/**
+	 * Caches a generated recipe for the TTL.
+	 *
+	 * @param key        The cache key of the chat request.
+	 * @param answer     The generated recipe.
+	 * @param tokensUsed The number of tokens generating the recipe used.
+	 */
+	public void put(String key, String answer, int tokensUsed) {
+		CachedRecipe recipe = new CachedRecipe(key, answer, tokensUsed, LocalDateTime.now().plus(ttl));
+		putInMemory(recipe);
+		if (persistent) {
+			cachedRecipeRepository.upsert(key, answer, tokensUsed, recipe.getExpires());
+		}
+	}
+
+	/**
+	 * Deletes the expired recipes from the database.
+	 */
+	@Scheduled(fixedDelayString = "${app.recipe-cache.cleanup-interval-ms:3600000}",
+			initialDelayString = "${app.recipe-cache.cleanup-interval-ms:3600000}")
+	public void deleteExpired() {
+		if (persistent) {
+			cachedRecipeRepository.deleteExpired(LocalDateTime.now());
+		}
+	}
+
+	private CachedRecipe getInMemory(String key, LocalDateTime now) {
+		lock.lock();
+		try {
+			CachedRecipe recipe = entries.get(key);
+			if (recipe != null && !recipe.getExpires().isAfter(now)) {
+				entries.remove(key);
+				return null;
+			}
+			return recipe;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void putInMemory(CachedRecipe recipe) {
+		lock.lock();
+		try {
+			entries.put(recipe.getCacheKey(), recipe);
+			while (entries.size() > maxSize) {
+				entries.remove(entries.keySet().iterator().next());
+				evictions.increment();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private int size() {
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package dk.kea.project.service;
+
+import dk.kea.project.dto.MyRecipe;
+import dk.kea.project.dto.RecipeJobResponse;
+import dk.kea.project.entity.RecipeJob;
+import dk.kea.project.repository.RecipeJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates recipes in the background, so a request only waits for its job to be stored instead
+ * of for the whole completion.
+ * <p>
+ * Jobs are stored in the {@code recipe_job} table and run on a bounded worker pool. When every
+ * worker is busy and the queue is full, new jobs are rejected with {@code 429 Too Many Requests}
+ * instead of piling up. A worker claims a job with a conditional update before running it, so a
+ * job runs once even when several nodes share the table.
+ * </p>
+ * <p>
+ * At startup and then periodically, jobs that are still queued, or that were running when a node
+ * stopped, are queued again, and finished jobs older than the retention are deleted. The queue
+ * depth, the time jobs wait for a worker and the time they run are exported as metrics.
+ * </p>
+ */
+@Component
+public class RecipeJobQueue {
+	public static final Logger logger = LoggerFactory.getLogger(RecipeJobQueue.class);
+
+	OpenAIService openAIService;
+	RecipeJobRepository recipeJobRepository;
+
+	private final Duration staleAfter;
+	private final Duration retention;
+	private final ThreadPoolExecutor workers;
+	// Jobs queued or running on this node
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+	private final Counter succeeded;
+	private final Counter failed;
+	private final Counter rejected;
+	private final Timer waitTime;
+	private final Timer runTime;
+
+	/**
+	 * Constructs a new RecipeJobQueue and registers its metrics.
+	 *
+	 * @param openAIService       The OpenAIService the recipes are generated with.
+	 * @param recipeJobRepository The repository the jobs are stored in.
+	 * @param meterRegistry       The registry the queue metrics are registered in.
+	 * @param workers             The number of recipes generated concurrently.
+	 * @param queueSize           The number of jobs that may wait for a worker.
+	 * @param staleAfter          How long after it started a running job is considered interrupted.
+	 * @param retention           How long a finished job can be polled.
+	 */
+	public RecipeJobQueue(OpenAIService openAIService, RecipeJobRepository recipeJobRepository,
+						  MeterRegistry meterRegistry,
+						  @Value("${app.recipe-jobs.workers:4}") int workers,
+						  @Value("${app.recipe-jobs.queue-size:50}") int queueSize,
+						  @Value("${app.recipe-jobs.stale-after:5m}") Duration staleAfter,
+						  @Value("${app.recipe-jobs.retention:1d}") Duration retention) {
+		this.openAIService = openAIService;
+		this.recipeJobRepository = recipeJobRepository;
+		this.staleAfter = staleAfter;
+		this.retention = retention;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize),
+				runnable -> {
+					Thread thread = new Thread(runnable, "recipe-job-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.succeeded = meterRegistry.counter("greenplate.recipes.jobs", "result", "succeeded");
+		this.failed = meterRegistry.counter("greenplate.recipes.jobs", "result", "failed");
+		this.rejected = meterRegistry.counter("greenplate.recipes.jobs", "result", "rejected");
+		this.waitTime = Timer.builder("greenplate.recipes.jobs.wait")
+				.description("Time between a recipe job being submitted and a worker starting it")
+				.register(meterRegistry);
+		this.runTime = Timer.builder("greenplate.recipes.jobs.run")
+				.description("Time a worker spends generating the recipe of a job")
+				.register(meterRegistry);
+		Gauge.builder("greenplate.recipes.jobs.queue.depth", this.workers, executor -> executor.getQueue().size())
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Stores a job generating a recipe and queues it.
+	 *
+	 * @param username      The username of the user submitting the job.
+	 * @param ingredients   The ingredients provided by the user.
+	 * @param systemMessage The system message to guide the chat-based generation.
+	 * @return The queued job.
+	 * @throws ResponseStatusException With status 429 if the queue is full.
+	 */
+	public RecipeJobResponse submit(String username, String ingredients, String systemMessage) {
+		RecipeJob job = recipeJobRepository.save(new RecipeJob(username, ingredients, systemMessage));
+		if (!enqueue(job.getId())) {
+			recipeJobRepository.deleteById(job.getId());
+			rejected.increment();
+			throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many recipes are being generated, try again later");
+		}
+		return new RecipeJobResponse(job);
+	}
+
+	/**
+	 * Finds a job of a user.
+	 *
+	 * @param id       The ID of the job.
+	 * @param username The username of the user who submitted the job.
+	 * @return The job.
+	 * @throws ResponseStatusException With status 404 if the user has no job with the ID.
+	 */
+	public RecipeJobResponse getJob(String id, String username) {
+		return recipeJobRepository.findById(id)
+				.filter(job -> job.getUsername().equals(username))
+				.map(RecipeJobResponse::new)
+				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Recipe job not found"));
+	}
+
+	/**
+	 * Queues the stored jobs waiting for a worker, as far as the queue has room, after requeueing the
+	 * jobs whose node stopped while running them. Finished jobs older than the retention are deleted.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Scheduled(fixedDelayString = "${app.recipe-jobs.sweep-interval-ms:60000}",
+			initialDelayString = "${app.recipe-jobs.sweep-interval-ms:60000}")
+	public void resubmit() {
+		LocalDateTime now = LocalDateTime.now();
+		int requeued = recipeJobRepository.requeueStale(now.minus(staleAfter));
+		if (requeued > 0) {
+			logger.info("Requeued " + requeued + " interrupted recipe jobs");
+		}
+		recipeJobRepository.deleteFinishedBefore(now.minus(retention));
+		int room = workers.getQueue().remainingCapacity();
+		if (room == 0) {
+			return;
+		}
+		for (String id : recipeJobRepository.findQueuedIds(PageRequest.of(0, room))) {
+			if (!pending.contains(id) && !enqueue(id)) {
+				// Left queued in the table for the next sweep
+				return;
+			}
+		}
+	}
+
+	private boolean enqueue(String id) {
+		pending.add(id);
+		try {
+			workers.execute(() -> run(id));
+			return true;
+		} catch (RejectedExecutionException e) {
+			pending.remove(id);
+			return false;
+		}
+	}
+
+	private void run(String id) {
+		try {
+			LocalDateTime started = LocalDateTime.now();
+			// Claimed by another node, or deleted since it was queued
+			if (recipeJobRepository.claim(id, started) == 0) {
+				return;
+			}
+			RecipeJob job = recipeJobRepository.findById(id).orElseThrow();
+			waitTime.record(Duration.between(job.getCreated(), started));
+			long start = System.nanoTime();
+			try {
+				MyRecipe recipe = openAIService.makeRequest(job.getIngredients(), job.getSystemMessage());
+				job.setAnswer(recipe.getAnswer());
+				job.setStatus(RecipeJob.Status.SUCCEEDED);
+				succeeded.increment();
+			} catch (RuntimeException e) {
+				job.setError(e instanceof ResponseStatusException status ? status.getReason() : "Internal Server Error - You could try again");
+				job.setStatus(RecipeJob.Status.FAILED);
+				failed.increment();
+				logger.warn("Recipe job " + id + " failed", e);
+			}
+			runTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			job.setFinished(LocalDateTime.now());
+			recipeJobRepository.save(job);
+		} catch (RuntimeException e) {
+			// The job stays running until it is stale, and is then queued again
+			logger.error("Recipe job " + id + " could not be stored", e);
+		} finally {
+			pending.remove(id);
+		}
+	}
+
+	@PreDestroy
+	void shutdown() {
+		workers.shutdownNow();
+	}
+}
@@ -4,12 +4,12 @@ import dk.kea.project.dto.RecipeRequest;
 import dk.kea.project.dto.RecipeResponse;
 import dk.kea.project.entity.Offer;
 import dk.kea.project.entity.Recipe;
-import dk.kea.project.entity.User;
 import dk.kea.project.repository.OfferRepository;
 import dk.kea.project.repository.RecipeRepository;
 import dk.kea.project.repository.UserRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.security.Principal;
@@ -22,50 +22,57 @@ public class RecipeService {
     RecipeRepository recipeRepository;
     OfferRepository offerRepository;
     UserRepository userRepository;
+    ProductUsageCounter productUsageCounter;
+    OfferReferenceResolver offerReferenceResolver;
 
-    public RecipeService(RecipeRepository recipeRepository, OfferRepository offerRepository, UserRepository userRepository) {
+    public RecipeService(RecipeRepository recipeRepository, OfferRepository offerRepository, UserRepository userRepository,
+                         ProductUsageCounter productUsageCounter, OfferReferenceResolver offerReferenceResolver) {
          this.recipeRepository = recipeRepository;
          this.offerRepository = offerRepository;
          this.userRepository = userRepository;
+         this.productUsageCounter = productUsageCounter;
+         this.offerReferenceResolver = offerReferenceResolver;
     }
 
     /**
-     * saves a recipe to the repository
+     * saves a recipe to the repository and counts its offers towards the usage of their products.
+     * The offers and the user are only referenced by id, so the number of queries does not grow with the offers.
      * @param recipeRequest
      * @param principal
+     * @throws ResponseStatusException with status 400 if any of the offers does not exist
      */
-
+    @Transactional
     public ResponseStatusException saveRecipe(RecipeRequest recipeRequest, Principal principal) {
         Recipe recipe = new Recipe();
         recipe.setRecipeBody(recipeRequest.getRecipeBody());
         recipe.setRecipeTitle(recipeRequest.getRecipeTitle());
-        List<Offer> offers = recipeRequest.getOffers().stream().map(offer -> offerRepository.findAllById(offer.getId())).toList();
+        List<Offer> offers = offerReferenceResolver.resolve(recipeRequest.getOffers());
         recipe.setOffers(offers);
-        recipe.setUser(userRepository.findUserByUsername(principal.getName()));
+        recipe.setUser(userRepository.getReferenceById(principal.getName()));
         recipeRepository.save(recipe);
+        productUsageCounter.recipeSaved(offers);
         return new ResponseStatusException(HttpStatus.ACCEPTED, "Recipe saved");
     }
+    @Transactional
     public ResponseStatusException saveRecipeAdmin(RecipeRequest recipeRequest, Principal principal ) {
         Recipe recipe = new Recipe();
         recipe.setRecipeBody(recipeRequest.getRecipeBody());
         recipe.setRecipeTitle(recipeRequest.getRecipeTitle());
-        List<Offer> offers = recipeRequest.getOffers();
+        List<Offer> offers = offerReferenceResolver.resolve(recipeRequest.getOffers());
         recipe.setOffers(offers);
         recipe.setUser(userRepository.findUserByUsername(principal.getName()));
         recipeRepository.save(recipe);
+        productUsageCounter.recipeSaved(offers);
         return new ResponseStatusException(HttpStatus.ACCEPTED, "Recipe saved");
     }
     /**
-     * Retrieves all recipes from the repository and converts them into a list of {@code RecipeResponse}.
+     * Retrieves all recipes of the authenticated user as a list of {@code RecipeResponse}.
+     * The responses are selected directly in a single query, without loading the user or the offers.
      *
      * @return A list of {@code RecipeResponse} representing all the recipes.
      */
     public List<RecipeResponse> getAllRecipes(Principal principal) {
-        User user = userRepository.findUserByUsername(principal.getName());
-        List<Recipe> recipes = recipeRepository.findAllByUser(user);
-        List<RecipeResponse> response = recipes.stream().map(RecipeResponse::new).toList();
-
-        return response;
+        return recipeRepository.findResponsesByUserUsername(principal.getName());
     }
 
 
@@ -102,20 +109,25 @@ public class RecipeService {
 
 
     /**
-     * Deletes a recipe based on the information provided in the {@code RecipeRequest}.
+     * Deletes a recipe based on the information provided in the {@code RecipeRequest},
+     * and removes its offers from the usage of their products.
      *
      * @param recipeRequest The {@code RecipeRequest} containing information about the recipe to be deleted.
      * @return A {@code RecipeResponse} representing the result of the delete operation.
      *         If the recipe with the given ID is not found, returns {@code null}.
      */
+    @Transactional
     public RecipeResponse deleteRecipe(RecipeRequest recipeRequest) {
         Optional<Recipe> existingRecipeOptional = recipeRepository.findById(recipeRequest.getId());
 
         if (existingRecipeOptional.isPresent()) {
             Recipe existingRecipe = existingRecipeOptional.get();
+            // The offers are lazy, so they are read before the recipe and its offer rows are deleted
+            List<Offer> offers = List.copyOf(existingRecipe.getOffers());
 
             // Delete the recipe from the repository
             recipeRepository.deleteById(recipeRequest.getId());
+            productUsageCounter.recipeDeleted(offers);
 
             // Return a response indicating successful deletion
             return new RecipeResponse(existingRecipe);
@@ -1,15 +1,32 @@
 package dk.kea.project.service;
 
+import dk.kea.project.dto.FreshRequest;
 import dk.kea.project.dto.SallingResponse;
+import dk.kea.project.dto.StoreCountBucketResponse;
 import dk.kea.project.dto.StoreCountResponse;
+import dk.kea.project.dto.ZipcodeCountBucketResponse;
 import dk.kea.project.dto.ZipcodeCountResponse;
 import dk.kea.project.entity.Request;
+import dk.kea.project.entity.Store;
+import dk.kea.project.entity.StoreCallBucket.Granularity;
 import dk.kea.project.repository.RequestRepository;
+import dk.kea.project.repository.StoreCallBucketRepository;
+import dk.kea.project.repository.StoreCallCountRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -23,16 +40,35 @@ import java.util.Optional;
 public class RequestService {
 	RequestRepository requestRepository;
 	StoreService storeService;
+	StoreCallCountRepository storeCallCountRepository;
+	StoreCallBucketRepository storeCallBucketRepository;
+	StoreCallCounter storeCallCounter;
+	ProductService productService;
+	private final Duration maxRange;
 
 	/**
 	 * Constructs a new RequestService with the necessary repositories and services.
 	 *
-	 * @param requestRepository The repository for managing requests.
-	 * @param storeService      The StoreService for handling store-related operations.
+	 * @param requestRepository        The repository for managing requests.
+	 * @param storeService             The StoreService for handling store-related operations.
+	 * @param storeCallCountRepository The repository of the store call rollup the analytics are read from.
+	 * @param storeCallBucketRepository The repository of the hourly and daily store call rollup the range analytics are read from.
+	 * @param storeCallCounter         The counter adding written requests to the rollups.
+	 * @param productService           The ProductService saving the offers of a refresh.
+	 * @param maxRange                 The longest time range the range analytics may be asked for.
 	 */
-public  RequestService(RequestRepository requestRepository, StoreService storeService){
+public  RequestService(RequestRepository requestRepository, StoreService storeService,
+					   StoreCallCountRepository storeCallCountRepository,
+					   StoreCallBucketRepository storeCallBucketRepository, StoreCallCounter storeCallCounter,
+					   ProductService productService,
+					   @Value("${app.call-counts.max-range:366d}") Duration maxRange){
 	this.requestRepository = requestRepository;
 	this.storeService = storeService;
+	this.storeCallCountRepository = storeCallCountRepository;
+	this.storeCallBucketRepository = storeCallBucketRepository;
+	this.storeCallCounter = storeCallCounter;
+	this.productService = productService;
+	this.maxRange = maxRange;
 }
 	/**
 	 * Checks if a request with the specified store ID exists and is still valid.
@@ -42,7 +78,7 @@ public  RequestService(RequestRepository requestRepository, StoreService storeSe
 	 */
 	public boolean checkRequest(String id){
 		LocalDateTime fifteenMinutesAgo = LocalDateTime.now().minusMinutes(15);
-		return requestRepository.findRequestByStoreIdAndCreatedIsAfter(id, fifteenMinutesAgo) != null;
+		return requestRepository.findFirstByStoreIdAndCreatedIsAfterOrderByCreatedDesc(id, fifteenMinutesAgo) != null;
 	}
 	/**
 	 * Finds the newest request for the specified store ID created after a given timestamp.
@@ -52,37 +88,91 @@ public  RequestService(RequestRepository requestRepository, StoreService storeSe
 	 * @return The newest request for the store ID created after the given timestamp.
 	 */
 	public Request findNewestRequest(String id, LocalDateTime nowMinus15){
-		return requestRepository.findRequestByStoreIdAndCreatedIsAfter(id, nowMinus15);
+		return requestRepository.findFirstByStoreIdAndCreatedIsAfterOrderByCreatedDesc(id, nowMinus15);
 	}
 	/**
-	 * Finds a request for the specified store ID created after a given timestamp.
+	 * Finds the newest request for the specified store ID created after a given timestamp.
 	 *
 	 * @param id           The ID of the store associated with the request.
 	 * @param nowMinus15   The timestamp indicating the time 15 minutes ago.
-	 * @return The request for the store ID created after the given timestamp.
+	 * @return The newest request for the store ID created after the given timestamp.
 	 */
 	public Request findRequestByStoreIdAndCreatedIsAfter(String id, LocalDateTime nowMinus15){
-		return requestRepository.findRequestByStoreIdAndCreatedIsAfter(id, nowMinus15);
+		return requestRepository.findFirstByStoreIdAndCreatedIsAfterOrderByCreatedDesc(id, nowMinus15);
+	}
+
+	/**
+	 * Finds the id and creation timestamp of the newest request for the specified store ID created
+	 * after a given timestamp, answered from the {@code (store_id, created)} index.
+	 *
+	 * @param storeId The ID of the store associated with the request.
+	 * @param after   The timestamp the request must be created after.
+	 * @return The newest request for the store ID created after the given timestamp, or {@code null} if there is none.
+	 */
+	public FreshRequest findLatestFreshRequest(String storeId, LocalDateTime after){
+		return requestRepository.findLatestFresh(storeId, after);
 	}
 
 	/**
-	 * Adds a new request to the database.
+	 * Adds a new request to the database and counts it towards its store's calls once it is committed.
 	 *
 	 * @param request The request to be added.
 	 */
 	public void addRequest(Request request){
 		requestRepository.save(request);
+		if (request.getStore() != null) {
+			afterCommit(() -> storeCallCounter.increment(request.getStore().getId(),
+					request.getCreated() != null ? request.getCreated() : LocalDateTime.now()));
+		}
+	}
+
+	/**
+	 * Saves a refresh of a store's clearances: a new request together with the offers Salling returned.
+	 * <p>
+	 * Both are written in one transaction, so other lookups and nodes see the request only once all
+	 * of its offers are there, and a failed ingest leaves no request behind.
+	 * </p>
+	 *
+	 * @param store     The store that was refreshed.
+	 * @param foodWaste The food waste data retrieved from Salling for the store.
+	 * @return The saved request.
+	 */
+	@Transactional
+	public Request saveRefresh(Store store, List<SallingResponse> foodWaste){
+		Request request = new Request(store);
+		addRequest(request);
+		productService.saveOffers(foodWaste, request);
+		return request;
+	}
 
+	// Runs the action once the current transaction commits, or right away when there is none
+	private void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
 	}
 
-	public List<StoreCountResponse> countStoreCalls(){		
-		List<Object[]> result = requestRepository.countStoreCalls();
+	/**
+	 * Counts the requests made for each store, read from the store call rollup.
+	 * Requests made within the last flush interval may not be counted yet.
+	 *
+	 * @return The number of requests made for each store, including stores without requests.
+	 */
+	public List<StoreCountResponse> countStoreCalls(){
+		List<Object[]> result = storeCallCountRepository.countStoreCalls();
 		List<StoreCountResponse> storeCountResponses = new ArrayList<>();
 
 		for (Object[] row : result) {
 			String storeId = (String) row[0];
 			String storeName = (String) row[1];
-			Long storeCount = (Long) row[2];
+			Long storeCount = ((Number) row[2]).longValue();
 			
 			StoreCountResponse newResponse = new StoreCountResponse(storeId, storeName, storeCount);
 			storeCountResponses.add(newResponse);
@@ -90,13 +180,19 @@ public  RequestService(RequestRepository requestRepository, StoreService storeSe
 		return storeCountResponses;
 	}
 	
+	/**
+	 * Counts the requests made for the stores of each zip code, read from the store call rollup.
+	 * Requests made within the last flush interval may not be counted yet.
+	 *
+	 * @return The number of requests made for each zip code with stores.
+	 */
 	public List<ZipcodeCountResponse> countZipcodeCalls(){
-		List<Object[]> result = requestRepository.countZipcodeCalls();
+		List<Object[]> result = storeCallCountRepository.countZipcodeCalls();
 		List<ZipcodeCountResponse> zipcodeCountResponses = new ArrayList<>();
 		
 		for(Object[] row : result){
 			String zipcode = (String) row[0];
-			Long count = (Long) row[1];
+			Long count = ((Number) row[1]).longValue();
 			
 			ZipcodeCountResponse newZipcodeCountResponse = new ZipcodeCountResponse(zipcode, count);
 			zipcodeCountResponses.add(newZipcodeCountResponse);
@@ -104,4 +200,69 @@ public  RequestService(RequestRepository requestRepository, StoreService storeSe
 		
 		return zipcodeCountResponses;
 	}
+
+	/**
+	 * Counts the requests made for each store per hour or day within a time range, read from the
+	 * hourly and daily store call rollup. Hours older than the hourly retention have been compacted
+	 * into days, so they are counted at the start of their day even when hours are asked for, and a
+	 * compacted day the range starts or ends within is counted in full.
+	 *
+	 * @param from        The start of the range, inclusive.
+	 * @param to          The end of the range, exclusive.
+	 * @param granularity Whether to count per hour or per day.
+	 * @return The number of requests made for each store per bucket with requests, oldest first.
+	 * @throws ResponseStatusException If the range is empty or longer than the maximum range.
+	 */
+	public List<StoreCountBucketResponse> countStoreCallsBetween(LocalDateTime from, LocalDateTime to,
+																 Granularity granularity){
+		checkRange(from, to);
+		return sumBuckets(storeCallBucketRepository.countStoreCallsBetween(from, from.truncatedTo(ChronoUnit.DAYS), to), granularity).entrySet().stream()
+				.map(bucket -> new StoreCountBucketResponse(bucket.getKey().key(), bucket.getKey().start(), bucket.getValue()))
+				.toList();
+	}
+
+	/**
+	 * Counts the requests made for the stores of each zip code per hour or day within a time range,
+	 * read from the hourly and daily store call rollup. Hours older than the hourly retention have
+	 * been compacted into days, so they are counted at the start of their day even when hours are asked for,
+	 * and a compacted day the range starts or ends within is counted in full.
+	 *
+	 * @param from        The start of the range, inclusive.
+	 * @param to          The end of the range, exclusive.
+	 * @param granularity Whether to count per hour or per day.
+	 * @return The number of requests made for each zip code per bucket with requests, oldest first.
+	 * @throws ResponseStatusException If the range is empty or longer than the maximum range.
+	 */
+	public List<ZipcodeCountBucketResponse> countZipcodeCallsBetween(LocalDateTime from, LocalDateTime to,
+																	 Granularity granularity){
+		checkRange(from, to);
+		return sumBuckets(storeCallBucketRepository.countZipcodeCallsBetween(from, from.truncatedTo(ChronoUnit.DAYS), to), granularity).entrySet().stream()
+				.map(bucket -> new ZipcodeCountBucketResponse(bucket.getKey().key(), bucket.getKey().start(), bucket.getValue()))
+				.toList();
+	}
+
+	private void checkRange(LocalDateTime from, LocalDateTime to){
+		if (!from.isBefore(to)) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The range must end after it starts");
+		}
+		if (Duration.between(from, to).compareTo(maxRange) > 0) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The range must not be longer than " + maxRange.toDays() + " days");
+		}
+	}
+
+	// Sums rows of (key, bucket start, count) per key and hour or day, keeping the order of the rows
+	private static Map<Bucket, Long> sumBuckets(List<Object[]> rows, Granularity granularity){
+		Map<Bucket, Long> buckets = new LinkedHashMap<>();
+		for (Object[] row : rows) {
+			LocalDateTime start = (LocalDateTime) row[1];
+			if (granularity == Granularity.DAY) {
+				start = start.truncatedTo(ChronoUnit.DAYS);
+			}
+			buckets.merge(new Bucket((String) row[0], start), ((Number) row[2]).longValue(), Long::sum);
+		}
+		return buckets;
+	}
+
+	private record Bucket(String key, LocalDateTime start) {
+	}
 }
@@ -0,0 +1,75 @@
+package dk.kea.project.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Budget limiting the extra calls made to an upstream by retries and hedged requests.
+ * <p>
+ * Every call deposits a fraction of a token and every retry withdraws a whole one, so retries
+ * add at most that fraction of load. When an upstream fails every call, the retries stop once
+ * the budget is spent instead of multiplying the load on it. The budget starts with, and never
+ * holds more than, the burst of tokens.
+ * </p>
+ */
+public class RetryBudget {
+	private final ReentrantLock lock = new ReentrantLock();
+	private final double ratio;
+	private final double burst;
+	private double tokens;
+
+	/**
+	 * Constructs a new, full RetryBudget.
+	 *
+	 * @param ratio The fraction of a retry every call earns.
+	 * @param burst The number of retries that may be made before calls have earned any.
+	 */
+	public RetryBudget(double ratio, int burst) {
+		this.ratio = ratio;
+		this.burst = burst;
+		this.tokens = burst;
+	}
+
+	/**
+	 * Records a call, earning it its fraction of a retry.
+	 */
+	public void deposit() {
+		lock.lock();
+		try {
+			tokens = Math.min(burst, tokens + ratio);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes a retry from the budget.
+	 *
+	 * @return {@code true} if the retry may be made, {@code false} if the budget is spent.
+	 */
+	public boolean tryWithdraw() {
+		lock.lock();
+		try {
+			if (tokens < 1) {
+				return false;
+			}
+			tokens--;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of retries left in the budget.
+	 *
+	 * @return The remaining tokens.
+	 */
+	public double getTokens() {
+		lock.lock();
+		try {
+			return tokens;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -2,10 +2,16 @@ package dk.kea.project.service;
 
 import dk.kea.project.dto.SallingResponse;
 import dk.kea.project.dto.SallingStoreResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -14,24 +20,36 @@ import java.util.stream.Collectors;
 /**
  * Service class responsible for interacting with Salling Group's API.
  * This service provides methods to retrieve information about stores, food waste, and generate random ingredients.
- *
- *
+ * <p>
+ * Every call passes the {@link UpstreamGuard} of Salling, so failed calls are retried within the
+ * retry budget, may be hedged, and are rejected at once while Salling keeps failing. A call that
+ * still fails is signalled as {@code 502 Bad Gateway}, or {@code 503 Service Unavailable} when it
+ * was rejected.
+ * </p>
  */
 
 @Service
 public class SallingService{
-    private final static String SALLING_API_URL_V1 = "https://api.sallinggroup.com/v1";
-    private final static String SALLING_API_URL_V2 = "https://api.sallinggroup.com/v2";
+    public static final Logger logger = LoggerFactory.getLogger(SallingService.class);
+    private final static String SALLING_API_URL_V1 = "/v1";
+    private final static String SALLING_API_URL_V2 = "/v2";
+    private final static List<String> DESIRED_BRANDS = Arrays.asList("netto", "bilka", "foetex");
 
     @Value("${SALLING_API_KEY}")
     private String SALLING_API_KEY;
 
     private WebClient webClient;
+    private UpstreamGuard sallingGuard;
     /**
-     * Constructs a new SallingService and initializes the WebClient.
+     * Constructs a new SallingService using the shared Salling WebClient.
+     *
+     * @param sallingWebClient The pooled WebClient configured for Salling Group's API.
+     * @param sallingGuard     The circuit breaker and retries guarding the calls to Salling Group's API.
      */
-    public SallingService() {
-        this.webClient = WebClient.create();
+    public SallingService(@Qualifier("sallingWebClient") WebClient sallingWebClient,
+                          @Qualifier("sallingGuard") UpstreamGuard sallingGuard) {
+        this.webClient = sallingWebClient;
+        this.sallingGuard = sallingGuard;
     }
     /**
      * Retrieves a list of SallingStoreResponse objects based on the provided zipcode.
@@ -40,21 +58,23 @@ public class SallingService{
      * @return A filtered list of SallingStoreResponse objects.
      */
     public List<SallingStoreResponse> getStores(String zipcode){
-        List<SallingStoreResponse> stores = webClient.method(HttpMethod.GET)
-                .uri(SALLING_API_URL_V2 + "/stores?zip="+ zipcode)
-                .header("Authorization", "Bearer " + SALLING_API_KEY)
-                .retrieve()
-                .bodyToFlux(SallingStoreResponse.class)
-                .collectList()
-                .doOnError(e -> System.out.println(e.getMessage()))
-                .block();
-        List<String> desiredBrands = Arrays.asList("netto", "bilka", "foetex");
-
-        List<SallingStoreResponse> filteredStores = stores.stream()
-                .filter(store -> desiredBrands.contains(store.getBrand()))
-                .toList();
-        return filteredStores;
-
+        return getStoresReactive(zipcode).block();
+    }
+    /**
+     * Retrieves the stores of the provided zipcode without blocking the calling thread.
+     *
+     * @param zipcode The zipcode used to filter stores.
+     * @return A {@code Mono} emitting the filtered list of SallingStoreResponse objects.
+     */
+    public Mono<List<SallingStoreResponse>> getStoresReactive(String zipcode){
+        return sallingGuard.executeIdempotent(webClient.method(HttpMethod.GET)
+                        .uri(SALLING_API_URL_V2 + "/stores?zip="+ zipcode)
+                        .header("Authorization", "Bearer " + SALLING_API_KEY)
+                        .retrieve()
+                        .bodyToFlux(SallingStoreResponse.class)
+                        .filter(store -> DESIRED_BRANDS.contains(store.getBrand()))
+                        .collectList())
+                .onErrorMap(e -> failed("the stores of zip code " + zipcode, e));
     }
     /**
      * Retrieves a list of SallingResponse objects representing food waste for a specific store.
@@ -64,18 +84,33 @@ public class SallingService{
      */
 
     public List<SallingResponse> getFoodWaste(String id){
-        List<SallingResponse> products =
-        webClient.method(HttpMethod.GET)
-                .uri(SALLING_API_URL_V1 + "/food-waste/" + id)
-                .header("Authorization", "Bearer " + SALLING_API_KEY)
-                .retrieve()
-                .bodyToFlux(SallingResponse.class)
-                .collectList()
-                .doOnError(e -> System.out.println(e.getMessage()))
-                .block();
-
+        return getFoodWasteReactive(id).block();
+    }
+    /**
+     * Retrieves the food waste of a specific store without blocking the calling thread.
+     *
+     * @param id The ID of the store for which food waste information is retrieved.
+     * @return A {@code Mono} emitting the SallingResponse objects containing information about food waste.
+     */
+    public Mono<List<SallingResponse>> getFoodWasteReactive(String id){
+        return sallingGuard.executeIdempotent(webClient.method(HttpMethod.GET)
+                        .uri(SALLING_API_URL_V1 + "/food-waste/" + id)
+                        .header("Authorization", "Bearer " + SALLING_API_KEY)
+                        .retrieve()
+                        .bodyToFlux(SallingResponse.class)
+                        .collectList())
+                .onErrorMap(e -> failed("the food waste of store " + id, e));
+    }
 
-                return products;
+    // Rejections by the guard keep their 503, any other failure becomes a 502
+    private static ResponseStatusException failed(String what, Throwable e) {
+        if (e instanceof ResponseStatusException rejected) {
+            logger.warn("Retrieving " + what + " from Salling was rejected: " + rejected.getReason());
+            return rejected;
+        }
+        logger.warn("Retrieving " + what + " from Salling failed: " + e.getMessage());
+        return new ResponseStatusException(HttpStatus.BAD_GATEWAY,
+                "Salling Group's API failed, try again later", e);
     }
     /**
      * Generates a string of random ingredients based on food waste information.
@@ -1,5 +1,7 @@
 package dk.kea.project.service;
 
+import dk.kea.project.dto.ProductResponse;
+import dk.kea.project.dto.ShoppingListOfferRow;
 import dk.kea.project.dto.ShoppingListRequest;
 import dk.kea.project.dto.ShoppingListResponse;
 import dk.kea.project.entity.Offer;
@@ -9,11 +11,15 @@ import dk.kea.project.repository.ShoppingListRepository;
 import dk.kea.project.repository.UserRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.security.Principal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 /**
  * Service class for managing shopping lists.
  */
@@ -22,40 +28,59 @@ public class ShoppingListService {
     ShoppingListRepository shoppingListRepository;
     UserRepository userRepository;
     OfferRepository offerRepository;
+    OfferReferenceResolver offerReferenceResolver;
     /**
      * Constructor for the ShoppingListService class.
      *
      * @param shoppingListRepository The repository for shopping lists.
      * @param userRepository        The repository for users.
      * @param offerRepository       The repository for offers.
+     * @param offerReferenceResolver The resolver checking and referencing the offers of a shopping list.
      */
-    public ShoppingListService(ShoppingListRepository shoppingListRepository, UserRepository userRepository, OfferRepository offerRepository) {
+    public ShoppingListService(ShoppingListRepository shoppingListRepository, UserRepository userRepository, OfferRepository offerRepository,
+                               OfferReferenceResolver offerReferenceResolver) {
         this.shoppingListRepository = shoppingListRepository;
         this.userRepository = userRepository;
         this.offerRepository = offerRepository;
+        this.offerReferenceResolver = offerReferenceResolver;
     }
     /**
      * Retrieves all shopping lists associated with a specific user.
+     * <p>
+     * The lists and their offers are read as projected rows in a single query, so neither the number
+     * of lists nor the number of offers adds queries.
+     * </p>
      *
      * @param username The username of the user.
      * @return A list of ShoppingListResponse objects representing the user's shopping lists.
      */
     public List<ShoppingListResponse> findShoppingListsByUser(String username){
-        List<ShoppingList> shoppingLists = shoppingListRepository.findAllByUserUsername(username);
-        return shoppingLists.stream().map(shoppinglist -> new ShoppingListResponse(shoppinglist)).toList();
+        Map<Integer, ShoppingListResponse> shoppingLists = new LinkedHashMap<>();
+        for (ShoppingListOfferRow row : shoppingListRepository.findOfferRowsByUserUsername(username)) {
+            ShoppingListResponse shoppingList = shoppingLists.computeIfAbsent(row.getListId(), id -> new ShoppingListResponse(row, username));
+            if (row.getOfferId() != null) {
+                shoppingList.getOffers().add(new ProductResponse(row));
+            }
+        }
+        return new ArrayList<>(shoppingLists.values());
     }
     /**
      * Saves a new shopping list based on the provided request body.
+     * <p>
+     * The offers and the user are only referenced by id, so the number of queries does not grow with the offers.
+     * </p>
      *
      * @param body      The request body containing details of the shopping list.
      * @param principal The principal object representing the authenticated user.
      * @return A ResponseStatusException indicating the success or failure of the operation.
+     * @throws ResponseStatusException With status 400 if any of the offers does not exist.
      */
+    @Transactional
     public ResponseStatusException saveShoppingList(ShoppingListRequest body, Principal principal) {
         ShoppingList shoppingList = new ShoppingList();
-        List<Offer> offers = body.getOffers().stream().map(offer -> offerRepository.findAllById(offer.getId())).toList();
+        List<Offer> offers = offerReferenceResolver.resolve(body.getOffers());
         shoppingList.setOffers(offers);
-        shoppingList.setUser(userRepository.findUserByUsername(principal.getName()));
+        shoppingList.setUser(userRepository.getReferenceById(principal.getName()));
         LocalDateTime now = LocalDateTime.now();
         shoppingList.setCreatedAt(now);
         shoppingListRepository.save(shoppingList);
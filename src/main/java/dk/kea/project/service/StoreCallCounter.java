@@ -0,0 +1,221 @@
+package dk.kea.project.service;
+
+import dk.kea.project.entity.StoreCallBucket;
+import dk.kea.project.entity.StoreCallBucket.Granularity;
+import dk.kea.project.repository.StoreCallBucketRepository;
+import dk.kea.project.repository.StoreCallCountRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests made for each store and adds them to the store call rollups: the all-time
+ * total per store, and hourly buckets per store that are compacted into daily buckets over time.
+ * <p>
+ * Requests are counted in memory per store and hour as they are written, and the counts are
+ * flushed to both rollups periodically with multi-row statements, so writing a request does not
+ * cost an extra round trip. The rollups therefore lag the request table by up to one flush
+ * interval. At startup, the history the rollups are missing is backfilled from the request table.
+ * </p>
+ * <p>
+ * Backfilling and compacting the buckets read the buckets and then add to them, which would count
+ * the same calls twice if two nodes did it at once. Both therefore hold the rollup lease, taken
+ * from the {@link StoreRefreshLease} table, until their transaction has committed.
+ * </p>
+ */
+@Component
+public class StoreCallCounter {
+	public static final Logger logger = LoggerFactory.getLogger(StoreCallCounter.class);
+	// Prefixed, so the lease of the rollup cannot collide with the lease of a store
+	static final String ROLLUP_LEASE = "rollup:store_call_bucket";
+
+	private final Map<Key, LongAdder> pending = new ConcurrentHashMap<>();
+	private final StoreCallCountRepository storeCallCountRepository;
+	private final StoreCallBucketRepository storeCallBucketRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final StoreRefreshLease lease;
+	private final Duration hourlyRetention;
+	private final Duration flushInterval;
+
+	/**
+	 * Constructs a new StoreCallCounter and registers its metrics.
+	 *
+	 * @param storeCallCountRepository  The repository of the all-time store call rollup.
+	 * @param storeCallBucketRepository The repository of the hourly and daily store call rollup.
+	 * @param transactionManager        The transaction manager a flush runs in.
+	 * @param lease                     The lease serializing backfills and compactions across nodes.
+	 * @param meterRegistry             The registry the counter metrics are registered in.
+	 * @param hourlyRetention           How long hourly buckets are kept before they are compacted into days.
+	 * @param flushIntervalMs           How often the counted requests are flushed, in milliseconds.
+	 */
+	public StoreCallCounter(StoreCallCountRepository storeCallCountRepository,
+							StoreCallBucketRepository storeCallBucketRepository,
+							PlatformTransactionManager transactionManager, StoreRefreshLease lease,
+							MeterRegistry meterRegistry,
+							@Value("${app.call-counts.hourly-retention:7d}") Duration hourlyRetention,
+							@Value("${app.call-counts.flush-interval-ms:10000}") long flushIntervalMs) {
+		this.storeCallCountRepository = storeCallCountRepository;
+		this.storeCallBucketRepository = storeCallBucketRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.lease = lease;
+		this.hourlyRetention = hourlyRetention;
+		this.flushInterval = Duration.ofMillis(flushIntervalMs);
+		Gauge.builder("greenplate.request.rollup.pending", pending,
+						counts -> counts.values().stream().mapToLong(LongAdder::sum).sum())
+				.description("Requests counted but not yet flushed to the rollup")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Adds the requests the rollups are missing from the request table, once the application has
+	 * started. These are the requests of a store made before its oldest bucket, which are the ones
+	 * written before the rollups existed or before the store was first counted. Requests counted in
+	 * memory so far are flushed first, and requests made within the last flush interval are left
+	 * out, as other nodes may not have flushed them yet. Either way a request is only counted once.
+	 * A failed backfill is logged rather than failing the startup, and the backfill is left to
+	 * another node while it holds the rollup lease.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void backfill() {
+		if (!lease.tryAcquire(ROLLUP_LEASE)) {
+			return;
+		}
+		Map<Key, Long> deltas = drain();
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				write(deltas);
+				Map<Key, Long> history = new HashMap<>();
+				for (Object[] row : storeCallBucketRepository.countUncountedRequestsByHour(
+						LocalDateTime.now().minus(flushInterval))) {
+					history.put(new Key((String) row[0],
+									LocalDateTime.of((Integer) row[1], (Integer) row[2], (Integer) row[3], (Integer) row[4], 0)),
+							((Number) row[5]).longValue());
+				}
+				write(history);
+				if (!history.isEmpty()) {
+					logger.info("Backfilled " + history.size() + " hourly request buckets");
+				}
+			});
+		} catch (RuntimeException e) {
+			restore(deltas);
+			logger.warn("Backfilling the request rollups failed", e);
+		} finally {
+			lease.release(ROLLUP_LEASE);
+		}
+	}
+
+	/**
+	 * Counts a request made for a store.
+	 *
+	 * @param storeId The ID of the store.
+	 * @param created The timestamp when the request was created.
+	 */
+	public void increment(String storeId, LocalDateTime created) {
+		pending.computeIfAbsent(new Key(storeId, created.truncatedTo(ChronoUnit.HOURS)), key -> new LongAdder())
+				.increment();
+	}
+
+	/**
+	 * Adds the requests counted since the last flush to the rollups.
+	 */
+	@Scheduled(fixedDelayString = "${app.call-counts.flush-interval-ms:10000}")
+	@PreDestroy
+	public void flush() {
+		Map<Key, Long> deltas = drain();
+		if (deltas.isEmpty()) {
+			return;
+		}
+		try {
+			// One transaction, so a failed flush adds nothing and can be retried as a whole
+			transactionTemplate.executeWithoutResult(status -> write(deltas));
+		} catch (RuntimeException e) {
+			restore(deltas);
+			logger.warn("Flushing the request counts of " + deltas.size() + " store hours failed", e);
+		}
+	}
+
+	/**
+	 * Merges the hourly buckets older than the hourly retention into daily buckets. The cutoff is
+	 * the start of a day, so the hours of a day are compacted together. Skipped while another node
+	 * holds the rollup lease.
+	 */
+	@Scheduled(fixedDelayString = "${app.call-counts.compaction-interval-ms:3600000}")
+	public void compact() {
+		if (!lease.tryAcquire(ROLLUP_LEASE)) {
+			// Another node is compacting or backfilling the buckets
+			return;
+		}
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				LocalDateTime cutoff = LocalDateTime.now().minus(hourlyRetention).truncatedTo(ChronoUnit.DAYS);
+				List<StoreCallBucket> days = storeCallBucketRepository.sumByDayBefore(Granularity.HOUR, cutoff).stream()
+						.map(row -> new StoreCallBucket((String) row[0], Granularity.DAY,
+								LocalDateTime.of((Integer) row[1], (Integer) row[2], (Integer) row[3], 0, 0),
+								((Number) row[4]).longValue()))
+						.toList();
+				if (days.isEmpty()) {
+					return;
+				}
+				storeCallBucketRepository.addAll(days);
+				int hours = storeCallBucketRepository.deleteBefore(Granularity.HOUR, cutoff);
+				logger.info("Compacted " + hours + " hourly request buckets into " + days.size() + " daily buckets");
+			});
+		} finally {
+			lease.release(ROLLUP_LEASE);
+		}
+	}
+
+	private void write(Map<Key, Long> deltas) {
+		Map<String, Long> stores = new HashMap<>();
+		deltas.forEach((key, delta) -> stores.merge(key.storeId, delta, Long::sum));
+		storeCallCountRepository.addAll(stores);
+		storeCallBucketRepository.addAll(deltas.entrySet().stream()
+				.map(delta -> new StoreCallBucket(delta.getKey().storeId, Granularity.HOUR, delta.getKey().hour,
+						delta.getValue()))
+				.toList());
+	}
+
+	private Map<Key, Long> drain() {
+		Map<Key, Long> deltas = new HashMap<>();
+		pending.forEach((key, count) -> {
+			long delta = count.sumThenReset();
+			if (delta > 0) {
+				deltas.put(key, delta);
+			}
+		});
+		// Requests of earlier hours are no longer coming in, so their counters can go. The previous
+		// hour is kept, as requests created just before the hour turned may still be counted.
+		LocalDateTime previousHour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(1);
+		pending.forEach((key, count) -> {
+			if (key.hour.isBefore(previousHour) && count.sum() == 0) {
+				pending.remove(key, count);
+			}
+		});
+		return deltas;
+	}
+
+	private void restore(Map<Key, Long> deltas) {
+		deltas.forEach((key, delta) -> pending.computeIfAbsent(key, k -> new LongAdder()).add(delta));
+	}
+
+	private record Key(String storeId, LocalDateTime hour) {
+	}
+}
@@ -0,0 +1,86 @@
+package dk.kea.project.service;
+
+import dk.kea.project.repository.RefreshLeaseRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Grants the right to refresh the clearances of a store to one node at a time, using a lease row
+ * per store in the {@code refresh_lease} table.
+ * <p>
+ * A node takes the lease before calling Salling and releases it once the new request is saved.
+ * Other nodes wait for that request instead of making their own. A lease that is not released,
+ * because its node stopped, lapses after the lease duration and can then be taken by another node.
+ * </p>
+ * <p>
+ * Jobs that must not run on two nodes at once, such as compacting the store call rollup, take a
+ * lease under a prefixed name that cannot be the ID of a store.
+ * </p>
+ */
+@Component
+public class StoreRefreshLease {
+	private final RefreshLeaseRepository refreshLeaseRepository;
+	private final String nodeId;
+	private final Duration duration;
+	private final Duration pollInterval;
+
+	/**
+	 * Constructs a new StoreRefreshLease.
+	 *
+	 * @param refreshLeaseRepository The repository of the lease table.
+	 * @param nodeId                 The ID identifying this node as the holder of a lease, random by default.
+	 * @param duration               How long a lease is held at most, longer than the deadline of a Salling call and saving its offers.
+	 * @param pollInterval           How often a waiting node checks whether the holder has saved its request.
+	 */
+	public StoreRefreshLease(RefreshLeaseRepository refreshLeaseRepository,
+							 @Value("${app.refresh-lease.node-id:}") String nodeId,
+							 @Value("${app.refresh-lease.duration:30s}") Duration duration,
+							 @Value("${app.refresh-lease.poll-interval:250ms}") Duration pollInterval) {
+		this.refreshLeaseRepository = refreshLeaseRepository;
+		this.nodeId = nodeId.isEmpty() ? UUID.randomUUID().toString() : nodeId;
+		this.duration = duration;
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * Takes the lease of a store, if no other node holds it.
+	 *
+	 * @param storeId The ID of the store.
+	 * @return {@code true} if this node now holds the lease.
+	 */
+	public boolean tryAcquire(String storeId) {
+		long seconds = Math.max(1, duration.toSeconds());
+		return refreshLeaseRepository.insertIfAbsent(storeId, nodeId, seconds) == 1
+				|| refreshLeaseRepository.takeOverExpired(storeId, nodeId, seconds) == 1;
+	}
+
+	/**
+	 * Releases the lease of a store, if this node holds it.
+	 *
+	 * @param storeId The ID of the store.
+	 */
+	public void release(String storeId) {
+		refreshLeaseRepository.release(storeId, nodeId);
+	}
+
+	/**
+	 * Gets how long a node waits for the holder of a lease to save its request, which is the lease duration.
+	 *
+	 * @return The maximum time to wait for another node.
+	 */
+	public Duration getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Gets how often a waiting node checks whether the holder of a lease has saved its request.
+	 *
+	 * @return The interval between two checks.
+	 */
+	public Duration getPollInterval() {
+		return pollInterval;
+	}
+}
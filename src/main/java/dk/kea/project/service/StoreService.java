@@ -1,14 +1,20 @@
 package dk.kea.project.service;
 
-import dk.kea.project.dto.ProductResponse;
+import dk.kea.project.dto.CachedResponse;
 import dk.kea.project.dto.SallingStoreResponse;
 import dk.kea.project.dto.StoreResponse;
 import dk.kea.project.entity.Store;
 import dk.kea.project.repository.StoreRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 /**
  * Service class responsible for managing operations related to stores.
@@ -18,39 +24,59 @@ import java.util.stream.Collectors;
  */
 @Service
 public class StoreService {
+	// Keeps the IN list of an existence check well below database parameter limits
+	static final int IDS_PER_QUERY = 500;
+
 	StoreRepository storeRepository;
+	SallingService sallingService;
+	StoreZipCache storeZipCache;
+	Scheduler jpaScheduler;
+	// Programmatic, as getStores calls addStores on this instance, bypassing a @Transactional proxy
+	private final TransactionTemplate transactionTemplate;
 	/**
 	 * Constructs a new StoreService with the specified StoreRepository.
 	 *
-	 * @param storeRepository The repository for managing Store entities.
+	 * @param storeRepository    The repository for managing Store entities.
+	 * @param sallingService     The SallingService for retrieving the stores of a zip code from Salling.
+	 * @param storeZipCache      The cache holding the stores of each zip code.
+	 * @param jpaScheduler       The scheduler the reactive variants run their JPA calls on.
+	 * @param transactionManager The transaction manager new stores are added in.
 	 */
-	public StoreService(StoreRepository storeRepository) {
+	public StoreService(StoreRepository storeRepository, SallingService sallingService,
+						StoreZipCache storeZipCache, Scheduler jpaScheduler,
+						PlatformTransactionManager transactionManager) {
 		this.storeRepository = storeRepository;
+		this.sallingService = sallingService;
+		this.storeZipCache = storeZipCache;
+		this.jpaScheduler = jpaScheduler;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
 	}
 	/**
 	 * Adds new stores to the database, filtering out duplicates.
+	 * <p>
+	 * Only the ids of the incoming stores are looked up, and the new stores are inserted with
+	 * multi-row statements, so the cost depends on the number of incoming stores rather than
+	 * the size of the store table. The lookup and the inserts run in one transaction.
+	 * </p>
 	 *
 	 * @param stores The list of SallingStoreResponse objects to be added as stores.
 	 */
 	public void addStores(List<SallingStoreResponse> stores) {
 		System.out.println("addStores()");
-		List<Store> mappedStores = stores.stream().map(Store::new).collect(Collectors.toList());
-		List<Store> oldStores = storeRepository.findAll();
-		List<Store> filteredStores = filteredStore(mappedStores, oldStores);
-		storeRepository.saveAll(filteredStores);
-	}
-	/**
-	 * Filters out stores that already exist in the database, returning only new stores.
-	 *
-	 * @param mappedStores The list of stores to be filtered and added.
-	 * @param oldStores    The list of existing stores in the database.
-	 * @return A list of new stores not present in the database.
-	 */
-	public List<Store> filteredStore(List<Store> mappedStores, List<Store> oldStores){
-		List<Store> updatedStores = mappedStores.stream()
-				.filter(mappedStore -> oldStores.stream().noneMatch(oldStore -> oldStore.getId().equals(mappedStore.getId())))
-				.collect(Collectors.toList());
-		return updatedStores;
+		Map<String, Store> newStores = new LinkedHashMap<>();
+		stores.stream().map(Store::new).forEach(store -> newStores.put(store.getId(), store));
+		List<String> ids = new ArrayList<>(newStores.keySet());
+		transactionTemplate.executeWithoutResult(status -> {
+			for (int from = 0; from < ids.size(); from += IDS_PER_QUERY) {
+				storeRepository.findExistingIds(ids.subList(from, Math.min(from + IDS_PER_QUERY, ids.size())))
+						.forEach(newStores::remove);
+			}
+			if (!newStores.isEmpty()) {
+				storeRepository.insertAll(newStores.values());
+			}
+		});
+		// Only once the stores are committed, so no lookup caches the zip code without them
+		newStores.values().forEach(store -> storeZipCache.invalidate(store.getZip()));
 	}
 	/**
 	 * Checks if stores with a specific zipcode exist in the database.
@@ -67,14 +93,54 @@ public class StoreService {
 	}
 	/**
 	 * Retrieves a list of StoreResponse objects based on the provided zipcode.
+	 * <p>
+	 * The stores are read through the {@link StoreZipCache}. On a miss they are queried once, and
+	 * if the zip code has no stored stores, they are fetched from Salling and added first.
+	 * </p>
+	 *
+	 * @param zipcode The zipcode used to filter stores.
+	 * @return A list of StoreResponse objects representing stores in the specified zipcode,
+	 * with the entity tag and expiry of the cache entry.
+	 */
+
+	public CachedResponse<List<StoreResponse>> getStores(String zipcode){
+		CachedResponse<List<StoreResponse>> cached = storeZipCache.get(zipcode);
+		if (cached != null) {
+			return cached;
+		}
+		List<StoreResponse> stores = findStores(zipcode);
+		if (stores.isEmpty()) {
+			addStores(sallingService.getStores(zipcode));
+			stores = findStores(zipcode);
+		}
+		return storeZipCache.put(zipcode, stores);
+	}
+
+	/**
+	 * Reactive variant of {@link #getStores(String)}. It waits for Salling without holding a thread,
+	 * and runs the JPA calls on the bounded {@code jpaScheduler}.
 	 *
 	 * @param zipcode The zipcode used to filter stores.
-	 * @return A list of StoreResponse objects representing stores in the specified zipcode.
+	 * @return A {@code Mono} emitting the stores in the specified zipcode, with their entity tag and expiry.
 	 */
+	public Mono<CachedResponse<List<StoreResponse>>> getStoresReactive(String zipcode){
+		CachedResponse<List<StoreResponse>> cached = storeZipCache.get(zipcode);
+		if (cached != null) {
+			return Mono.just(cached);
+		}
+		return Mono.fromCallable(() -> findStores(zipcode))
+				.subscribeOn(jpaScheduler)
+				.flatMap(stores -> !stores.isEmpty() ? Mono.just(stores) : sallingService.getStoresReactive(zipcode)
+						.publishOn(jpaScheduler)
+						.map(storesFromZip -> {
+							addStores(storesFromZip);
+							return findStores(zipcode);
+						}))
+				.map(stores -> storeZipCache.put(zipcode, stores));
+	}
 
-	public List<StoreResponse> getStores(String zipcode){
-		List<StoreResponse> stores = storeRepository.findAllByZip(zipcode).stream().map(StoreResponse::new).collect(Collectors.toList());
-		return stores;
+	private List<StoreResponse> findStores(String zipcode) {
+		return storeRepository.findAllByZip(zipcode).stream().map(StoreResponse::new).collect(Collectors.toList());
 	}
 	/**
 	 * Finds a store by its unique identifier (ID).
@@ -0,0 +1,185 @@
+package dk.kea.project.service;
+
+import dk.kea.project.dto.CachedResponse;
+import dk.kea.project.dto.StoreResponse;
+import dk.kea.project.entity.Store;
+import dk.kea.project.repository.StoreRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory cache of the stores in a zip code, keyed by zip code.
+ * <p>
+ * Zip codes with stores are cached for the positive TTL. Zip codes where Salling has no stores
+ * of the supported brands are cached as an empty list for the shorter negative TTL, so they do
+ * not cause a Salling call on every lookup. The cache is warmed from the store table at startup.
+ * When it grows beyond its maximum size, the entries closest to expiry are evicted first.
+ * </p>
+ * <p>
+ * Every entry is tagged with a hash of its stores, so clients can revalidate the stores of a
+ * zip code and only download them again when the set of stores has changed.
+ * </p>
+ */
+@Component
+public class StoreZipCache {
+	private final Map<String, CachedResponse<List<StoreResponse>>> entries = new ConcurrentHashMap<>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final StoreRepository storeRepository;
+	private final Duration ttl;
+	private final Duration negativeTtl;
+	private final int maxSize;
+	private final Counter hits;
+	private final Counter negativeHits;
+	private final Counter misses;
+
+	/**
+	 * Constructs a new StoreZipCache and registers its metrics.
+	 *
+	 * @param storeRepository The repository the cache is warmed from.
+	 * @param meterRegistry   The registry the cache metrics are registered in.
+	 * @param ttl             How long the stores of a zip code are cached.
+	 * @param negativeTtl     How long a zip code without stores is cached.
+	 * @param maxSize         The maximum number of zip codes kept in the cache.
+	 */
+	public StoreZipCache(StoreRepository storeRepository, MeterRegistry meterRegistry,
+						 @Value("${app.zip-cache.ttl:1h}") Duration ttl,
+						 @Value("${app.zip-cache.negative-ttl:10m}") Duration negativeTtl,
+						 @Value("${app.zip-cache.max-size:2000}") int maxSize) {
+		this.storeRepository = storeRepository;
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		this.maxSize = maxSize;
+		this.hits = meterRegistry.counter("greenplate.store.zip.cache.requests", "result", "hit");
+		this.negativeHits = meterRegistry.counter("greenplate.store.zip.cache.requests", "result", "negative-hit");
+		this.misses = meterRegistry.counter("greenplate.store.zip.cache.requests", "result", "miss");
+		Gauge.builder("greenplate.store.zip.cache.size", entries, Map::size).register(meterRegistry);
+	}
+
+	/**
+	 * Loads the stores of every zip code in the store table, up to the maximum size, once the application has started.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warm() {
+		storeRepository.findAll().stream()
+				.collect(Collectors.groupingBy(Store::getZip, Collectors.mapping(StoreResponse::new, Collectors.toList())))
+				.entrySet().stream()
+				.limit(maxSize)
+				// Entries cached by a lookup that ran meanwhile are at least as fresh as the table
+				.forEach(zip -> entries.putIfAbsent(zip.getKey(), entry(zip.getValue(), LocalDateTime.now().plus(ttl))));
+	}
+
+	/**
+	 * Returns the cached stores of a zip code, if a non-expired entry exists.
+	 *
+	 * @param zipcode The zip code.
+	 * @return The cached stores with their entity tag and expiry, an empty list if the zip code is
+	 * known to have none, or {@code null} if there is no valid entry.
+	 */
+	public CachedResponse<List<StoreResponse>> get(String zipcode) {
+		CachedResponse<List<StoreResponse>> entry = entries.get(zipcode);
+		if (entry == null || entry.isExpired(LocalDateTime.now())) {
+			if (entry != null) {
+				entries.remove(zipcode, entry);
+			}
+			misses.increment();
+			return null;
+		}
+		if (entry.getBody().isEmpty()) {
+			negativeHits.increment();
+		} else {
+			hits.increment();
+		}
+		return entry;
+	}
+
+	/**
+	 * Caches the stores of a zip code, using the negative TTL if there are none.
+	 *
+	 * @param zipcode The zip code.
+	 * @param stores  The stores in the zip code.
+	 * @return The cached stores with their entity tag and expiry.
+	 */
+	public CachedResponse<List<StoreResponse>> put(String zipcode, List<StoreResponse> stores) {
+		Duration expiresIn = stores.isEmpty() ? negativeTtl : ttl;
+		CachedResponse<List<StoreResponse>> entry = entry(stores, LocalDateTime.now().plus(expiresIn));
+		entries.put(zipcode, entry);
+		if (entries.size() > maxSize) {
+			evict();
+		}
+		return entry;
+	}
+
+	/**
+	 * Removes the entry of a zip code from the cache.
+	 *
+	 * @param zipcode The zip code.
+	 */
+	public void invalidate(String zipcode) {
+		entries.remove(zipcode);
+	}
+
+	// Drops expired entries first, then the entries closest to expiry until the cache fits again
+	private void evict() {
+		evictionLock.lock();
+		try {
+			LocalDateTime now = LocalDateTime.now();
+			entries.forEach((zipcode, entry) -> {
+				if (entry.isExpired(now)) {
+					entries.remove(zipcode, entry);
+				}
+			});
+			int overflow = entries.size() - maxSize;
+			if (overflow <= 0) {
+				return;
+			}
+			entries.entrySet().stream()
+					.sorted(Comparator.comparing(e -> e.getValue().getExpires()))
+					.limit(overflow)
+					.toList()
+					.forEach(e -> entries.remove(e.getKey(), e.getValue()));
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private static CachedResponse<List<StoreResponse>> entry(List<StoreResponse> stores, LocalDateTime expires) {
+		return new CachedResponse<>(List.copyOf(stores), etag(stores), expires);
+	}
+
+	// Hashes every field of the stores in the order they are served, so the tag changes whenever the response would
+	private static String etag(List<StoreResponse> stores) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		stores.forEach(store -> {
+			for (String field : new String[]{store.getId(), store.getName(), store.getBrand(),
+					store.getZip(), store.getCity(), store.getStreet()}) {
+				digest.update(String.valueOf(field).getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+			}
+		});
+		return "\"stores-" + HexFormat.of().formatHex(Arrays.copyOf(digest.digest(), 16)) + "\"";
+	}
+}
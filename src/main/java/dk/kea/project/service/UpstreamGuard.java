@@ -0,0 +1,231 @@
+package dk.kea.project.service;
+
+import dk.kea.project.config.ResilienceProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Resilience layer around the calls to a single upstream API.
+ * <p>
+ * Every attempt passes the upstream's {@link CircuitBreaker}, so while the upstream is failing,
+ * calls are rejected at once with {@code 503 Service Unavailable} instead of waiting for their
+ * timeout. Attempts failing with a connection error, a timeout, {@code 429} or a server error are
+ * retried after a backoff with full jitter, as long as the {@link RetryBudget} allows it. Client
+ * errors are neither retried nor counted against the upstream.
+ * </p>
+ * <p>
+ * Idempotent calls can be hedged: when the first attempt has not answered within the hedge delay,
+ * a second attempt is sent, the first answer is used and the other attempt is cancelled. Hedged
+ * attempts are paid from the retry budget as well. Calls, retries and hedges are exported as
+ * metrics, tagged with the upstream.
+ * </p>
+ * <p>
+ * When a deadline is configured, a call failing to answer within it, retries and backoffs
+ * included, fails with a {@link TimeoutException} and its pending attempt is cancelled.
+ * </p>
+ */
+public class UpstreamGuard {
+	private final String name;
+	private final CircuitBreaker circuitBreaker;
+	private final RetryBudget retryBudget;
+	private final int maxAttempts;
+	private final Duration initialBackoff;
+	private final Duration maxBackoff;
+	private final Duration hedgeDelay;
+	private final Duration deadline;
+	private final Counter succeeded;
+	private final Counter failed;
+	private final Counter rejected;
+	private final Counter retried;
+	private final Counter budgetExhausted;
+	private final Counter hedged;
+
+	/**
+	 * Constructs a new UpstreamGuard and registers its metrics.
+	 *
+	 * @param name          The name of the upstream, used in the metrics and error messages.
+	 * @param settings      The circuit breaker, retry and hedging settings of the upstream.
+	 * @param meterRegistry The registry the metrics are registered in.
+	 */
+	public UpstreamGuard(String name, ResilienceProperties.Upstream settings, MeterRegistry meterRegistry) {
+		this.name = name;
+		this.circuitBreaker = new CircuitBreaker(name, settings.getSlidingWindowSize(), settings.getMinimumCalls(),
+				settings.getFailureRateThreshold(), settings.getOpenDuration(), settings.getHalfOpenCalls(), meterRegistry);
+		this.retryBudget = new RetryBudget(settings.getRetryRatio(), settings.getRetryBurst());
+		this.maxAttempts = Math.max(1, settings.getMaxAttempts());
+		this.initialBackoff = settings.getInitialBackoff();
+		this.maxBackoff = settings.getMaxBackoff();
+		this.hedgeDelay = settings.getHedgeDelay();
+		this.deadline = settings.getDeadline();
+		this.succeeded = meterRegistry.counter("greenplate.upstream.calls", "upstream", name, "result", "success");
+		this.failed = meterRegistry.counter("greenplate.upstream.calls", "upstream", name, "result", "failure");
+		this.rejected = meterRegistry.counter("greenplate.upstream.calls", "upstream", name, "result", "rejected");
+		this.retried = meterRegistry.counter("greenplate.upstream.retries", "upstream", name, "result", "retried");
+		this.budgetExhausted = meterRegistry.counter("greenplate.upstream.retries", "upstream", name, "result", "budget_exhausted");
+		this.hedged = meterRegistry.counter("greenplate.upstream.hedges", "upstream", name);
+		Gauge.builder("greenplate.upstream.retry.budget", retryBudget, RetryBudget::getTokens)
+				.tag("upstream", name)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Guards a call with the circuit breaker and budgeted retries.
+	 *
+	 * @param call The call, subscribed to once per attempt.
+	 * @param <T>  The type of the answer.
+	 * @return A {@code Mono} emitting the answer of the first successful attempt.
+	 */
+	public <T> Mono<T> execute(Mono<T> call) {
+		// A call earns its retries once, not once per attempt
+		return withDeadline(Mono.defer(() -> {
+			retryBudget.deposit();
+			return attempt(call).retryWhen(retry());
+		}));
+	}
+
+	/**
+	 * Guards an idempotent call with the circuit breaker and budgeted retries, and hedges each
+	 * attempt when a hedge delay is configured.
+	 *
+	 * @param call The call, subscribed to once per attempt and hedged attempt.
+	 * @param <T>  The type of the answer.
+	 * @return A {@code Mono} emitting the first answer of a successful attempt.
+	 */
+	public <T> Mono<T> executeIdempotent(Mono<T> call) {
+		if (hedgeDelay.isZero() || hedgeDelay.isNegative()) {
+			return execute(call);
+		}
+		Mono<T> hedge = Mono.delay(hedgeDelay)
+				.filter(tick -> retryBudget.tryWithdraw())
+				.flatMap(tick -> {
+					hedged.increment();
+					return attempt(call);
+				});
+		return withDeadline(Mono.defer(() -> {
+			retryBudget.deposit();
+			return Mono.firstWithValue(attempt(call), hedge)
+					// Both attempts failed, or the first failed and the budget allowed no hedge
+					.onErrorMap(NoSuchElementException.class, UpstreamGuard::firstFailure)
+					.retryWhen(retry());
+		}));
+	}
+
+	/**
+	 * Guards a streamed call with the circuit breaker. Streams are not retried, as their first
+	 * elements may already have been passed on.
+	 *
+	 * @param call The streamed call.
+	 * @param <T>  The type of the elements.
+	 * @return A {@code Flux} emitting the elements of the call.
+	 */
+	public <T> Flux<T> executeStream(Flux<T> call) {
+		return Flux.defer(() -> {
+			if (!circuitBreaker.tryAcquire()) {
+				rejected.increment();
+				return Flux.error(unavailable());
+			}
+			return call.doOnComplete(this::onSuccess)
+					.doOnError(this::onError)
+					.doOnCancel(circuitBreaker::onIgnored);
+		});
+	}
+
+	/**
+	 * Returns the circuit breaker of the upstream.
+	 *
+	 * @return The circuit breaker.
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Checks whether a failed call is worth retrying: connection errors, timeouts, {@code 429 Too
+	 * Many Requests} and server errors.
+	 *
+	 * @param e The failure of the call.
+	 * @return {@code true} if another attempt may succeed.
+	 */
+	public static boolean isRetryable(Throwable e) {
+		if (e instanceof WebClientResponseException response) {
+			return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
+		}
+		return e instanceof WebClientRequestException || e instanceof TimeoutException;
+	}
+
+	private <T> Mono<T> withDeadline(Mono<T> call) {
+		return deadline.isZero() || deadline.isNegative() ? call : call.timeout(deadline);
+	}
+
+	private <T> Mono<T> attempt(Mono<T> call) {
+		return Mono.defer(() -> {
+			if (!circuitBreaker.tryAcquire()) {
+				rejected.increment();
+				return Mono.error(unavailable());
+			}
+			return call.doOnSuccess(answer -> onSuccess())
+					.doOnError(this::onError)
+					.doOnCancel(circuitBreaker::onIgnored);
+		});
+	}
+
+	private void onSuccess() {
+		succeeded.increment();
+		circuitBreaker.onSuccess();
+	}
+
+	// A client error is an answer of a healthy upstream
+	private void onError(Throwable e) {
+		if (e instanceof WebClientResponseException response && !isRetryable(response)) {
+			onSuccess();
+			return;
+		}
+		failed.increment();
+		circuitBreaker.onFailure();
+	}
+
+	private Retry retry() {
+		return Retry.from(signals -> signals.concatMap(signal -> {
+			Throwable failure = signal.failure();
+			if (signal.totalRetries() >= maxAttempts - 1 || !isRetryable(failure)) {
+				return Mono.error(failure);
+			}
+			if (!retryBudget.tryWithdraw()) {
+				budgetExhausted.increment();
+				return Mono.error(failure);
+			}
+			retried.increment();
+			return Mono.delay(backoff(signal.totalRetries()));
+		}));
+	}
+
+	// Full jitter: a random delay up to the exponential backoff, so retries of many callers spread out
+	private Duration backoff(long retry) {
+		long cap = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(retry, 20));
+		return Duration.ofMillis(ThreadLocalRandom.current().nextLong(cap + 1));
+	}
+
+	private ResponseStatusException unavailable() {
+		return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+				"The " + name + " API is unavailable, try again later");
+	}
+
+	// The failures of the attempts are combined in the cause
+	private static Throwable firstFailure(NoSuchElementException e) {
+		return e.getCause() == null ? e : Exceptions.unwrapMultiple(e.getCause()).get(0);
+	}
+}
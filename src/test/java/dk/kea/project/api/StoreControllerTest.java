@@ -0,0 +1,119 @@
+package dk.kea.project.api;
+
+import dk.kea.project.dto.FreshRequest;
+import dk.kea.project.dto.ProductResponse;
+import dk.kea.project.entity.Request;
+import dk.kea.project.entity.Store;
+import dk.kea.project.repository.RequestRepository;
+import dk.kea.project.repository.StoreRepository;
+import dk.kea.project.service.ClearanceCache;
+import dk.kea.project.service.ClearanceDemand;
+import dk.kea.project.service.ClearanceService;
+import dk.kea.project.service.ClearanceSnapshotStore;
+import dk.kea.project.service.OfferExporter;
+import dk.kea.project.service.ProductService;
+import dk.kea.project.service.RequestService;
+import dk.kea.project.service.SallingService;
+import dk.kea.project.service.StoreRefreshLease;
+import dk.kea.project.service.StoreService;
+import dk.kea.project.service.StoreZipCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class StoreControllerTest {
+
+    MockMvc mockMvc;
+
+    @Mock
+    StoreRepository storeRepository;
+    @Mock
+    SallingService sallingService;
+    @Mock
+    PlatformTransactionManager transactionManager;
+    @Mock
+    RequestService requestService;
+    @Mock
+    ProductService productService;
+    @Mock
+    ClearanceSnapshotStore clearanceSnapshotStore;
+    @Mock
+    StoreRefreshLease storeRefreshLease;
+    @Mock
+    RequestRepository requestRepository;
+    @Mock
+    OfferExporter offerExporter;
+
+    @BeforeEach
+    void setUp() {
+        StoreService storeService = new StoreService(storeRepository, sallingService,
+                new StoreZipCache(storeRepository, new SimpleMeterRegistry(), Duration.ofHours(1), Duration.ofMinutes(10), 100),
+                Schedulers.immediate(), transactionManager);
+        ClearanceService clearanceService = new ClearanceService(new ClearanceCache(new SimpleMeterRegistry(), 100),
+                clearanceSnapshotStore, storeRefreshLease, requestService, productService, storeService, sallingService,
+                Schedulers.immediate(), new ClearanceDemand(new SimpleMeterRegistry()), Duration.ofDays(1), Duration.ZERO);
+        mockMvc = MockMvcBuilders.standaloneSetup(new StoreController(sallingService, productService, requestRepository,
+                storeService, requestService, clearanceService, offerExporter)).build();
+    }
+
+    @Test
+    void testStoresOfACachedZipAreNotModified() throws Exception {
+        when(storeRepository.findAllByZip("2500")).thenReturn(List.of(new Store("store-1", "Netto Valby", "netto",
+                "2500", "Valby", "Vigerslevvej 1")));
+        String etag = mockMvc.perform(get("/api/stores").param("zipcode", "2500"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        clearInvocations(storeRepository);
+
+        mockMvc.perform(get("/api/stores").param("zipcode", "2500").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+
+        verifyNoInteractions(storeRepository, sallingService);
+    }
+
+    @Test
+    void testCachedClearanceIsNotModified() throws Exception {
+        Request request = new Request(new Store("store-1", "Netto Valby", "netto", "2500", "Valby", "Vigerslevvej 1"));
+        request.setId(1);
+        request.setCreated(LocalDateTime.now());
+        when(requestService.findLatestFreshRequest(eq("store-1"), any(LocalDateTime.class)))
+                .thenReturn(new FreshRequest(request));
+        when(productService.getProducts(1)).thenReturn(List.of(new ProductResponse()));
+        String etag = mockMvc.perform(get("/api/stores/clearance").param("id", "store-1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"clearance-1\""))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        clearInvocations(requestService, productService, clearanceSnapshotStore);
+
+        mockMvc.perform(get("/api/stores/clearance").param("id", "store-1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verifyNoInteractions(requestService, productService, clearanceSnapshotStore, sallingService);
+    }
+}
@@ -0,0 +1,155 @@
+package dk.kea.project.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dk.kea.project.dto.ProductResponse;
+import dk.kea.project.entity.Request;
+import dk.kea.project.entity.Store;
+import dk.kea.project.service.ClearanceCache;
+import dk.kea.project.service.ClearanceDemand;
+import dk.kea.project.service.ClearanceService;
+import dk.kea.project.service.ClearanceSnapshotStore;
+import dk.kea.project.service.ProductService;
+import dk.kea.project.service.RequestService;
+import dk.kea.project.service.SallingService;
+import dk.kea.project.service.StoreRefreshLease;
+import dk.kea.project.service.StoreService;
+import dk.kea.project.service.UpstreamGuard;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Throughput of concurrent clearance requests against a slow Salling mock, handled by a
+ * Tomcat-sized platform thread pool versus one virtual thread per request.
+ * <p>
+ * The database is stubbed, so only the upstream wait is measured. Run with {@code mvn test -Pbenchmark}.
+ * </p>
+ */
+class VirtualThreadBenchmark {
+
+    static final int REQUESTS = 1200;
+    static final int TOMCAT_MAX_THREADS = 200;
+    static final int UPSTREAM_DELAY_MS = 1000;
+
+    static HttpServer server;
+    static ScheduledExecutorService responder;
+    static ClearanceService clearanceService;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        responder = Executors.newScheduledThreadPool(2);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), REQUESTS);
+        server.createContext("/v1/food-waste/", exchange ->
+                responder.schedule(() -> respond(exchange), UPSTREAM_DELAY_MS, TimeUnit.MILLISECONDS));
+        server.start();
+
+        SallingService sallingService = new SallingService(mockWebClient(),
+                new UpstreamGuard("salling", new ResilienceProperties().getSalling(), new SimpleMeterRegistry()));
+        RequestService requestService = mock(RequestService.class);
+        ProductService productService = mock(ProductService.class);
+        StoreService storeService = mock(StoreService.class);
+        AtomicInteger requestIds = new AtomicInteger();
+        when(requestService.saveRefresh(any(Store.class), any())).thenAnswer(invocation -> {
+            Request request = new Request(invocation.getArgument(0, Store.class));
+            request.setId(requestIds.incrementAndGet());
+            request.setCreated(LocalDateTime.now());
+            return request;
+        });
+        when(storeService.findStoreById(anyString())).thenAnswer(invocation -> new Store(invocation.getArgument(0),
+                "Netto", "netto", "2500", "Valby", "Vigerslevvej 1"));
+        when(productService.getProducts(anyInt())).thenReturn(List.of(new ProductResponse()));
+
+        StoreRefreshLease storeRefreshLease = mock(StoreRefreshLease.class);
+        when(storeRefreshLease.tryAcquire(anyString())).thenReturn(true);
+
+        clearanceService = new ClearanceService(new ClearanceCache(new SimpleMeterRegistry(), REQUESTS * 2),
+                mock(ClearanceSnapshotStore.class), storeRefreshLease, requestService, productService, storeService,
+                sallingService, Schedulers.boundedElastic(), new ClearanceDemand(new SimpleMeterRegistry()),
+                Duration.ofDays(1), Duration.ZERO);
+    }
+
+    // A pool large enough to admit every concurrent call, so only the upstream latency is measured
+    static WebClient mockWebClient() {
+        HttpClientProperties.Upstream upstream = new HttpClientProperties.Upstream(
+                "http://localhost:" + server.getAddress().getPort(), REQUESTS, REQUESTS, Duration.ofSeconds(30));
+        return new WebClientConfig().webClient(WebClient.builder(), "salling-benchmark", upstream);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.stop(0);
+        responder.shutdownNow();
+    }
+
+    static void respond(HttpExchange exchange) {
+        byte[] body = "[{\"clearances\":[]}]".getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            out.write(body);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void compareThroughput() throws Exception {
+        // Warm up the connection pool and the JIT before measuring
+        clearanceService.getClearance("warmup");
+
+        double platform;
+        try (ExecutorService executor = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS)) {
+            platform = run(executor, "platform");
+        }
+        double virtual;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            virtual = run(executor, "virtual");
+        }
+
+        System.out.printf("%-10s %14s%n", "mode", "requests/s");
+        System.out.printf("%-10s %14.0f%n", "platform", platform);
+        System.out.printf("%-10s %14.0f%n", "virtual", virtual);
+        assertTrue(virtual > platform * 2, "Virtual threads should not be capped by the worker pool size");
+    }
+
+    double run(ExecutorService executor, String storePrefix) throws Exception {
+        long start = System.nanoTime();
+        List<Future<List<ProductResponse>>> results = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            String storeId = storePrefix + "-" + i;
+            results.add(executor.submit(() -> clearanceService.getClearance(storeId).getBody()));
+        }
+        for (Future<List<ProductResponse>> result : results) {
+            assertEquals(1, result.get().size());
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        return REQUESTS / seconds;
+    }
+}
@@ -0,0 +1,106 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.dto.FreshRequest;
+import dk.kea.project.entity.Store;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Latency of the freshness lookup {@link RequestRepository#findLatestFresh} as the request table
+ * grows to one million rows, with and without the {@code (store_id, created)} index.
+ * <p>
+ * Runs against H2 in MySQL mode. Run with {@code mvn test -Pbenchmark}.
+ * </p>
+ */
+@JpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RequestFreshnessBenchmark {
+
+    static final int STORES = 1000;
+    static final int[] TABLE_SIZES = {10_000, 100_000, 1_000_000};
+    static final int ROWS_PER_STATEMENT = 1000;
+    static final int LOOKUPS = 2000;
+
+    @Autowired
+    RequestRepository requestRepository;
+    @Autowired
+    StoreRepository storeRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    final LocalDateTime start = LocalDateTime.now().minusDays(30);
+    int inserted;
+
+    @Test
+    void compareFreshnessLookup() {
+        List<Store> stores = new ArrayList<>();
+        for (int i = 0; i < STORES; i++) {
+            stores.add(new Store("store-" + i, "Netto " + i, "netto", String.valueOf(1000 + i), "City " + i, "Street " + i));
+        }
+        storeRepository.insertAll(stores);
+
+        System.out.printf("%-10s %20s%n", "requests", "lookup avg (us)");
+        double smallest = 0;
+        double largest = 0;
+        for (int size : TABLE_SIZES) {
+            insertRequests(size - inserted);
+            double micros = measure();
+            System.out.printf("%-10d %20.1f%n", size, micros);
+            smallest = smallest == 0 ? micros : smallest;
+            largest = micros;
+        }
+        System.out.println(jdbcTemplate.queryForObject("EXPLAIN SELECT id, created FROM request " +
+                "WHERE store_id = 'store-1' AND created > NOW() ORDER BY created DESC LIMIT 1", String.class));
+
+        jdbcTemplate.execute("DROP INDEX idx_request_store_created");
+        double unindexed = measure();
+        System.out.printf("%-10s %20.1f%n", "no index", unindexed);
+
+        // With the index the lookup only reads the entries of the store inside the window, whatever the table size
+        assertTrue(largest < Math.max(smallest, 50) * 10, "The freshness lookup should not depend on the table size");
+    }
+
+    // Spreads the requests evenly over the stores, newest last, as the application creates them
+    void insertRequests(int count) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int row = inserted++;
+            sql.append(args.isEmpty() ? "INSERT INTO request (store_id, created) VALUES (?, ?)" : ", (?, ?)");
+            args.add("store-" + row % STORES);
+            args.add(Timestamp.valueOf(start.plusSeconds(row)));
+            if (args.size() == ROWS_PER_STATEMENT * 2 || i == count - 1) {
+                jdbcTemplate.update(sql.toString(), args.toArray());
+                sql.setLength(0);
+                args.clear();
+            }
+        }
+    }
+
+    // Average lookup latency, in microseconds, of the newest request of random stores, looking back
+    // one hour, which holds a few requests of every store
+    double measure() {
+        LocalDateTime after = start.plusSeconds(inserted - 3600);
+        for (int i = 0; i < LOOKUPS; i++) {
+            requestRepository.findLatestFresh("store-" + i % STORES, after);
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            FreshRequest latest = requestRepository.findLatestFresh("store-" + (i * 7) % STORES, after);
+            assertNotNull(latest);
+        }
+        return (System.nanoTime() - begin) / 1000.0 / LOOKUPS;
+    }
+}
@@ -1,6 +1,6 @@
 package dk.kea.project.repository;
 
-import dk.kea.project.entity.ShoppingList;
+import dk.kea.project.dto.ShoppingListOfferRow;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -16,17 +16,12 @@ class ShoppingListRepositoryTest {
 
     @Mock
     ShoppingListRepository shoppingListRepository;
-
-    ShoppingList createShoppingList() {
-        ShoppingList shoppingList = new ShoppingList();
-        shoppingList.setId(1);
-        return shoppingList;
-    }
+    @Mock
+    ShoppingListOfferRow row;
 
     @Test
-    void findAllByUserUsername() {
-        ShoppingList shoppingList = createShoppingList();
-        when(shoppingListRepository.findAllByUserUsername("username")).thenReturn(List.of(shoppingList));
-        assertEquals(1, shoppingListRepository.findAllByUserUsername("username").size());
+    void findOfferRowsByUserUsername() {
+        when(shoppingListRepository.findOfferRowsByUserUsername("username")).thenReturn(List.of(row));
+        assertEquals(1, shoppingListRepository.findOfferRowsByUserUsername("username").size());
     }
 }
\ No newline at end of file
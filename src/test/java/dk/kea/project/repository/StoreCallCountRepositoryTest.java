@@ -0,0 +1,44 @@
+package dk.kea.project.repository;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.entity.Store;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@JpaTest
+class StoreCallCountRepositoryTest {
+
+    @Autowired
+    StoreCallCountRepository storeCallCountRepository;
+    @Autowired
+    StoreRepository storeRepository;
+
+    @BeforeEach
+    void setUp() {
+        storeRepository.saveAll(List.of(
+                new Store("store-1", "Netto Valby", "netto", "2500", "Valby", "Vigerslevvej 1"),
+                new Store("store-2", "Føtex Valby", "foetex", "2500", "Valby", "Valby Langgade 2"),
+                new Store("store-3", "Netto Nørrebro", "netto", "2200", "København N", "Nørrebrogade 3")));
+    }
+
+    @Test
+    void testAddAllAccumulatesDeltas() {
+        storeCallCountRepository.addAll(Map.of("store-1", 2L, "store-2", 1L));
+        storeCallCountRepository.addAll(Map.of("store-1", 3L));
+
+        Map<String, Long> stores = storeCallCountRepository.countStoreCalls().stream()
+                .collect(Collectors.toMap(row -> (String) row[0], row -> ((Number) row[2]).longValue()));
+        assertEquals(Map.of("store-1", 5L, "store-2", 1L, "store-3", 0L), stores);
+
+        Map<String, Long> zipcodes = storeCallCountRepository.countZipcodeCalls().stream()
+                .collect(Collectors.toMap(row -> (String) row[0], row -> ((Number) row[1]).longValue()));
+        assertEquals(Map.of("2500", 6L, "2200", 0L), zipcodes);
+    }
+}
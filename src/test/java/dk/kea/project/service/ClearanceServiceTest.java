@@ -0,0 +1,226 @@
+package dk.kea.project.service;
+
+import dk.kea.project.dto.CachedResponse;
+import dk.kea.project.dto.FreshRequest;
+import dk.kea.project.dto.ProductResponse;
+import dk.kea.project.dto.SallingResponse;
+import dk.kea.project.entity.Request;
+import dk.kea.project.entity.Store;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ClearanceServiceTest {
+
+    ClearanceService clearanceService;
+
+    @Mock
+    RequestService requestService;
+    @Mock
+    ProductService productService;
+    @Mock
+    StoreService storeService;
+    @Mock
+    SallingService sallingService;
+    @Mock
+    ClearanceSnapshotStore clearanceSnapshotStore;
+    @Mock
+    StoreRefreshLease storeRefreshLease;
+
+    // Stands in for the request table: empty until the first refresh persists its request
+    AtomicReference<Request> persistedRequest = new AtomicReference<>();
+    AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ClearanceCache clearanceCache = new ClearanceCache(new SimpleMeterRegistry(), 100);
+        clearanceService = new ClearanceService(clearanceCache, clearanceSnapshotStore, storeRefreshLease, requestService,
+                productService, storeService, sallingService, Schedulers.immediate(), new ClearanceDemand(new SimpleMeterRegistry()),
+                Duration.ofDays(1), Duration.ZERO);
+        lenient().when(storeRefreshLease.tryAcquire("store-1")).thenReturn(true);
+
+        when(requestService.findLatestFreshRequest(eq("store-1"), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> {
+                    Request request = persistedRequest.get();
+                    LocalDateTime after = invocation.getArgument(1);
+                    return request != null && request.getCreated().isAfter(after) ? new FreshRequest(request) : null;
+                });
+        lenient().when(sallingService.getFoodWaste("store-1")).thenAnswer(invocation -> {
+            upstreamCalls.incrementAndGet();
+            Thread.sleep(200);
+            return List.of(new SallingResponse());
+        });
+        lenient().when(storeService.findStoreById("store-1")).thenReturn(new Store("store-1", "Netto Valby", "netto",
+                "2500", "Valby", "Vigerslevvej 1"));
+        lenient().when(requestService.saveRefresh(any(Store.class), any())).thenAnswer(invocation -> {
+            Request request = new Request(invocation.getArgument(0, Store.class));
+            request.setId(1);
+            request.setCreated(LocalDateTime.now());
+            persistedRequest.set(request);
+            return request;
+        });
+        lenient().when(productService.getProducts(anyInt())).thenReturn(List.of(new ProductResponse()));
+    }
+
+    @Test
+    void testConcurrentClearanceRequestsShareOneUpstreamCall() throws Exception {
+        int callers = 300;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<ProductResponse>>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return clearanceService.getClearance("store-1").getBody();
+                }));
+            }
+            start.countDown();
+            for (Future<List<ProductResponse>> result : results) {
+                assertEquals(1, result.get().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, upstreamCalls.get());
+        verify(sallingService, times(1)).getFoodWaste("store-1");
+        verify(requestService, times(1)).saveRefresh(any(Store.class), any());
+    }
+
+    @Test
+    void testRefreshReusesRequestPersistedByEarlierRefresh() {
+        FreshRequest first = clearanceService.refresh("store-1");
+        FreshRequest second = clearanceService.refresh("store-1");
+
+        assertEquals(first.getId(), second.getId());
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void testPrefetchReplacesRequestExpiringWithinLeadTime() {
+        Request expiring = new Request();
+        expiring.setId(0);
+        expiring.setCreated(LocalDateTime.now().minusMinutes(14));
+        persistedRequest.set(expiring);
+
+        clearanceService.prefetch("store-1", Duration.ofMinutes(2));
+        clearanceService.getClearance("store-1");
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(1, persistedRequest.get().getId());
+        verify(productService, times(1)).getProducts(1);
+    }
+
+    @Test
+    void testClearanceIsTaggedWithItsRequestUntilItExpires() {
+        CachedResponse<List<ProductResponse>> first = clearanceService.getClearance("store-1");
+        CachedResponse<List<ProductResponse>> second = clearanceService.getClearance("store-1");
+
+        assertEquals("\"clearance-1\"", first.getEtag());
+        assertEquals(first.getEtag(), second.getEtag());
+        assertEquals(persistedRequest.get().getCreated().plusMinutes(15), second.getExpires());
+        // The second lookup is answered from the cache
+        verify(productService, times(1)).getProducts(1);
+    }
+
+    @Test
+    void testNodeWithoutLeaseServesRequestOfLeaseHolder() {
+        when(storeRefreshLease.tryAcquire("store-1")).thenReturn(false);
+        when(storeRefreshLease.getDuration()).thenReturn(Duration.ofSeconds(5));
+        when(storeRefreshLease.getPollInterval()).thenReturn(Duration.ofMillis(10));
+        // The node holding the lease saves its request while this one waits
+        Request saved = new Request();
+        saved.setId(7);
+        saved.setCreated(LocalDateTime.now());
+        ScheduledExecutorService otherNode = Executors.newSingleThreadScheduledExecutor();
+        CachedResponse<List<ProductResponse>> clearance;
+        try {
+            otherNode.schedule(() -> persistedRequest.set(saved), 100, TimeUnit.MILLISECONDS);
+            clearance = clearanceService.getClearance("store-1");
+        } finally {
+            otherNode.shutdownNow();
+        }
+
+        assertEquals("\"clearance-7\"", clearance.getEtag());
+        assertEquals(0, upstreamCalls.get());
+        verify(clearanceSnapshotStore, times(1)).put("store-1", clearance);
+    }
+
+    @Test
+    void testExpiredRequestIsServedWhenSallingFails() {
+        Request expired = new Request();
+        expired.setId(3);
+        expired.setCreated(LocalDateTime.now().minusHours(2));
+        persistedRequest.set(expired);
+        when(sallingService.getFoodWaste("store-1"))
+                .thenThrow(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Salling is unavailable"));
+
+        CachedResponse<List<ProductResponse>> clearance = clearanceService.getClearance("store-1");
+
+        assertEquals("\"clearance-3\"", clearance.getEtag());
+        assertTrue(clearance.isExpired(LocalDateTime.now()));
+        // An expired answer is not shared with other lookups
+        verify(clearanceSnapshotStore, never()).put(any(), any());
+    }
+
+    @Test
+    void testStaleRequestIsServedWhileTheStoreIsRefreshed() throws InterruptedException {
+        ClearanceService revalidating = new ClearanceService(new ClearanceCache(new SimpleMeterRegistry(), 100),
+                clearanceSnapshotStore, storeRefreshLease, requestService, productService, storeService, sallingService,
+                Schedulers.immediate(), new ClearanceDemand(new SimpleMeterRegistry()), Duration.ofDays(1), Duration.ofHours(1));
+        Request stale = new Request();
+        stale.setId(3);
+        stale.setCreated(LocalDateTime.now().minusMinutes(20));
+        persistedRequest.set(stale);
+        when(sallingService.getFoodWasteReactive("store-1"))
+                .thenReturn(Mono.delay(Duration.ofMillis(200)).thenReturn(List.of(new SallingResponse())));
+
+        CachedResponse<List<ProductResponse>> served = revalidating.getClearance("store-1");
+
+        assertEquals("\"clearance-3\"", served.getEtag());
+        assertTrue(served.getAge(LocalDateTime.now()).toMinutes() >= 20);
+        // Answered before the refresh has saved its request
+        assertEquals(3, persistedRequest.get().getId());
+        CachedResponse<List<ProductResponse>> refreshed = served;
+        for (int i = 0; i < 100 && refreshed.isExpired(LocalDateTime.now()); i++) {
+            Thread.sleep(20);
+            refreshed = revalidating.getClearance("store-1");
+        }
+        assertEquals("\"clearance-1\"", refreshed.getEtag());
+        verify(sallingService, times(1)).getFoodWasteReactive("store-1");
+        verify(sallingService, never()).getFoodWaste("store-1");
+    }
+}
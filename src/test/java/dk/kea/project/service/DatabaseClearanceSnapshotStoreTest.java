@@ -0,0 +1,44 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.dto.CachedResponse;
+import dk.kea.project.dto.ProductResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@JpaTest
+@Import(DatabaseClearanceSnapshotStore.class)
+class DatabaseClearanceSnapshotStoreTest {
+
+    @Autowired
+    DatabaseClearanceSnapshotStore clearanceSnapshotStore;
+
+    @Test
+    void testSnapshotIsReplacedAndExpires() {
+        LocalDateTime expires = LocalDateTime.now().plusMinutes(10);
+        clearanceSnapshotStore.put("store-1", new CachedResponse<>(List.of(product("Milk")), "\"clearance-1\"", expires));
+        clearanceSnapshotStore.put("store-1", new CachedResponse<>(List.of(product("Bread"), product("Cheese")),
+                "\"clearance-2\"", expires));
+        clearanceSnapshotStore.put("store-2", new CachedResponse<>(List.of(product("Milk")), "\"clearance-3\"",
+                LocalDateTime.now().minusMinutes(1)));
+
+        CachedResponse<List<ProductResponse>> snapshot = clearanceSnapshotStore.get("store-1");
+        assertEquals("\"clearance-2\"", snapshot.getEtag());
+        assertEquals(2, snapshot.getBody().size());
+        assertEquals("Bread", snapshot.getBody().get(0).getDescription());
+        assertNull(clearanceSnapshotStore.get("store-2"));
+    }
+
+    ProductResponse product(String description) {
+        ProductResponse product = new ProductResponse();
+        product.setDescription(description);
+        return product;
+    }
+}
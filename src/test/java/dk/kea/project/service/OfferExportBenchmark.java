@@ -0,0 +1,111 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Exports two million offers as NDJSON and CSV with {@link OfferExporter}, counting what is
+ * written without keeping it.
+ * <p>
+ * The offers live in an H2 file database in MySQL mode, so they do not take up heap themselves.
+ * Run with a small heap to see that the export does not depend on the number of offers:
+ * {@code mvn test -Pbenchmark -Dtest=OfferExportBenchmark -DargLine=-Xmx128m}.
+ * The number of offers can be changed with {@code -Doffers=...}.
+ * </p>
+ */
+@JpaTest
+@Import(OfferExporter.class)
+// The export reads its batches on their own, as it does in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OfferExportBenchmark {
+
+    static final int OFFERS = Integer.getInteger("offers", 2_000_000);
+    static final int PRODUCTS = 1000;
+    static final int ROWS_PER_STATEMENT = 1000;
+
+    @Autowired
+    OfferExporter offerExporter;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void exportOffers() throws IOException {
+        insertOffers();
+        System.out.printf("max heap %d MB, %d offers%n", Runtime.getRuntime().maxMemory() >> 20, OFFERS);
+        System.out.printf("%-8s %12s %12s %12s%n", "format", "rows", "MB written", "time (ms)");
+        for (OfferExporter.Format format : OfferExporter.Format.values()) {
+            CountingOutputStream out = new CountingOutputStream();
+            long start = System.nanoTime();
+            long rows = offerExporter.export(out, format);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%-8s %12d %12d %12d%n", format, rows, out.bytes >> 20, millis);
+
+            assertEquals(OFFERS, rows);
+            // One line per offer, plus the header for CSV
+            assertEquals(format == OfferExporter.Format.CSV ? OFFERS + 1 : OFFERS, out.lines);
+        }
+    }
+
+    void insertOffers() {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("INSERT INTO product (ean, description, image) VALUES ");
+        for (int i = 0; i < PRODUCTS; i++) {
+            sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+            args.add("ean-" + i);
+            args.add("Product " + i + ", \"special\"");
+            args.add("https://images.example/" + i + ".png");
+        }
+        jdbcTemplate.update(sql.toString(), args.toArray());
+
+        for (int from = 0; from < OFFERS; from += ROWS_PER_STATEMENT) {
+            int rows = Math.min(ROWS_PER_STATEMENT, OFFERS - from);
+            sql.setLength(0);
+            sql.append("INSERT INTO offer (original_price, new_price, discount, percent_discount, ean) VALUES ");
+            args.clear();
+            for (int i = 0; i < rows; i++) {
+                sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+                args.add(20.0);
+                args.add(15.0);
+                args.add(5.0);
+                args.add(25.0);
+                args.add("ean-" + (from + i) % PRODUCTS);
+            }
+            jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+    }
+
+    static class CountingOutputStream extends OutputStream {
+        long bytes;
+        long lines;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            if (b == '\n') {
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+    }
+}
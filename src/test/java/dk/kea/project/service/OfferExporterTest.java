@@ -0,0 +1,74 @@
+package dk.kea.project.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.kea.project.dto.OfferDetailsResponse;
+import dk.kea.project.repository.OfferRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OfferExporterTest {
+
+    OfferExporter offerExporter;
+    ObjectMapper mapper = new ObjectMapper();
+
+    @Mock
+    OfferRepository offerRepository;
+
+    @BeforeEach
+    void setUp() {
+        offerExporter = new OfferExporter(offerRepository, mapper, 2);
+        // Two full batches and an empty one, each starting after the last offer of the previous batch
+        when(offerRepository.findOfferDetailsAfter(0, PageRequest.of(0, 2))).thenReturn(List.of(
+                new OfferDetailsResponse(1, 5, 20, 25, 20, "ean-1", 7, "Milk, 1 l"),
+                new OfferDetailsResponse(2, 10, 40, 50, 20, "ean-2", null, "Bread \"rye\"")));
+        when(offerRepository.findOfferDetailsAfter(2, PageRequest.of(0, 2))).thenReturn(List.of(
+                new OfferDetailsResponse(3, 1, 9, 10, 10, null, 7, "Eggs\nfree range"),
+                new OfferDetailsResponse(4, 1, 9, 10, 10, "ean-4", 7, "Butter")));
+        when(offerRepository.findOfferDetailsAfter(4, PageRequest.of(0, 2))).thenReturn(List.of());
+    }
+
+    @Test
+    void testCsvQuotesFieldsWithSeparatorsQuotesAndLineBreaks() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(4, offerExporter.export(out, OfferExporter.Format.CSV));
+
+        assertEquals("""
+                id,discount,newPrice,originalPrice,percentDiscount,ean,requestId,description
+                1,5.0,20.0,25.0,20.0,ean-1,7,"Milk, 1 l"
+                2,10.0,40.0,50.0,20.0,ean-2,,"Bread ""rye\"""
+                3,1.0,9.0,10.0,10.0,,7,"Eggs
+                free range"
+                4,1.0,9.0,10.0,10.0,ean-4,7,Butter
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testNdjsonWritesOneObjectPerLine() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(4, offerExporter.export(out, OfferExporter.Format.NDJSON));
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(4, lines.size());
+        OfferDetailsResponse eggs = mapper.readValue(lines.get(2), OfferDetailsResponse.class);
+        assertEquals(3, eggs.getId());
+        assertEquals("Eggs\nfree range", eggs.getDescription());
+        assertNull(eggs.getEan());
+        assertNull(mapper.readValue(lines.get(1), OfferDetailsResponse.class).getRequestId());
+    }
+}
@@ -0,0 +1,115 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.dto.RecipeRequest;
+import dk.kea.project.dto.ShoppingListRequest;
+import dk.kea.project.entity.Offer;
+import dk.kea.project.entity.Product;
+import dk.kea.project.entity.Recipe;
+import dk.kea.project.entity.User;
+import dk.kea.project.repository.OfferRepository;
+import dk.kea.project.repository.ProductRepository;
+import dk.kea.project.repository.RecipeRepository;
+import dk.kea.project.repository.ShoppingListRepository;
+import dk.kea.project.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Statements issued by saving a recipe and a shopping list of 10, 100 and 500 offers, comparing
+ * the former lookup of every offer by id with {@link OfferReferenceResolver}.
+ * <p>
+ * Runs against H2 in MySQL mode. Run with {@code mvn test -Pbenchmark}.
+ * </p>
+ */
+@JpaTest
+@Import({RecipeService.class, ShoppingListService.class, ProductUsageCounter.class, OfferReferenceResolver.class,
+        StatementCounter.class})
+// Every save commits on its own, as it does in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OfferReferenceBenchmark {
+
+    static final int[] SIZES = {10, 100, 500};
+
+    @Autowired
+    RecipeService recipeService;
+    @Autowired
+    ShoppingListService shoppingListService;
+    @Autowired
+    OfferRepository offerRepository;
+    @Autowired
+    ProductRepository productRepository;
+    @Autowired
+    RecipeRepository recipeRepository;
+    @Autowired
+    ShoppingListRepository shoppingListRepository;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    final Principal principal = () -> "benchmark";
+
+    @Test
+    void compareStatements() {
+        userRepository.save(new User("benchmark", "benchmark@example.com", "secret", "Bench", "Mark"));
+        Product product = productRepository.save(new Product("ean-1", "Milk", "milk.png"));
+        List<Offer> stored = new ArrayList<>();
+        for (int i = 0; i < SIZES[SIZES.length - 1]; i++) {
+            stored.add(offerRepository.save(new Offer(20, 15, 5, 25, product, null)));
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        System.out.printf("%-8s %16s %16s %16s%n", "offers", "per-offer", "recipe", "shopping list");
+        List<Integer> recipes = new ArrayList<>();
+        List<Integer> shoppingLists = new ArrayList<>();
+        for (int size : SIZES) {
+            // Clients send offers holding only their id
+            List<Offer> sent = stored.subList(0, size).stream().map(offer -> {
+                Offer idOnly = new Offer();
+                idOnly.setId(offer.getId());
+                return idOnly;
+            }).toList();
+
+            StatementCounter.reset();
+            transaction.executeWithoutResult(status -> savePerOffer(sent));
+            int perOffer = StatementCounter.count();
+
+            StatementCounter.reset();
+            recipeService.saveRecipe(new RecipeRequest("Recipe", "Body", sent), principal);
+            int recipe = StatementCounter.count();
+
+            StatementCounter.reset();
+            shoppingListService.saveShoppingList(new ShoppingListRequest(sent), principal);
+            int shoppingList = StatementCounter.count();
+
+            System.out.printf("%-8d %16d %16d %16d%n", size, perOffer, recipe, shoppingList);
+            recipes.add(recipe);
+            shoppingLists.add(shoppingList);
+        }
+
+        assertEquals(SIZES.length * 2, recipeRepository.count());
+        assertEquals(SIZES.length, shoppingListRepository.count());
+        assertEquals(1, recipes.stream().distinct().count(), "Saving a recipe should not issue a statement per offer");
+        assertEquals(1, shoppingLists.stream().distinct().count(), "Saving a shopping list should not issue a statement per offer");
+    }
+
+    // The lookups made by saveRecipe before the offers were resolved in one query
+    void savePerOffer(List<Offer> sent) {
+        Recipe recipe = new Recipe("Recipe", "Body", sent.stream()
+                .map(offer -> offerRepository.findAllById(offer.getId())).toList());
+        recipe.setUser(userRepository.findUserByUsername(principal.getName()));
+        recipeRepository.save(recipe);
+    }
+}
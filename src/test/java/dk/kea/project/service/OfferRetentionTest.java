@@ -0,0 +1,86 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.entity.Offer;
+import dk.kea.project.entity.Product;
+import dk.kea.project.entity.Recipe;
+import dk.kea.project.entity.Request;
+import dk.kea.project.entity.ShoppingList;
+import dk.kea.project.entity.Store;
+import dk.kea.project.repository.OfferRepository;
+import dk.kea.project.repository.ProductRepository;
+import dk.kea.project.repository.RecipeRepository;
+import dk.kea.project.repository.RequestRepository;
+import dk.kea.project.repository.ShoppingListRepository;
+import dk.kea.project.repository.StoreRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@JpaTest(properties = "app.offer-retention.batch-size=2")
+@Import(OfferRetention.class)
+// Every batch commits on its own, as it does in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OfferRetentionTest {
+
+    @Autowired
+    OfferRetention offerRetention;
+    @Autowired
+    OfferRepository offerRepository;
+    @Autowired
+    ProductRepository productRepository;
+    @Autowired
+    RequestRepository requestRepository;
+    @Autowired
+    StoreRepository storeRepository;
+    @Autowired
+    RecipeRepository recipeRepository;
+    @Autowired
+    ShoppingListRepository shoppingListRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testOnlyUnreferencedOffersOfOldRequestsAreDeleted() {
+        Store store = storeRepository.save(new Store("store-1", "Netto Valby", "netto", "2500", "Valby", "Vigerslevvej 1"));
+        Product milk = productRepository.save(new Product("ean-milk", "Milk", "milk.png"));
+        List<Offer> threeDaysOld = offers(request(store, 3 * 24), milk, 3);
+        List<Offer> twoDaysOld = offers(request(store, 2 * 24 + 1), milk, 2);
+        // The newest old request has no offers, as when a store had no clearances
+        request(store, 2 * 24);
+        List<Offer> fresh = offers(request(store, 0), milk, 2);
+        recipeRepository.save(new Recipe("Porridge", "Cook it", List.of(threeDaysOld.get(1))));
+        shoppingListRepository.save(new ShoppingList(null, List.of(twoDaysOld.get(0)), LocalDateTime.now()));
+
+        assertEquals(3, offerRetention.purge());
+        assertEquals(0, offerRetention.purge());
+
+        List<Integer> kept = offerRepository.findAll().stream().map(Offer::getId).sorted().toList();
+        assertEquals(List.of(threeDaysOld.get(1).getId(), twoDaysOld.get(0).getId(),
+                fresh.get(0).getId(), fresh.get(1).getId()), kept);
+    }
+
+    Request request(Store store, int hoursOld) {
+        Request request = requestRepository.save(new Request(store));
+        jdbcTemplate.update("UPDATE request SET created = ? WHERE id = ?",
+                LocalDateTime.now().minusHours(hoursOld), request.getId());
+        return request;
+    }
+
+    List<Offer> offers(Request request, Product product, int count) {
+        List<Offer> offers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            offers.add(offerRepository.save(new Offer(20, 15, 5, 25, product, request)));
+        }
+        return offers;
+    }
+}
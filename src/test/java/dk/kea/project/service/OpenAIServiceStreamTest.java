@@ -0,0 +1,164 @@
+package dk.kea.project.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dk.kea.project.config.HttpClientProperties;
+import dk.kea.project.config.ResilienceProperties;
+import dk.kea.project.config.WebClientConfig;
+import dk.kea.project.entity.ApiUsage;
+import dk.kea.project.repository.ApiUsageRepository;
+import dk.kea.project.repository.CachedRecipeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Streams recipes from a local stub of the completion API, which sends its events in chunks with a
+ * pause between them, as the real API does while it generates.
+ */
+@ExtendWith(MockitoExtension.class)
+class OpenAIServiceStreamTest {
+
+    static final int EVENT_DELAY_MS = 200;
+    static final List<String> DELTAS = List.of("<h3>Pandekager</h3>", "\n<ul>", " <li>Mælk</li>", "</ul>");
+
+    @Mock
+    ApiUsageRepository apiUsageRepository;
+    @Mock
+    CachedRecipeRepository cachedRecipeRepository;
+
+    HttpServer server;
+    Queue<String> requests = new ConcurrentLinkedQueue<>();
+    OpenAIService openAIService;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 10);
+        server.createContext("/v1/chat/completions", this::respond);
+        server.start();
+        HttpClientProperties.Upstream upstream = new HttpClientProperties.Upstream(
+                "http://localhost:" + server.getAddress().getPort(), 10, 10, Duration.ofSeconds(30));
+        WebClient client = new WebClientConfig().webClient(WebClient.builder(), "openai-stub", upstream);
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        RecipeCache recipeCache = new RecipeCache(cachedRecipeRepository, mapper, new SimpleMeterRegistry(),
+                Duration.ofHours(1), 10, false);
+        UpstreamGuard openAiGuard = new UpstreamGuard("openai", new ResilienceProperties().getOpenai(), new SimpleMeterRegistry());
+        openAIService = new OpenAIService(client, mapper, null, apiUsageRepository, recipeCache, Schedulers.boundedElastic(),
+                openAiGuard);
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    void respond(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        requests.add(body);
+        if (body.contains("fail")) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        // A length of 0 sends the body chunked
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            send(out, "{\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"\"}}]}");
+            for (String delta : DELTAS) {
+                pause();
+                send(out, "{\"choices\":[{\"index\":0,\"delta\":{\"content\":" + quote(delta) + "}}]}");
+            }
+            send(out, "{\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}");
+            send(out, "{\"choices\":[],\"usage\":{\"prompt_tokens\":30,\"completion_tokens\":12,\"total_tokens\":42}}");
+            send(out, OpenAIService.STREAM_DONE);
+        }
+    }
+
+    void send(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    static String quote(String text) {
+        return "\"" + text.replace("\n", "\\n") + "\"";
+    }
+
+    static void pause() {
+        try {
+            Thread.sleep(EVENT_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void testDeltasAreEmittedWhileTheRecipeIsGenerated() {
+        long start = System.nanoTime();
+        List<Long> arrivals = new ArrayList<>();
+        List<String> deltas = openAIService.streamRequest("Mælk, mel", "prompt")
+                .doOnNext(delta -> arrivals.add(System.nanoTime() - start))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+        long total = System.nanoTime() - start;
+
+        assertEquals(DELTAS, deltas);
+        // The first part arrives before the remaining parts are generated
+        assertTrue(total - arrivals.get(0) >= Duration.ofMillis(EVENT_DELAY_MS * (DELTAS.size() - 1) - 50).toNanos(),
+                "The first part should not wait for the whole recipe");
+        assertTrue(requests.peek().contains("\"stream\":true"));
+        assertTrue(requests.peek().contains("\"include_usage\":true"));
+
+        ArgumentCaptor<ApiUsage> usage = ArgumentCaptor.forClass(ApiUsage.class);
+        verify(apiUsageRepository).save(usage.capture());
+        assertEquals(42, usage.getValue().getTokensUsed());
+    }
+
+    @Test
+    void testCompletedRecipeIsServedFromCache() {
+        openAIService.streamRequest("Mælk, mel", "prompt").blockLast(Duration.ofSeconds(10));
+
+        List<String> cached = openAIService.streamRequest("mel;mælk", "prompt").collectList().block(Duration.ofSeconds(10));
+
+        assertEquals(List.of(String.join("", DELTAS)), cached);
+        assertEquals(1, requests.size());
+        ArgumentCaptor<ApiUsage> usage = ArgumentCaptor.forClass(ApiUsage.class);
+        verify(apiUsageRepository, times(2)).save(usage.capture());
+        assertTrue(usage.getAllValues().get(1).isCached());
+        assertEquals(42, usage.getAllValues().get(1).getTokensSaved());
+    }
+
+    @Test
+    void testFailedRequestSignalsServerError() {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> openAIService.streamRequest("fail", "prompt").blockLast(Duration.ofSeconds(10)));
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, e.getStatusCode());
+    }
+}
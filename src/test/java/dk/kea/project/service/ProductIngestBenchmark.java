@@ -0,0 +1,136 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.dto.SallingResponse;
+import dk.kea.project.entity.Offer;
+import dk.kea.project.entity.Product;
+import dk.kea.project.entity.Request;
+import dk.kea.project.entity.Store;
+import dk.kea.project.repository.OfferRepository;
+import dk.kea.project.repository.ProductRepository;
+import dk.kea.project.repository.RequestRepository;
+import dk.kea.project.repository.StoreRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Statements issued and wall time of ingesting a 500-clearance Salling payload, comparing the
+ * former per-row {@code saveAll} path with the multi-row statements of {@link ProductService#saveOffers},
+ * for new products, products unchanged since their last ingest and changed products.
+ * <p>
+ * Runs against H2 in MySQL mode. Run with {@code mvn test -Pbenchmark}.
+ * </p>
+ */
+@JpaTest
+@Import({ProductService.class, ProductFingerprintIndex.class, StatementCounter.class})
+// Every repository call and ingestion commits on its own, as it does in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductIngestBenchmark {
+
+    static final int CLEARANCES = 500;
+
+    @Autowired
+    ProductRepository productRepository;
+    @Autowired
+    OfferRepository offerRepository;
+    @Autowired
+    RequestRepository requestRepository;
+    @Autowired
+    StoreRepository storeRepository;
+    @Autowired
+    ProductService productService;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @MockBean
+    SallingService sallingService;
+
+    @Test
+    void compareIngestion() {
+        Store store = storeRepository.save(new Store("store-1", "Netto Valby", "netto", "2500", "Valby", "Vigerslevvej 1"));
+
+        // Warm up both paths
+        ingestPerRow(payload("warmup", 50, "v1"), newRequest(store));
+        productService.saveOffers(payload("warmup", 50, "v2"), newRequest(store));
+
+        Request perRowRequest = newRequest(store);
+        Result perRow = measure(() -> ingestPerRow(payload("per-row", CLEARANCES, "v1"), perRowRequest));
+        Request bulkRequest = newRequest(store);
+        Result bulk = measure(() -> productService.saveOffers(payload("bulk", CLEARANCES, "v1"), bulkRequest));
+        Request unchangedRequest = newRequest(store);
+        Result unchanged = measure(() -> productService.saveOffers(payload("bulk", CLEARANCES, "v1"), unchangedRequest));
+        Request changedRequest = newRequest(store);
+        Result changed = measure(() -> productService.saveOffers(payload("bulk", CLEARANCES, "v2"), changedRequest));
+
+        System.out.printf("%-16s %12s %12s%n", "mode", "statements", "time (ms)");
+        System.out.printf("%-16s %12d %12d%n", "per-row", perRow.statements, perRow.millis);
+        System.out.printf("%-16s %12d %12d%n", "bulk (new)", bulk.statements, bulk.millis);
+        System.out.printf("%-16s %12d %12d%n", "bulk (unchanged)", unchanged.statements, unchanged.millis);
+        System.out.printf("%-16s %12d %12d%n", "bulk (changed)", changed.statements, changed.millis);
+        System.out.printf("product skip ratio: %.2f%n", meterRegistry.get("greenplate.product.ingest.skip.ratio").gauge().value());
+
+        assertEquals(CLEARANCES, offerRepository.findAllByRequest_Id(bulkRequest.getId()).size());
+        assertEquals(CLEARANCES, offerRepository.findAllByRequest_Id(unchangedRequest.getId()).size());
+        assertEquals("Product 0 v2", productRepository.findById("bulk-0").orElseThrow().getDescription());
+        assertTrue(bulk.statements <= 2, "Bulk ingestion should issue one statement per table");
+        assertEquals(1, unchanged.statements, "Unchanged products should not be written");
+        assertTrue(bulk.statements * 100 < perRow.statements, "Bulk ingestion should not issue a statement per row");
+    }
+
+    // The ingestion path used before the bulk repositories
+    void ingestPerRow(List<SallingResponse> sallingResponse, Request request) {
+        List<Offer> offers = sallingResponse.stream().flatMap(salling -> salling.getClearances().stream()).map(clearance ->
+                new Offer(clearance.getOffer().getOriginalPrice(), clearance.getOffer().getNewPrice(),
+                        clearance.getOffer().getDiscount(), clearance.getOffer().getPercentDiscount(),
+                        new Product(clearance.getProduct().ean, clearance.getProduct().description,
+                                clearance.getProduct().image), request)).collect(Collectors.toList());
+        productRepository.saveAll(offers.stream().map(Offer::getProduct).collect(Collectors.toList()));
+        offerRepository.saveAll(offers);
+    }
+
+    Request newRequest(Store store) {
+        return requestRepository.save(new Request(store));
+    }
+
+    Result measure(Runnable ingestion) {
+        StatementCounter.reset();
+        long start = System.nanoTime();
+        ingestion.run();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return new Result(StatementCounter.count(), millis);
+    }
+
+    static List<SallingResponse> payload(String eanPrefix, int size, String version) {
+        List<SallingResponse.Clearance> clearances = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            SallingResponse.Clearance clearance = new SallingResponse.Clearance();
+            clearance.offer = new SallingResponse.Offer();
+            clearance.offer.originalPrice = 20.0;
+            clearance.offer.newPrice = 10.0;
+            clearance.offer.discount = 10.0;
+            clearance.offer.percentDiscount = 50.0;
+            clearance.product = new SallingResponse.Product();
+            clearance.product.ean = eanPrefix + "-" + i;
+            clearance.product.description = "Product " + i + " " + version;
+            clearance.product.image = "https://example.com/" + i + ".png";
+            clearances.add(clearance);
+        }
+        SallingResponse response = new SallingResponse();
+        response.clearances = clearances;
+        return List.of(response);
+    }
+
+    record Result(int statements, long millis) {
+    }
+}
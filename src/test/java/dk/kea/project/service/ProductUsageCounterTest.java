@@ -0,0 +1,126 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.entity.Offer;
+import dk.kea.project.entity.Product;
+import dk.kea.project.entity.Recipe;
+import dk.kea.project.repository.OfferRepository;
+import dk.kea.project.repository.ProductRepository;
+import dk.kea.project.repository.ProductUsageCountRepository;
+import dk.kea.project.repository.RecipeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
+
+@JpaTest
+@Import(ProductUsageCounter.class)
+// A recipe is saved from another thread while the reconciliation runs, as it is in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductUsageCounterTest {
+
+    @Autowired
+    ProductUsageCounter productUsageCounter;
+    @SpyBean
+    ProductUsageCountRepository productUsageCountRepository;
+    @Autowired
+    ProductRepository productRepository;
+    @Autowired
+    OfferRepository offerRepository;
+    @Autowired
+    RecipeRepository recipeRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    Offer milk;
+    Offer bread;
+
+    @BeforeEach
+    void setUp() {
+        recipeRepository.deleteAll();
+        productUsageCountRepository.deleteAll();
+        offerRepository.deleteAll();
+        productRepository.deleteAll();
+        productRepository.saveAll(List.of(new Product("ean-milk", "Milk", "milk.png"),
+                new Product("ean-bread", "Bread", "bread.png")));
+        milk = offerRepository.save(new Offer(10, 8, 2, 20, productRepository.getReferenceById("ean-milk"), null));
+        bread = offerRepository.save(new Offer(20, 15, 5, 25, productRepository.getReferenceById("ean-bread"), null));
+    }
+
+    @Test
+    void testSavedAndDeletedRecipesUpdateUsage() {
+        // Clients send offers holding only their id
+        Offer milkId = new Offer();
+        milkId.setId(milk.getId());
+        productUsageCounter.recipeSaved(List.of(milkId, bread));
+        productUsageCounter.recipeSaved(List.of(milk));
+        productUsageCounter.recipeSaved(List.of(milk, bread));
+        productUsageCounter.recipeDeleted(List.of(bread));
+
+        List<Object[]> all = productUsageCountRepository.findMostUsed(Pageable.unpaged());
+        assertEquals(2, all.size());
+        assertEquals("ean-milk", all.get(0)[1]);
+        assertEquals(3L, ((Number) all.get(0)[2]).longValue());
+        assertEquals(1L, ((Number) all.get(1)[2]).longValue());
+        assertEquals(1, productUsageCountRepository.findMostUsed(PageRequest.of(0, 1)).size());
+    }
+
+    @Test
+    void testReconcileCorrectsDrift() {
+        // Written without the counter, as by a failed update or an import
+        recipeRepository.saveAll(List.of(new Recipe("Porridge", "Cook it", List.of(milk, milk)),
+                new Recipe("Sandwich", "Slice it", List.of(bread))));
+        productUsageCounter.recipeSaved(List.of(bread, bread));
+
+        assertEquals(2, productUsageCounter.reconcile());
+        assertEquals(2, productUsageCountRepository.findById("ean-milk").orElseThrow().getUsageCount());
+        assertEquals(1, productUsageCountRepository.findById("ean-bread").orElseThrow().getUsageCount());
+        assertEquals(0, productUsageCounter.reconcile());
+    }
+
+    @Test
+    void testRecipeSavedDuringReconciliationIsNotOverwritten() throws Exception {
+        recipeRepository.save(new Recipe("Porridge", "Cook it", List.of(milk)));
+        productUsageCounter.recipeSaved(List.of(milk));
+        CountDownLatch recounted = new CountDownLatch(1);
+        CountDownLatch saved = new CountDownLatch(1);
+        // Holds the reconciliation after its recount and before its corrections. The repository is an
+        // interface proxy, whose spy delegates to it through its default answer rather than real methods
+        Answer<?> recountQuery = mockingDetails(productUsageCountRepository).getMockCreationSettings().getDefaultAnswer();
+        doAnswer(invocation -> {
+            Object recount = recountQuery.answer(invocation);
+            recounted.countDown();
+            saved.await(500, TimeUnit.MILLISECONDS);
+            return recount;
+        }).when(productUsageCountRepository).countUsageFromRecipes();
+
+        CompletableFuture<Integer> reconcile = CompletableFuture.supplyAsync(() -> productUsageCounter.reconcile());
+        assertTrue(recounted.await(5, TimeUnit.SECONDS));
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            recipeRepository.save(new Recipe("Milkshake", "Shake it", List.of(milk)));
+            productUsageCounter.recipeSaved(List.of(milk));
+        });
+        saved.countDown();
+
+        assertEquals(0, reconcile.get(5, TimeUnit.SECONDS));
+        assertEquals(2, productUsageCountRepository.findById("ean-milk").orElseThrow().getUsageCount());
+    }
+}
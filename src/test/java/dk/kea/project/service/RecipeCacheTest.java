@@ -0,0 +1,86 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.kea.project.dto.ChatRecipeRequest;
+import dk.kea.project.repository.CachedRecipeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@JpaTest
+class RecipeCacheTest {
+
+    @Autowired
+    CachedRecipeRepository cachedRecipeRepository;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    RecipeCache recipeCache(Duration ttl, int maxSize, boolean persistent) {
+        return new RecipeCache(cachedRecipeRepository, new ObjectMapper(), meterRegistry, ttl, maxSize, persistent);
+    }
+
+    ChatRecipeRequest request(String systemMessage, String ingredients) {
+        ChatRecipeRequest request = new ChatRecipeRequest();
+        request.setModel("model");
+        request.getMessages().add(new ChatRecipeRequest.Message("system", systemMessage));
+        request.getMessages().add(new ChatRecipeRequest.Message("user", RecipeCache.normalizeIngredients(ingredients)));
+        return request;
+    }
+
+    @Test
+    void testKeyIgnoresOrderCaseAndSpacingOfIngredients() {
+        RecipeCache recipeCache = recipeCache(Duration.ofHours(1), 10, false);
+
+        String key = recipeCache.key(request("prompt", "Milk, Bread"));
+        assertEquals(64, key.length());
+        assertEquals(key, recipeCache.key(request("prompt", " bread;MILK\nmilk  ")));
+        assertNotEquals(key, recipeCache.key(request("prompt", "Milk, Bread, Cheese")));
+        assertNotEquals(key, recipeCache.key(request("other prompt", "Milk, Bread")));
+    }
+
+    @Test
+    void testPersistentRecipeSurvivesRestart() {
+        recipeCache(Duration.ofHours(1), 10, true).put("key", "Pancakes", 400);
+
+        // A new instance starts with an empty memory, like the application after a restart
+        RecipeCache restarted = recipeCache(Duration.ofHours(1), 10, true);
+        assertEquals("Pancakes", restarted.get("key").getAnswer());
+        assertNull(restarted.get("other"));
+        assertEquals(400, meterRegistry.counter("greenplate.recipes.cache.tokens.saved").count());
+        assertEquals(1, meterRegistry.counter("greenplate.recipes.cache.requests", "result", "hit").count());
+        assertEquals(1, meterRegistry.counter("greenplate.recipes.cache.requests", "result", "miss").count());
+    }
+
+    @Test
+    void testLeastRecentlyUsedRecipeIsEvicted() {
+        RecipeCache recipeCache = recipeCache(Duration.ofHours(1), 2, false);
+        recipeCache.put("a", "A", 100);
+        recipeCache.put("b", "B", 100);
+        recipeCache.get("a");
+        recipeCache.put("c", "C", 100);
+
+        assertNotNull(recipeCache.get("a"));
+        assertNull(recipeCache.get("b"));
+        assertNotNull(recipeCache.get("c"));
+    }
+
+    @Test
+    void testRecipeExpiresAfterTtl() throws InterruptedException {
+        RecipeCache recipeCache = recipeCache(Duration.ofMillis(100), 10, true);
+        recipeCache.put("key", "Pancakes", 400);
+        assertNotNull(recipeCache.get("key"));
+
+        Thread.sleep(150);
+        assertNull(recipeCache.get("key"));
+        recipeCache.deleteExpired();
+        assertEquals(0, cachedRecipeRepository.count());
+    }
+}
@@ -0,0 +1,135 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.dto.MyRecipe;
+import dk.kea.project.dto.RecipeJobResponse;
+import dk.kea.project.entity.RecipeJob;
+import dk.kea.project.repository.RecipeJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@JpaTest
+// The workers store the jobs from their own threads
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RecipeJobQueueTest {
+
+    @Autowired
+    RecipeJobRepository recipeJobRepository;
+
+    OpenAIService openAIService = mock(OpenAIService.class);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RecipeJobQueue recipeJobQueue;
+
+    @BeforeEach
+    void setUp() {
+        recipeJobRepository.deleteAll();
+    }
+
+    @AfterEach
+    void tearDown() {
+        recipeJobQueue.shutdown();
+    }
+
+    RecipeJobQueue recipeJobQueue(int workers, int queueSize) {
+        return new RecipeJobQueue(openAIService, recipeJobRepository, meterRegistry, workers, queueSize,
+                Duration.ofMinutes(5), Duration.ofDays(1));
+    }
+
+    RecipeJobResponse awaitFinished(String id) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            RecipeJobResponse job = recipeJobQueue.getJob(id, "user");
+            if (job.getStatus() == RecipeJob.Status.SUCCEEDED || job.getStatus() == RecipeJob.Status.FAILED) {
+                return job;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Job " + id + " did not finish");
+    }
+
+    @Test
+    void testJobSucceedsAndCanOnlyBeReadByItsUser() throws InterruptedException {
+        when(openAIService.makeRequest("milk, flour", "prompt")).thenReturn(new MyRecipe("Pancakes"));
+        recipeJobQueue = recipeJobQueue(1, 1);
+
+        RecipeJobResponse queued = recipeJobQueue.submit("user", "milk, flour", "prompt");
+        RecipeJobResponse finished = awaitFinished(queued.getId());
+
+        assertEquals(RecipeJob.Status.SUCCEEDED, finished.getStatus());
+        assertEquals("Pancakes", finished.getAnswer());
+        assertEquals(1, meterRegistry.timer("greenplate.recipes.jobs.run").count());
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> recipeJobQueue.getJob(queued.getId(), "other"));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+    }
+
+    @Test
+    void testFullQueueRejectsJobs() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        when(openAIService.makeRequest(anyString(), eq("prompt"))).thenAnswer(invocation -> {
+            running.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return new MyRecipe("Recipe");
+        });
+        recipeJobQueue = recipeJobQueue(1, 1);
+
+        RecipeJobResponse first = recipeJobQueue.submit("user", "first", "prompt");
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        RecipeJobResponse second = recipeJobQueue.submit("user", "second", "prompt");
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> recipeJobQueue.submit("user", "third", "prompt"));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatusCode());
+        // The rejected job is not stored
+        assertEquals(2, recipeJobRepository.count());
+        assertEquals(1.0, meterRegistry.get("greenplate.recipes.jobs.queue.depth").gauge().value());
+        release.countDown();
+        assertEquals(RecipeJob.Status.SUCCEEDED, awaitFinished(first.getId()).getStatus());
+        assertEquals(RecipeJob.Status.SUCCEEDED, awaitFinished(second.getId()).getStatus());
+    }
+
+    @Test
+    void testStoredJobsAreResubmittedAfterRestart() throws InterruptedException {
+        when(openAIService.makeRequest(anyString(), eq("prompt"))).thenReturn(new MyRecipe("Recipe"));
+        RecipeJob queued = recipeJobRepository.save(new RecipeJob("user", "queued", "prompt"));
+        RecipeJob interrupted = new RecipeJob("user", "interrupted", "prompt");
+        interrupted.setStatus(RecipeJob.Status.RUNNING);
+        interrupted.setStarted(LocalDateTime.now().minusMinutes(10));
+        recipeJobRepository.save(interrupted);
+        RecipeJob running = new RecipeJob("user", "running", "prompt");
+        running.setStatus(RecipeJob.Status.RUNNING);
+        running.setStarted(LocalDateTime.now());
+        recipeJobRepository.save(running);
+        recipeJobQueue = recipeJobQueue(2, 10);
+
+        recipeJobQueue.resubmit();
+
+        assertEquals(RecipeJob.Status.SUCCEEDED, awaitFinished(queued.getId()).getStatus());
+        assertEquals(RecipeJob.Status.SUCCEEDED, awaitFinished(interrupted.getId()).getStatus());
+        // Still running on another node
+        assertEquals(RecipeJob.Status.RUNNING, recipeJobQueue.getJob(running.getId(), "user").getStatus());
+        verify(openAIService, times(2)).makeRequest(anyString(), eq("prompt"));
+    }
+}
@@ -0,0 +1,102 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.dto.RecipeRequest;
+import dk.kea.project.entity.Offer;
+import dk.kea.project.entity.Product;
+import dk.kea.project.entity.User;
+import dk.kea.project.repository.OfferRepository;
+import dk.kea.project.repository.ProductRepository;
+import dk.kea.project.repository.ProductUsageCountRepository;
+import dk.kea.project.repository.RecipeRepository;
+import dk.kea.project.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.security.Principal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@JpaTest
+@Import({RecipeService.class, ProductUsageCounter.class, OfferReferenceResolver.class})
+// Every call runs in its own transaction, as it does in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RecipeServiceTest {
+
+    @Autowired
+    RecipeService recipeService;
+    @Autowired
+    RecipeRepository recipeRepository;
+    @Autowired
+    ProductUsageCountRepository productUsageCountRepository;
+    @Autowired
+    OfferRepository offerRepository;
+    @Autowired
+    ProductRepository productRepository;
+    @Autowired
+    UserRepository userRepository;
+
+    Principal principal = () -> "user";
+    Offer milk;
+    Offer bread;
+
+    @BeforeEach
+    void setUp() {
+        recipeRepository.deleteAll();
+        productUsageCountRepository.deleteAll();
+        offerRepository.deleteAll();
+        productRepository.deleteAll();
+        userRepository.deleteAll();
+        userRepository.save(new User("user", "user@example.com", "secret", "Us", "Er"));
+        milk = offerRepository.save(new Offer(10, 8, 2, 20, productRepository.save(new Product("ean-milk", "Milk", "milk.png")), null));
+        bread = offerRepository.save(new Offer(20, 15, 5, 25, productRepository.save(new Product("ean-bread", "Bread", "bread.png")), null));
+    }
+
+    @Test
+    void testDeletedRecipeIsRemovedFromUsage() {
+        recipeService.saveRecipe(new RecipeRequest("Porridge", "Cook it", List.of(offerId(milk), offerId(milk))), principal);
+        recipeService.saveRecipe(new RecipeRequest("Sandwich", "Slice it", List.of(offerId(milk), offerId(bread))), principal);
+        assertEquals(3, usage("ean-milk"));
+
+        RecipeRequest delete = new RecipeRequest();
+        delete.setId(recipeRepository.findAll().stream()
+                .filter(recipe -> recipe.getRecipeTitle().equals("Porridge")).findFirst().orElseThrow().getId());
+        recipeService.deleteRecipe(delete);
+
+        assertEquals(1, recipeRepository.count());
+        assertEquals(1, usage("ean-milk"));
+        assertEquals(1, usage("ean-bread"));
+    }
+
+    @Test
+    void testAdminRecipeOffersAreResolved() {
+        recipeService.saveRecipeAdmin(new RecipeRequest("Porridge", "Cook it", List.of(offerId(milk), offerId(milk))), principal);
+
+        assertEquals(2, usage("ean-milk"));
+        Offer unknown = new Offer();
+        unknown.setId(-1);
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> recipeService.saveRecipeAdmin(new RecipeRequest("Toast", "Toast it", List.of(unknown)), principal));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        assertEquals(1, recipeRepository.count());
+    }
+
+    // Clients send offers holding only their id
+    Offer offerId(Offer offer) {
+        Offer id = new Offer();
+        id.setId(offer.getId());
+        return id;
+    }
+
+    long usage(String ean) {
+        return productUsageCountRepository.findById(ean).orElseThrow().getUsageCount();
+    }
+}
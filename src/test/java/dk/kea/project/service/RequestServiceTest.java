@@ -0,0 +1,131 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.dto.FreshRequest;
+import dk.kea.project.dto.SallingResponse;
+import dk.kea.project.entity.Product;
+import dk.kea.project.entity.Request;
+import dk.kea.project.entity.Store;
+import dk.kea.project.repository.OfferRepository;
+import dk.kea.project.repository.ProductRepository;
+import dk.kea.project.repository.RequestRepository;
+import dk.kea.project.repository.StoreRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@JpaTest
+@Import({RequestService.class, ProductService.class})
+// A refresh commits on its own and is looked up from another thread, as it is in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RequestServiceTest {
+
+    @Autowired
+    RequestService requestService;
+    @Autowired
+    ProductService productService;
+    @Autowired
+    RequestRepository requestRepository;
+    @Autowired
+    OfferRepository offerRepository;
+    @Autowired
+    ProductRepository productRepository;
+    @Autowired
+    StoreRepository storeRepository;
+    @MockBean
+    ProductFingerprintIndex fingerprintIndex;
+    @MockBean
+    StoreCallCounter storeCallCounter;
+    @MockBean
+    StoreService storeService;
+    @MockBean
+    SallingService sallingService;
+
+    Store store;
+
+    @BeforeEach
+    void setUp() {
+        offerRepository.deleteAll();
+        requestRepository.deleteAll();
+        productRepository.deleteAll();
+        storeRepository.deleteAll();
+        store = storeRepository.save(new Store("store-1", "Netto Valby", "netto", "2500", "Valby", "Vigerslevvej 1"));
+    }
+
+    @Test
+    void testLookupRacingARefreshSeesNoRequestUntilItsOffersAreSaved() throws Exception {
+        CountDownLatch requestWritten = new CountDownLatch(1);
+        CountDownLatch lookedUp = new CountDownLatch(1);
+        // Holds the refresh after its request is written and before its offers are
+        when(fingerprintIndex.changed(any())).thenAnswer(invocation -> {
+            requestWritten.countDown();
+            assertTrue(lookedUp.await(5, TimeUnit.SECONDS));
+            return new ArrayList<>(invocation.<Collection<Product>>getArgument(0));
+        });
+
+        CompletableFuture<Request> refresh = CompletableFuture.supplyAsync(
+                () -> requestService.saveRefresh(store, foodWaste(3)));
+        assertTrue(requestWritten.await(5, TimeUnit.SECONDS));
+        FreshRequest racing = requestService.findLatestFreshRequest("store-1", LocalDateTime.now().minusMinutes(15));
+        lookedUp.countDown();
+        Request saved = refresh.get(5, TimeUnit.SECONDS);
+
+        assertNull(racing);
+        FreshRequest fresh = requestService.findLatestFreshRequest("store-1", LocalDateTime.now().minusMinutes(15));
+        assertEquals(saved.getId(), fresh.getId());
+        assertEquals(3, productService.getProducts(fresh.getId()).size());
+        verify(storeCallCounter).increment(anyString(), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testFailedIngestLeavesNoRequest() {
+        when(fingerprintIndex.changed(any())).thenThrow(new IllegalStateException("Ingest failed"));
+
+        assertThrows(IllegalStateException.class, () -> requestService.saveRefresh(store, foodWaste(3)));
+
+        assertEquals(0, requestRepository.count());
+        verify(storeCallCounter, never()).increment(anyString(), any(LocalDateTime.class));
+    }
+
+    static List<SallingResponse> foodWaste(int size) {
+        List<SallingResponse.Clearance> clearances = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            SallingResponse.Clearance clearance = new SallingResponse.Clearance();
+            clearance.offer = new SallingResponse.Offer();
+            clearance.offer.originalPrice = 20.0;
+            clearance.offer.newPrice = 10.0;
+            clearance.offer.discount = 10.0;
+            clearance.offer.percentDiscount = 50.0;
+            clearance.product = new SallingResponse.Product();
+            clearance.product.ean = "ean-" + i;
+            clearance.product.description = "Product " + i;
+            clearance.product.image = "https://example.com/" + i + ".png";
+            clearances.add(clearance);
+        }
+        SallingResponse response = new SallingResponse();
+        response.clearances = clearances;
+        return List.of(response);
+    }
+}
@@ -0,0 +1,194 @@
+package dk.kea.project.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dk.kea.project.config.HttpClientProperties;
+import dk.kea.project.config.ResilienceProperties;
+import dk.kea.project.config.WebClientConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test comparing the blocking and reactive food waste lookups against a slow local Salling mock.
+ * <p>
+ * The blocking mode runs every call on its own worker thread, like Tomcat does. The reactive mode
+ * subscribes all calls from a single thread. Run with {@code mvn test -Pbenchmark}.
+ * </p>
+ */
+class SallingServiceBenchmark {
+
+    static final int CONCURRENCY = 200;
+    static final int UPSTREAM_DELAY_MS = 500;
+    static final String FOOD_WASTE = "[{\"clearances\":[{\"offer\":{\"originalPrice\":20.0,\"newPrice\":10.0," +
+            "\"discount\":10.0,\"percentDiscount\":50.0},\"product\":{\"description\":\"Rugbroed\"," +
+            "\"ean\":\"5701234567890\",\"image\":\"https://example.com/rugbroed.png\"}}]}]";
+
+    static HttpServer server;
+    static ScheduledExecutorService responder;
+    static SallingService sallingService;
+
+    @BeforeAll
+    static void startMockServer() throws IOException {
+        responder = Executors.newScheduledThreadPool(2, runnable -> new Thread(runnable, "salling-mock"));
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), CONCURRENCY);
+        server.createContext("/v1/food-waste/", exchange ->
+                responder.schedule(() -> respond(exchange), UPSTREAM_DELAY_MS, TimeUnit.MILLISECONDS));
+        server.setExecutor(null);
+        server.start();
+        sallingService = new SallingService(mockWebClient(),
+                new UpstreamGuard("salling", new ResilienceProperties().getSalling(), new SimpleMeterRegistry()));
+    }
+
+    // A pool large enough to admit every concurrent call, so only the upstream latency is measured
+    static WebClient mockWebClient() {
+        HttpClientProperties.Upstream upstream = new HttpClientProperties.Upstream(
+                "http://localhost:" + server.getAddress().getPort(), CONCURRENCY, CONCURRENCY, Duration.ofSeconds(30));
+        return new WebClientConfig().webClient(WebClient.builder(), "salling-benchmark", upstream);
+    }
+
+    @AfterAll
+    static void stopMockServer() {
+        server.stop(0);
+        responder.shutdownNow();
+    }
+
+    static void respond(HttpExchange exchange) {
+        byte[] body = FOOD_WASTE.getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            out.write(body);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void compareBlockingAndReactiveFoodWaste() throws Exception {
+        // Warm up the connection pool and the JIT before measuring
+        sallingService.getFoodWaste("warmup");
+
+        Result blocking = measure(this::runBlocking);
+        Result reactive = measure(this::runReactive);
+
+        System.out.printf("%-10s %12s %12s %12s%n", "mode", "threads", "p50 (ms)", "p99 (ms)");
+        System.out.printf("%-10s %12d %12d %12d%n", "blocking", blocking.threads, blocking.percentile(50), blocking.percentile(99));
+        System.out.printf("%-10s %12d %12d %12d%n", "reactive", reactive.threads, reactive.percentile(50), reactive.percentile(99));
+
+        assertEquals(CONCURRENCY, blocking.latencies.size());
+        assertEquals(CONCURRENCY, reactive.latencies.size());
+        assertTrue(reactive.threads < blocking.threads,
+                "Reactive mode should use fewer threads than blocking mode");
+    }
+
+    void runBlocking(Queue<Long> latencies) throws Exception {
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(CONCURRENCY,
+                runnable -> new Thread(runnable, "worker-" + workerCount.incrementAndGet()));
+        try {
+            List<Future<?>> calls = new ArrayList<>();
+            for (int i = 0; i < CONCURRENCY; i++) {
+                String storeId = "store-" + i;
+                calls.add(workers.submit(() -> {
+                    long start = System.nanoTime();
+                    assertEquals(1, sallingService.getFoodWaste(storeId).size());
+                    latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }));
+            }
+            for (Future<?> call : calls) {
+                call.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    void runReactive(Queue<Long> latencies) {
+        Flux.range(0, CONCURRENCY)
+                .flatMap(i -> Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return sallingService.getFoodWasteReactive("store-" + i)
+                            .doOnNext(foodWaste -> latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                }), CONCURRENCY)
+                .blockLast();
+    }
+
+    Result measure(Run run) throws Exception {
+        Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+        int baseline = countThreads();
+        AtomicInteger peak = new AtomicInteger(baseline);
+        AtomicBoolean sampling = new AtomicBoolean(true);
+        Thread sampler = new Thread(() -> {
+            while (sampling.get()) {
+                peak.accumulateAndGet(countThreads(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "salling-mock-sampler");
+        sampler.start();
+        try {
+            run.run(latencies);
+        } finally {
+            sampling.set(false);
+            sampler.join();
+        }
+        return new Result(peak.get() - baseline, new ArrayList<>(latencies));
+    }
+
+    // Live threads, excluding those belonging to the mock server and the sampler
+    static int countThreads() {
+        return (int) Thread.getAllStackTraces().keySet().stream()
+                .filter(Thread::isAlive)
+                .filter(thread -> !thread.getName().startsWith("salling-mock"))
+                .filter(thread -> !thread.getName().startsWith("HTTP-Dispatcher"))
+                .count();
+    }
+
+    interface Run {
+        void run(Queue<Long> latencies) throws Exception;
+    }
+
+    static class Result {
+        final int threads;
+        final List<Long> latencies;
+
+        Result(int threads, List<Long> latencies) {
+            this.threads = threads;
+            this.latencies = latencies;
+            this.latencies.sort(Long::compare);
+        }
+
+        long percentile(int percentile) {
+            int index = (int) Math.ceil(percentile / 100.0 * latencies.size()) - 1;
+            return latencies.get(Math.max(index, 0));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.dto.ProductResponse;
+import dk.kea.project.dto.ShoppingListResponse;
+import dk.kea.project.entity.Offer;
+import dk.kea.project.entity.Product;
+import dk.kea.project.entity.ShoppingList;
+import dk.kea.project.entity.User;
+import dk.kea.project.repository.OfferRepository;
+import dk.kea.project.repository.ProductRepository;
+import dk.kea.project.repository.ShoppingListRepository;
+import dk.kea.project.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@JpaTest
+@Import({ShoppingListService.class, OfferReferenceResolver.class, StatementCounter.class})
+// The lists are read outside of a transaction, as they are in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ShoppingListServiceTest {
+
+    @Autowired
+    ShoppingListService shoppingListService;
+    @Autowired
+    ShoppingListRepository shoppingListRepository;
+    @Autowired
+    OfferRepository offerRepository;
+    @Autowired
+    ProductRepository productRepository;
+    @Autowired
+    UserRepository userRepository;
+
+    Offer milk;
+    Offer bread;
+
+    @BeforeEach
+    void setUp() {
+        shoppingListRepository.deleteAll();
+        offerRepository.deleteAll();
+        productRepository.deleteAll();
+        userRepository.deleteAll();
+        User user = userRepository.save(new User("user", "user@example.com", "secret", "Us", "Er"));
+        User other = userRepository.save(new User("other", "other@example.com", "secret", "Oth", "Er"));
+        milk = offerRepository.save(new Offer(20, 15, 5, 25, productRepository.save(new Product("ean-1", "Milk", "milk.png")), null));
+        bread = offerRepository.save(new Offer(30, 15, 15, 50, productRepository.save(new Product("ean-2", "Bread", "bread.png")), null));
+        LocalDateTime now = LocalDateTime.now();
+        shoppingListRepository.save(new ShoppingList(user, List.of(milk, bread, milk), now));
+        shoppingListRepository.save(new ShoppingList(user, List.of(), now));
+        shoppingListRepository.save(new ShoppingList(other, List.of(bread), now));
+    }
+
+    @Test
+    void findShoppingListsByUserRendersOffersOfEachList() {
+        List<ShoppingListResponse> shoppingLists = shoppingListService.findShoppingListsByUser("user");
+
+        assertEquals(2, shoppingLists.size());
+        assertEquals("user", shoppingLists.get(0).getUsername());
+        // Repeated offers are kept, and a list without offers is still returned
+        assertEquals(List.of(milk.getId(), milk.getId(), bread.getId()),
+                shoppingLists.get(0).getOffers().stream().map(ProductResponse::getId).toList());
+        assertEquals(List.of(), shoppingLists.get(1).getOffers());
+        ProductResponse offer = shoppingLists.get(0).getOffers().get(2);
+        assertEquals("Bread", offer.getDescription());
+        assertEquals("bread.png", offer.getImage());
+        assertEquals(15, offer.getNewPrice());
+    }
+
+    @Test
+    void findShoppingListsByUserIssuesOneStatement() {
+        StatementCounter.reset();
+        shoppingListService.findShoppingListsByUser("user");
+        assertEquals(1, StatementCounter.count());
+    }
+}
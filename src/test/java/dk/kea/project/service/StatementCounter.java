@@ -0,0 +1,61 @@
+package dk.kea.project.service;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test configuration counting every statement execution sent over JDBC, whether it comes from
+ * Hibernate or a {@code JdbcTemplate}, by wrapping the {@code DataSource}.
+ */
+@TestConfiguration
+class StatementCounter {
+    static final AtomicInteger statements = new AtomicInteger();
+
+    @Bean
+    static BeanPostProcessor countingDataSource() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource) {
+                    return proxy(DataSource.class, dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    static void reset() {
+        statements.set(0);
+    }
+
+    static int count() {
+        return statements.get();
+    }
+
+    static Object proxy(Class<?> type, Object target) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (Statement.class.isAssignableFrom(type) && method.getName().startsWith("execute")) {
+                statements.incrementAndGet();
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            Class<?> returnType = method.getReturnType();
+            if (result != null && (returnType == Connection.class || Statement.class.isAssignableFrom(returnType))) {
+                return proxy(returnType, result);
+            }
+            return result;
+        });
+    }
+}
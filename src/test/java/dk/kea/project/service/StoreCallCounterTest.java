@@ -0,0 +1,168 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.entity.Store;
+import dk.kea.project.entity.StoreCallBucket;
+import dk.kea.project.entity.StoreCallBucket.Granularity;
+import dk.kea.project.repository.RefreshLeaseRepository;
+import dk.kea.project.repository.RequestRepository;
+import dk.kea.project.repository.StoreCallBucketRepository;
+import dk.kea.project.repository.StoreCallCountRepository;
+import dk.kea.project.repository.StoreRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@JpaTest
+@Import({StoreCallCounter.class, StoreRefreshLease.class})
+// Flushes and compactions commit on their own, as they do in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StoreCallCounterTest {
+
+    @Autowired
+    StoreCallCounter storeCallCounter;
+    @Autowired
+    StoreCallCountRepository storeCallCountRepository;
+    @Autowired
+    StoreCallBucketRepository storeCallBucketRepository;
+    @Autowired
+    StoreRepository storeRepository;
+    @Autowired
+    RefreshLeaseRepository refreshLeaseRepository;
+    @Autowired
+    RequestRepository requestRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    final LocalDateTime hour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+
+    @BeforeEach
+    void setUp() {
+        refreshLeaseRepository.deleteAll();
+        requestRepository.deleteAll();
+        storeCallBucketRepository.deleteAll();
+        storeCallCountRepository.deleteAll();
+        storeRepository.deleteAll();
+        storeRepository.saveAll(List.of(
+                new Store("store-1", "Netto Valby", "netto", "2500", "Valby", "Vigerslevvej 1"),
+                new Store("store-2", "Føtex Valby", "foetex", "2500", "Valby", "Valby Langgade 2")));
+    }
+
+    @Test
+    void testFlushAddsToTotalsAndHourlyBuckets() {
+        storeCallCounter.increment("store-1", hour.plusMinutes(5));
+        storeCallCounter.increment("store-1", hour.plusMinutes(50));
+        storeCallCounter.increment("store-2", hour.minusMinutes(10));
+        storeCallCounter.flush();
+        storeCallCounter.increment("store-1", hour.plusMinutes(55));
+        storeCallCounter.flush();
+
+        assertEquals(3, storeCallCountRepository.findById("store-1").orElseThrow().getCallCount());
+        assertEquals(1, storeCallCountRepository.findById("store-2").orElseThrow().getCallCount());
+        assertEquals(3, bucket("store-1", Granularity.HOUR, hour));
+        assertEquals(1, bucket("store-2", Granularity.HOUR, hour.minusHours(1)));
+
+        List<Object[]> zipcodes = storeCallBucketRepository.countZipcodeCallsBetween(hour.minusHours(1), hour.minusHours(1), hour.plusHours(1));
+        assertEquals(2, zipcodes.size());
+        assertEquals(1L, ((Number) zipcodes.get(0)[2]).longValue());
+        assertEquals(3L, ((Number) zipcodes.get(1)[2]).longValue());
+    }
+
+    @Test
+    void testCompactMergesOldHoursIntoDays() {
+        LocalDateTime oldDay = LocalDateTime.now().minusDays(10).truncatedTo(ChronoUnit.DAYS);
+        storeCallBucketRepository.addAll(List.of(
+                new StoreCallBucket("store-1", Granularity.HOUR, oldDay.plusHours(1), 2),
+                new StoreCallBucket("store-1", Granularity.HOUR, oldDay.plusHours(20), 3),
+                new StoreCallBucket("store-1", Granularity.HOUR, hour, 4)));
+
+        storeCallCounter.compact();
+
+        assertEquals(2, storeCallBucketRepository.count());
+        assertEquals(5, bucket("store-1", Granularity.DAY, oldDay));
+        assertEquals(4, bucket("store-1", Granularity.HOUR, hour));
+        List<Object[]> stores = storeCallBucketRepository.countStoreCallsBetween(oldDay, oldDay, hour.plusHours(1));
+        assertEquals(9L, stores.stream().mapToLong(row -> ((Number) row[2]).longValue()).sum());
+    }
+
+    @Test
+    void testRangeStartingWithinACompactedDayCountsTheWholeDay() {
+        LocalDateTime oldDay = LocalDateTime.now().minusDays(10).truncatedTo(ChronoUnit.DAYS);
+        storeCallBucketRepository.addAll(List.of(
+                new StoreCallBucket("store-1", Granularity.HOUR, oldDay.plusHours(1), 2),
+                new StoreCallBucket("store-1", Granularity.HOUR, oldDay.plusHours(20), 3),
+                new StoreCallBucket("store-1", Granularity.HOUR, oldDay.plusDays(1).plusHours(1), 4)));
+        storeCallCounter.compact();
+
+        LocalDateTime from = oldDay.plusHours(12);
+        List<Object[]> stores = storeCallBucketRepository.countStoreCallsBetween(from, from.truncatedTo(ChronoUnit.DAYS),
+                oldDay.plusDays(1).plusHours(12));
+
+        assertEquals(2, stores.size());
+        assertEquals(oldDay, stores.get(0)[1]);
+        assertEquals(5L, ((Number) stores.get(0)[2]).longValue());
+        assertEquals(4L, ((Number) stores.get(1)[2]).longValue());
+    }
+
+    @Test
+    void testCompactionWaitsForTheNodeHoldingTheRollupLease() {
+        LocalDateTime oldDay = LocalDateTime.now().minusDays(10).truncatedTo(ChronoUnit.DAYS);
+        storeCallBucketRepository.addAll(List.of(new StoreCallBucket("store-1", Granularity.HOUR, oldDay.plusHours(1), 2)));
+        StoreRefreshLease otherNode = new StoreRefreshLease(refreshLeaseRepository, "other-node",
+                Duration.ofSeconds(30), Duration.ofMillis(250));
+        otherNode.tryAcquire(StoreCallCounter.ROLLUP_LEASE);
+
+        storeCallCounter.compact();
+        assertEquals(2, bucket("store-1", Granularity.HOUR, oldDay.plusHours(1)));
+
+        otherNode.release(StoreCallCounter.ROLLUP_LEASE);
+        storeCallCounter.compact();
+        storeCallCounter.compact();
+        assertEquals(1, storeCallBucketRepository.count());
+        assertEquals(2, bucket("store-1", Granularity.DAY, oldDay));
+    }
+
+    @Test
+    void testBackfillAddsOnlyTheUncountedRequests() {
+        LocalDateTime oldDay = LocalDateTime.now().minusDays(10).truncatedTo(ChronoUnit.DAYS);
+        request("store-1", oldDay.plusHours(1).plusMinutes(5));
+        request("store-1", oldDay.plusHours(1).plusMinutes(10));
+        request("store-2", oldDay.plusHours(2));
+        // Counted and flushed by another node before the backfill
+        request("store-1", hour.minusHours(1));
+        storeCallCounter.increment("store-1", hour.minusHours(1));
+        storeCallCounter.flush();
+        // Counted but not yet flushed
+        request("store-2", LocalDateTime.now());
+        storeCallCounter.increment("store-2", LocalDateTime.now());
+
+        storeCallCounter.backfill();
+        storeCallCounter.backfill();
+
+        assertEquals(3, storeCallCountRepository.findById("store-1").orElseThrow().getCallCount());
+        assertEquals(2, storeCallCountRepository.findById("store-2").orElseThrow().getCallCount());
+        assertEquals(2, bucket("store-1", Granularity.HOUR, oldDay.plusHours(1)));
+        assertEquals(1, bucket("store-1", Granularity.HOUR, hour.minusHours(1)));
+        assertEquals(1, bucket("store-2", Granularity.HOUR, oldDay.plusHours(2)));
+    }
+
+    void request(String storeId, LocalDateTime created) {
+        jdbcTemplate.update("INSERT INTO request (store_id, created) VALUES (?, ?)", storeId, created);
+    }
+
+    long bucket(String storeId, Granularity granularity, LocalDateTime start) {
+        return storeCallBucketRepository.findById(new StoreCallBucket.Key(storeId, granularity, start))
+                .orElseThrow().getCallCount();
+    }
+}
@@ -0,0 +1,124 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.dto.SallingStoreResponse;
+import dk.kea.project.entity.Store;
+import dk.kea.project.repository.StoreRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Statements issued and wall time of {@link StoreService#addStores} with 10,000 stores already
+ * stored, comparing the former full-table scan with the lookup of the incoming ids only.
+ * <p>
+ * Each batch holds half new and half existing stores. Runs against H2 in MySQL mode.
+ * Run with {@code mvn test -Pbenchmark}.
+ * </p>
+ */
+@JpaTest
+@Import({StoreService.class, StoreZipCache.class, StatementCounter.class})
+// Every repository call and ingestion commits on its own, as it does in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StoreIngestBenchmark {
+
+    static final int EXISTING_STORES = 10_000;
+    static final int[] BATCH_SIZES = {10, 100, 1000};
+
+    @Autowired
+    StoreRepository storeRepository;
+    @Autowired
+    StoreService storeService;
+    @MockBean
+    SallingService sallingService;
+
+    @TestConfiguration
+    static class BenchmarkConfiguration {
+        @Bean
+        Scheduler jpaScheduler() {
+            return Schedulers.immediate();
+        }
+    }
+
+    int nextNewStore = EXISTING_STORES;
+
+    @Test
+    void compareStoreIngestion() {
+        List<Store> existing = new ArrayList<>();
+        for (int i = 0; i < EXISTING_STORES; i++) {
+            existing.add(store(i));
+        }
+        storeRepository.insertAll(existing);
+
+        // Warm up both paths
+        addStoresFullScan(batch(10));
+        storeService.addStores(batch(10));
+
+        System.out.printf("%-8s %18s %18s %18s %18s%n", "batch", "scan statements", "scan time (ms)",
+                "lookup statements", "lookup time (ms)");
+        for (int size : BATCH_SIZES) {
+            Result scan = measure(() -> addStoresFullScan(batch(size)));
+            Result lookup = measure(() -> storeService.addStores(batch(size)));
+            System.out.printf("%-8d %18d %18d %18d %18d%n", size, scan.statements, scan.millis,
+                    lookup.statements, lookup.millis);
+
+            // One existence check and one insert per 500 incoming stores, regardless of the table size
+            int chunks = (size + StoreService.IDS_PER_QUERY - 1) / StoreService.IDS_PER_QUERY;
+            assertTrue(lookup.statements <= chunks * 2, "Store ingestion should not depend on the table size");
+        }
+        assertEquals(nextNewStore, storeRepository.count());
+    }
+
+    // The ingestion path used before the id lookup: loads every store and scans it per incoming store
+    void addStoresFullScan(List<SallingStoreResponse> stores) {
+        List<Store> mappedStores = stores.stream().map(Store::new).collect(Collectors.toList());
+        List<Store> oldStores = storeRepository.findAll();
+        List<Store> filteredStores = mappedStores.stream()
+                .filter(mappedStore -> oldStores.stream().noneMatch(oldStore -> oldStore.getId().equals(mappedStore.getId())))
+                .collect(Collectors.toList());
+        storeRepository.saveAll(filteredStores);
+    }
+
+    // Half of the stores already exist, the other half are new
+    List<SallingStoreResponse> batch(int size) {
+        List<SallingStoreResponse> stores = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Store store = i % 2 == 0 ? store(i * 7 % EXISTING_STORES) : store(nextNewStore++);
+            SallingStoreResponse.Address address = new SallingStoreResponse.Address();
+            address.zip = store.getZip();
+            address.city = store.getCity();
+            address.street = store.getStreet();
+            stores.add(new SallingStoreResponse(store.getId(), store.getBrand(), store.getName(), address));
+        }
+        return stores;
+    }
+
+    static Store store(int i) {
+        return new Store("store-" + i, "Netto " + i, "netto", String.valueOf(1000 + i % 9000), "City " + i, "Street " + i);
+    }
+
+    Result measure(Runnable ingestion) {
+        StatementCounter.reset();
+        long start = System.nanoTime();
+        ingestion.run();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return new Result(StatementCounter.count(), millis);
+    }
+
+    record Result(int statements, long millis) {
+    }
+}
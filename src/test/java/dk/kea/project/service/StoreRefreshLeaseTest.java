@@ -0,0 +1,60 @@
+package dk.kea.project.service;
+
+import dk.kea.project.JpaTest;
+import dk.kea.project.repository.RefreshLeaseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@JpaTest
+// Leases commit on their own, as they do in the application
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StoreRefreshLeaseTest {
+
+    @Autowired
+    RefreshLeaseRepository refreshLeaseRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    StoreRefreshLease nodeA;
+    StoreRefreshLease nodeB;
+
+    @BeforeEach
+    void setUp() {
+        refreshLeaseRepository.deleteAll();
+        nodeA = new StoreRefreshLease(refreshLeaseRepository, "node-a", Duration.ofSeconds(30), Duration.ofMillis(10));
+        nodeB = new StoreRefreshLease(refreshLeaseRepository, "node-b", Duration.ofSeconds(30), Duration.ofMillis(10));
+    }
+
+    @Test
+    void testOneNodeHoldsLeaseUntilReleased() {
+        assertTrue(nodeA.tryAcquire("store-1"));
+        assertFalse(nodeB.tryAcquire("store-1"));
+        assertFalse(nodeA.tryAcquire("store-1"));
+        assertTrue(nodeB.tryAcquire("store-2"));
+
+        // Only the holder can release a lease
+        nodeB.release("store-1");
+        assertFalse(nodeB.tryAcquire("store-1"));
+        nodeA.release("store-1");
+        assertTrue(nodeB.tryAcquire("store-1"));
+    }
+
+    @Test
+    void testLapsedLeaseIsTakenOver() {
+        assertTrue(nodeA.tryAcquire("store-1"));
+        // Node A stopped without releasing, and its lease has lapsed
+        jdbcTemplate.update("UPDATE refresh_lease SET expires = TIMESTAMPADD(SECOND, -1, LOCALTIMESTAMP)");
+
+        assertTrue(nodeB.tryAcquire("store-1"));
+        assertFalse(nodeA.tryAcquire("store-1"));
+    }
+}
@@ -0,0 +1,105 @@
+package dk.kea.project.service;
+
+import dk.kea.project.dto.SallingStoreResponse;
+import dk.kea.project.dto.StoreResponse;
+import dk.kea.project.entity.Store;
+import dk.kea.project.repository.StoreRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StoreServiceTest {
+
+    StoreService storeService;
+
+    @Mock
+    StoreRepository storeRepository;
+    @Mock
+    SallingService sallingService;
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        StoreZipCache storeZipCache = new StoreZipCache(storeRepository, new SimpleMeterRegistry(),
+                Duration.ofHours(1), Duration.ofMinutes(10), 100);
+        storeService = new StoreService(storeRepository, sallingService, storeZipCache, Schedulers.immediate(),
+                transactionManager);
+    }
+
+    @Test
+    void testStoresOfZipAreQueriedOnce() {
+        when(storeRepository.findAllByZip("2500")).thenReturn(List.of(new Store("ID-NO-ONE", "Netto Valby", "Netto",
+                "2500", "Valby", "Vigerslevvej 1")));
+
+        List<StoreResponse> first = storeService.getStores("2500").getBody();
+        List<StoreResponse> second = storeService.getStores("2500").getBody();
+
+        assertEquals(1, first.size());
+        assertEquals(1, second.size());
+        verify(storeRepository, times(1)).findAllByZip("2500");
+        verify(sallingService, times(0)).getStores("2500");
+    }
+
+    @Test
+    void testZipWithoutStoresIsCached() {
+        when(storeRepository.findAllByZip("9999")).thenReturn(List.of());
+        when(sallingService.getStores("9999")).thenReturn(List.of());
+
+        assertTrue(storeService.getStores("9999").getBody().isEmpty());
+        assertTrue(storeService.getStores("9999").getBody().isEmpty());
+
+        verify(sallingService, times(1)).getStores("9999");
+    }
+
+    @Test
+    void testStoresAreTaggedWithTheirContent() {
+        when(storeRepository.findAllByZip("2500")).thenReturn(List.of(new Store("ID-NO-ONE", "Netto Valby", "Netto",
+                "2500", "Valby", "Vigerslevvej 1")));
+        when(storeRepository.findAllByZip("2450")).thenReturn(List.of(new Store("ID-NO-TWO", "Netto Sydhavn", "Netto",
+                "2450", "København SV", "Borgbjergsvej 1")));
+
+        String valby = storeService.getStores("2500").getEtag();
+
+        assertEquals(valby, storeService.getStores("2500").getEtag());
+        assertNotEquals(valby, storeService.getStores("2450").getEtag());
+    }
+
+    @Test
+    void testStoresFromSallingAreAddedInOneTransaction() {
+        SallingStoreResponse.Address address = new SallingStoreResponse.Address();
+        address.setZip("2500");
+        when(sallingService.getStores("2500")).thenReturn(List.of(
+                new SallingStoreResponse("ID-NO-ONE", "netto", "Netto Valby", address),
+                new SallingStoreResponse("ID-NO-TWO", "netto", "Netto Vigerslev", address)));
+        when(storeRepository.findAllByZip("2500")).thenReturn(List.of());
+
+        storeService.getStores("2500");
+
+        // The existence check and the inserts run in the transaction, although getStores calls addStores itself
+        InOrder transaction = inOrder(transactionManager, storeRepository);
+        transaction.verify(transactionManager).getTransaction(any());
+        transaction.verify(storeRepository).findExistingIds(any());
+        transaction.verify(storeRepository).insertAll(any());
+        transaction.verify(transactionManager).commit(any());
+    }
+}
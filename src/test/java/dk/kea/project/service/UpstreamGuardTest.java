@@ -0,0 +1,163 @@
+package dk.kea.project.service;
+
+import dk.kea.project.config.ResilienceProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UpstreamGuardTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    AtomicInteger calls = new AtomicInteger();
+
+    ResilienceProperties.Upstream settings() {
+        ResilienceProperties.Upstream settings = new ResilienceProperties.Upstream(Duration.ofMillis(200), 3);
+        settings.setSlidingWindowSize(4);
+        settings.setMinimumCalls(4);
+        settings.setHalfOpenCalls(1);
+        settings.setInitialBackoff(Duration.ofMillis(1));
+        settings.setMaxBackoff(Duration.ofMillis(5));
+        return settings;
+    }
+
+    Mono<String> failing(HttpStatus status) {
+        return Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(WebClientResponseException.create(status.value(), status.getReasonPhrase(), null, null, null));
+        });
+    }
+
+    Mono<String> answering(String answer) {
+        return Mono.fromCallable(() -> {
+            calls.incrementAndGet();
+            return answer;
+        });
+    }
+
+    double gauge(String name) {
+        return meterRegistry.get(name).tag("upstream", "test").gauge().value();
+    }
+
+    @Test
+    void testOpenCircuitRejectsCallsUntilAProbeSucceeds() throws InterruptedException {
+        ResilienceProperties.Upstream settings = settings();
+        settings.setMaxAttempts(1);
+        UpstreamGuard guard = new UpstreamGuard("test", settings, meterRegistry);
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(WebClientResponseException.class, () -> guard.execute(failing(HttpStatus.BAD_GATEWAY)).block());
+        }
+        ResponseStatusException rejected = assertThrows(ResponseStatusException.class,
+                () -> guard.execute(answering("ok")).block());
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatusCode());
+        assertEquals(4, calls.get());
+        assertEquals(CircuitBreaker.State.OPEN.ordinal(), gauge("greenplate.upstream.circuit.state"));
+
+        Thread.sleep(250);
+        assertEquals("ok", guard.execute(answering("ok")).block());
+        assertEquals(CircuitBreaker.State.CLOSED.ordinal(), gauge("greenplate.upstream.circuit.state"));
+    }
+
+    @Test
+    void testClientErrorsAreNeitherRetriedNorCounted() {
+        UpstreamGuard guard = new UpstreamGuard("test", settings(), meterRegistry);
+
+        for (int i = 0; i < 10; i++) {
+            assertThrows(WebClientResponseException.class, () -> guard.execute(failing(HttpStatus.NOT_FOUND)).block());
+        }
+
+        assertEquals(10, calls.get());
+        assertEquals(CircuitBreaker.State.CLOSED, guard.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void testRetriesStopWhenTheBudgetIsSpent() {
+        ResilienceProperties.Upstream settings = settings();
+        // Keeps the circuit closed, so only the budget limits the attempts
+        settings.setMinimumCalls(100);
+        settings.setSlidingWindowSize(100);
+        settings.setRetryBurst(2);
+        settings.setRetryRatio(0.1);
+        UpstreamGuard guard = new UpstreamGuard("test", settings, meterRegistry);
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(WebClientResponseException.class, () -> guard.execute(failing(HttpStatus.SERVICE_UNAVAILABLE)).block());
+        }
+
+        // Two retries from the burst, and none earned by five calls
+        assertEquals(5 + 2, calls.get());
+        assertEquals(2, meterRegistry.get("greenplate.upstream.retries").tag("result", "retried").counter().count());
+    }
+
+    @Test
+    void testRetriedCallEarnsItsRetriesOnce() {
+        ResilienceProperties.Upstream settings = settings();
+        settings.setMinimumCalls(100);
+        settings.setSlidingWindowSize(100);
+        settings.setRetryBurst(10);
+        settings.setRetryRatio(0.5);
+        UpstreamGuard guard = new UpstreamGuard("test", settings, meterRegistry);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(WebClientResponseException.class, () -> guard.execute(failing(HttpStatus.SERVICE_UNAVAILABLE)).block());
+        }
+
+        // Each call spends two retries and earns half of one, the first while the budget is full
+        assertEquals(3 * 3, calls.get());
+        assertEquals(10 - 3 * 2 + 2 * 0.5, gauge("greenplate.upstream.retry.budget"));
+    }
+
+    @Test
+    void testCallGivesUpAtItsDeadline() {
+        ResilienceProperties.Upstream settings = settings();
+        settings.setDeadline(Duration.ofMillis(150));
+        UpstreamGuard guard = new UpstreamGuard("test", settings, meterRegistry);
+        // Every attempt times out quickly and is retried, but the call as a whole hangs
+        Mono<String> call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.<String>never().timeout(Duration.ofMillis(100));
+        });
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> guard.execute(call).block(Duration.ofSeconds(5)));
+
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testSlowAttemptIsHedged() {
+        ResilienceProperties.Upstream settings = settings();
+        settings.setHedgeDelay(Duration.ofMillis(50));
+        UpstreamGuard guard = new UpstreamGuard("test", settings, meterRegistry);
+        // The first attempt hangs, the hedged one answers at once
+        Mono<String> call = Mono.defer(() -> calls.incrementAndGet() == 1 ? Mono.never() : Mono.just("hedged"));
+
+        assertEquals("hedged", guard.executeIdempotent(call).block(Duration.ofSeconds(5)));
+        assertEquals(1, meterRegistry.get("greenplate.upstream.hedges").counter().count());
+    }
+
+    @Test
+    void testHedgedCallFailsWithTheUpstreamError() {
+        ResilienceProperties.Upstream settings = settings();
+        settings.setMaxAttempts(1);
+        settings.setHedgeDelay(Duration.ofMillis(10));
+        UpstreamGuard guard = new UpstreamGuard("test", settings, meterRegistry);
+
+        WebClientResponseException e = assertThrows(WebClientResponseException.class,
+                () -> guard.executeIdempotent(failing(HttpStatus.BAD_GATEWAY)).block(Duration.ofSeconds(5)));
+
+        assertEquals(HttpStatus.BAD_GATEWAY, e.getStatusCode());
+    }
+}